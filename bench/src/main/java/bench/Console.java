@@ -0,0 +1,21 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// The ledger reports groups and notifications on stdout; setup code runs with it muted so
+// benchmark output stays readable
+final class Console {
+    private Console() {
+    }
+
+    static void quietly(Runnable action) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            action.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.Money;
+import utils.DebtSimplifier;
+
+// Simplifying a balance sheet. Each member owes degree others, so sparse graphs have a
+// handful of edges per member and dense ones approach a complete graph in small groups.
+// The 100k-member dense graph needs a large heap; pick sizes with -p members=...
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DebtSimplifierBenchmarks {
+    private static final int DENSE_DEGREE = 100;
+    private static final int SPARSE_DEGREE = 2;
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    int members;
+
+    @Param({ "dense", "sparse" })
+    String graph;
+
+    Map<String, Map<String, Money>> sheet;
+
+    @Setup
+    public void setUp() {
+        sheet = debtGraph(members, graph.equals("dense") ? DENSE_DEGREE : SPARSE_DEGREE);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Money>> simplifyDebt() {
+        return DebtSimplifier.simplifyDebt(sheet);
+    }
+
+    static Map<String, Map<String, Money>> debtGraph(int members, int degree) {
+        Random random = new Random(members * 31L + degree);
+        String[] ids = new String[members];
+        for (int i = 0; i < members; i++) {
+            ids[i] = "user-" + i;
+        }
+        Map<String, Map<String, Money>> sheet = new HashMap<>();
+        int edges = Math.min(degree, members - 1);
+        for (int debtor = 0; debtor < members; debtor++) {
+            Map<String, Money> owed = new HashMap<>();
+            int offset = 1 + random.nextInt(members - 1);
+            for (int e = 0; e < edges; e++) {
+                int creditor = (debtor + offset + e) % members;
+                if (creditor == debtor) {
+                    continue;
+                }
+                owed.put(ids[creditor], Money.ofMinor(100 + random.nextInt(100_000)));
+            }
+            sheet.put(ids[debtor], owed);
+        }
+        return sheet;
+    }
+}
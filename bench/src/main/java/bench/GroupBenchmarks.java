@@ -0,0 +1,169 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import enums.SplitType;
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.Receipt;
+import models.User;
+
+// Posting to a single group. Groups are rebuilt before every iteration, so a group that
+// grows with each call stays bounded.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class GroupBenchmarks {
+
+    // Each member pays in turn and everyone shares the expense. Without notified, members are
+    // unsubscribed so only posting is measured.
+    @State(Scope.Thread)
+    public static class Posting {
+        @Param({ "EQUAL", "EXACT", "PERCENT", "SHARES", "ADJUSTMENT", "ITEMIZED" })
+        SplitType splitType;
+
+        @Param({ "false", "true" })
+        boolean notified;
+
+        @Param({ "10" })
+        int members;
+
+        Group group;
+        List<String> ids;
+        List<Double> splits;
+        Money total;
+        int payer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            group = new Group("Bench");
+            ids = new ArrayList<>();
+            for (int i = 0; i < members; i++) {
+                User user = new User("Member" + i, "member" + i + "@bench.test");
+                group.addUser(user);
+                ids.add(user.getId());
+                if (!notified) {
+                    group.removeObserver(user);
+                }
+            }
+            total = Money.of(1_000.0);
+            splits = switch (splitType) {
+                case EQUAL -> Collections.emptyList();
+                case EXACT -> Collections.nCopies(members, 1_000.0 / members);
+                case PERCENT -> Collections.nCopies(members, 100.0 / members);
+                case SHARES -> Collections.nCopies(members, 1.0);
+                case ADJUSTMENT -> Collections.nCopies(members, 5.0);
+                case ITEMIZED -> Collections.nCopies(members, 900.0 / members);
+            };
+        }
+    }
+
+    // A long restaurant bill: every line is shared by one to three members, plus tax and tip
+    @State(Scope.Thread)
+    public static class Itemized {
+        @Param({ "120" })
+        int lines;
+
+        Group group;
+        List<String> ids;
+        Receipt receipt;
+        int payer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            int members = 10;
+            group = new Group("Bench");
+            ids = new ArrayList<>();
+            for (int i = 0; i < members; i++) {
+                User user = new User("Member" + i, "member" + i + "@bench.test");
+                group.addUser(user);
+                group.removeObserver(user);
+                ids.add(user.getId());
+            }
+            Random random = new Random(25);
+            receipt = new Receipt();
+            for (int line = 0; line < lines; line++) {
+                int first = random.nextInt(members);
+                List<String> sharedBy = new ArrayList<>();
+                int sharers = 1 + random.nextInt(3);
+                for (int k = 0; k < sharers; k++) {
+                    sharedBy.add(ids.get((first + k) % members));
+                }
+                receipt.addItem("Item " + line, Money.ofMinor(100 + random.nextInt(5_000)), sharedBy);
+            }
+            receipt.setTax(41.37).setTip(60.0);
+        }
+    }
+
+    // Precomputed pairs, so the loop measures the update and not the random number generator
+    @State(Scope.Thread)
+    public static class Balances {
+        @Param({ "100" })
+        int members;
+
+        Group group;
+        String[] debtors;
+        String[] creditors;
+        Money amount;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            group = new Group("Bench");
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < members; i++) {
+                User user = new User("Member" + i, "member" + i + "@bench.test");
+                group.addUser(user);
+                ids.add(user.getId());
+            }
+            Random random = new Random(21);
+            debtors = new String[4096];
+            creditors = new String[4096];
+            for (int i = 0; i < debtors.length; i++) {
+                int debtor = random.nextInt(members);
+                debtors[i] = ids.get(debtor);
+                creditors[i] = ids.get((debtor + 1 + random.nextInt(members - 1)) % members);
+            }
+            amount = Money.of(12.5);
+        }
+    }
+
+    @Benchmark
+    public boolean addExpense(Posting state) {
+        String paidBy = state.ids.get(state.payer++ % state.members);
+        return state.group.addExpense("Dinner", state.total, paidBy, state.splits, state.ids, state.splitType);
+    }
+
+    @Benchmark
+    public Expense addItemizedExpense(Itemized state) {
+        String paidBy = state.ids.get(state.payer++ % state.ids.size());
+        return state.group.addItemizedExpense("Dinner", paidBy, state.receipt);
+    }
+
+    @Benchmark
+    public int updateGroupBalance(Balances state) {
+        int i = state.next++ & (state.debtors.length - 1);
+        state.group.updateGroupBalance(state.debtors[i], state.creditors[i], state.amount);
+        return i;
+    }
+}
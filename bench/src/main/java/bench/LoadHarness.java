@@ -0,0 +1,213 @@
+package bench;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import models.ExpenseStore;
+import models.Group;
+import observer.NotificationDispatcher;
+import service.Splitwise;
+
+// Replays a generated workload against a Splitwise instance from several threads and reports
+// throughput and latency percentiles per operation type:
+//
+//   java -cp bench/target/benchmarks.jar bench.LoadHarness [-seed n] [-users n] [-groups n] [-threads n] [-ops n] [-warmup n] [-rate n]
+//                            [-metrics file]
+//
+// -ops and -warmup are per thread. -rate is the target for all threads together in ops/s;
+// without it every thread runs flat out. With a rate, latency is measured from when each
+// operation was due rather than when it started, so a stall also counts against the
+// operations queued up behind it instead of hiding them. -metrics writes the ledger's own
+// metrics to file after the run.
+public class LoadHarness {
+    private static final long SPIN_NANOS = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        int users = 10_000;
+        int groups = 2_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int ops = 200_000;
+        int warmup = 50_000;
+        double rate = 0;
+        Path metrics = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-seed" -> seed = Long.parseLong(args[++i]);
+                case "-users" -> users = Integer.parseInt(args[++i]);
+                case "-groups" -> groups = Integer.parseInt(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-ops" -> ops = Integer.parseInt(args[++i]);
+                case "-warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "-rate" -> rate = Double.parseDouble(args[++i]);
+                case "-metrics" -> metrics = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setUserCount(users);
+        generator.setGroupCount(groups);
+        LoadHarness harness = new LoadHarness(generator);
+        harness.setUp();
+        System.out.println("Seed " + seed + ": " + users + " users, " + groups + " groups, " + threads
+                + " threads, " + ops + " ops per thread" + (rate > 0 ? " at " + (long) rate + " ops/s" : ""));
+        harness.run(threads, warmup, ops, rate);
+        if (metrics != null) {
+            harness.ledger.getMetrics().dump(metrics);
+        }
+    }
+
+    private final WorkloadGenerator generator;
+    private Splitwise ledger;
+    private String[] userIds;
+    private String[] groupIds;
+
+    public LoadHarness(WorkloadGenerator generator) {
+        this.generator = generator;
+    }
+
+    public void setUp() {
+        ledger = new Splitwise(ExpenseStore.inMemory());
+        ledger.setNotificationDispatcher(NotificationDispatcher.inline());
+        int[][] members = generator.getGroupMembers();
+        userIds = new String[generator.getUserCount()];
+        groupIds = new String[members.length];
+        Console.quietly(() -> {
+            for (int u = 0; u < userIds.length; u++) {
+                userIds[u] = ledger.createUser("Load" + u, "load" + u + "@load.test").getId();
+            }
+            for (int g = 0; g < members.length; g++) {
+                Group group = ledger.createGroup("Load group " + g);
+                groupIds[g] = group.getId();
+                for (int member : members[g]) {
+                    ledger.addGroupUser(group.getId(), userIds[member]);
+                }
+            }
+        });
+    }
+
+    // Returns the latency spread per operation kind
+    public Map<WorkloadGenerator.Kind, HistogramSnapshot> run(int threads, int warmup, int ops, double rate)
+            throws InterruptedException {
+        List<List<WorkloadGenerator.Op>> streams = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            streams.add(generator.generate(t, warmup + ops));
+        }
+
+        // histograms are striped, so all threads can record into the same ones
+        Map<WorkloadGenerator.Kind, LatencyHistogram> histograms = new EnumMap<>(WorkloadGenerator.Kind.class);
+        for (WorkloadGenerator.Kind kind : WorkloadGenerator.Kind.values()) {
+            histograms.put(kind, new LatencyHistogram());
+        }
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long intervalNanos = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            List<WorkloadGenerator.Op> stream = streams.get(t);
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < warmup; i++) {
+                        apply(stream.get(i));
+                    }
+                    ready.countDown();
+                    go.await();
+                    long due = System.nanoTime();
+                    for (int i = warmup; i < stream.size(); i++) {
+                        WorkloadGenerator.Op op = stream.get(i);
+                        long begin;
+                        if (intervalNanos > 0) {
+                            // park until shortly before the op is due, then spin, since a parked
+                            // thread can wake tens of microseconds late
+                            long now = System.nanoTime();
+                            while (now < due) {
+                                if (due - now > SPIN_NANOS) {
+                                    LockSupport.parkNanos(due - now - SPIN_NANOS);
+                                } else {
+                                    Thread.onSpinWait();
+                                }
+                                now = System.nanoTime();
+                            }
+                            begin = due;
+                            due += intervalNanos;
+                        } else {
+                            begin = System.nanoTime();
+                        }
+                        apply(op);
+                        histograms.get(op.getKind()).record(System.nanoTime() - begin);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    ready.countDown();
+                }
+            }, "load-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failure[0] != null) {
+            throw new IllegalStateException("Load run failed", failure[0]);
+        }
+
+        Map<WorkloadGenerator.Kind, HistogramSnapshot> merged = new EnumMap<>(WorkloadGenerator.Kind.class);
+        HistogramSnapshot all = null;
+        for (WorkloadGenerator.Kind kind : WorkloadGenerator.Kind.values()) {
+            HistogramSnapshot histogram = histograms.get(kind).snapshot();
+            merged.put(kind, histogram);
+            all = all == null ? histogram : all.merge(histogram);
+        }
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10s %10s %10s %10s", "Operation",
+                "count", "ops/s", "mean us", "p50 us", "p99 us", "p999 us", "max us"));
+        for (Map.Entry<WorkloadGenerator.Kind, HistogramSnapshot> entry : merged.entrySet()) {
+            print(entry.getKey().name(), entry.getValue(), seconds);
+        }
+        print("ALL", all, seconds);
+        return merged;
+    }
+
+    private static void print(String name, HistogramSnapshot histogram, double seconds) {
+        System.out.println(String.format(Locale.ROOT, "%-12s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f", name,
+                histogram.getCount(), histogram.getCount() / seconds, histogram.getMean() / 1e3,
+                histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3));
+    }
+
+    private void apply(WorkloadGenerator.Op op) {
+        String groupId = groupIds[op.getGroup()];
+        switch (op.getKind()) {
+            case EXPENSE -> {
+                int[] participants = op.getParticipants();
+                List<String> ids = new ArrayList<>(participants.length);
+                for (int participant : participants) {
+                    ids.add(userIds[participant]);
+                }
+                ledger.addExpenseToGroup(groupId, "Load expense", op.getAmount(), userIds[op.getPayer()], ids,
+                        op.getSplitType(), op.getSplits());
+            }
+            case SETTLEMENT -> ledger.settlePaymentInGroup(groupId, userIds[op.getPayer()], userIds[op.getOther()],
+                    op.getAmount());
+            case SIMPLIFY -> ledger.simplifyGroupDept(groupId);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import enums.SimplificationMode;
+import utils.DebtSimplifier;
+import utils.Transfer;
+
+// Settling precomputed net balances, the path Splitwise.simplifyGroupDept takes through
+// Group.simplifyBalanceSheet. GREEDY pairs creditors and debtors in slot order; MAX_HEAP
+// always matches the largest of each, which costs a log factor but usually needs fewer
+// transfers.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimplifyNetsBenchmarks {
+
+    @Param({ "GREEDY", "MAX_HEAP" })
+    SimplificationMode mode;
+
+    @Param({ "10000" })
+    int members;
+
+    int[] slots;
+    long[] nets;
+
+    // Random nets that sum to zero, as a real group's always do
+    @Setup
+    public void setUp() {
+        Random random = new Random(members * 17L);
+        slots = new int[members];
+        nets = new long[members];
+        long sum = 0;
+        for (int i = 0; i < members - 1; i++) {
+            slots[i] = i;
+            nets[i] = random.nextInt(200_001) - 100_000;
+            sum += nets[i];
+        }
+        slots[members - 1] = members - 1;
+        nets[members - 1] = -sum;
+    }
+
+    @Benchmark
+    public List<Transfer> simplifyNets() {
+        return DebtSimplifier.simplifyNets(slots, nets, mode);
+    }
+}
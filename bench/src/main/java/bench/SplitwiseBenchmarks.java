@@ -0,0 +1,139 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import enums.SplitType;
+import models.ExpenseStore;
+import models.Group;
+import observer.NotificationDispatcher;
+import service.Splitwise;
+
+// Posting through the Splitwise facade. The posting benchmarks run on every core (override
+// with -t); thread t posts to group t % groups, so with one group every thread contends for it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class SplitwiseBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Payments {
+        @Param({ "1000" })
+        int users;
+
+        Splitwise ledger;
+        String[] ids;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            ledger = new Splitwise(ExpenseStore.inMemory());
+            ledger.setNotificationDispatcher(NotificationDispatcher.inline());
+            ids = new String[users];
+            Console.quietly(() -> {
+                for (int i = 0; i < users; i++) {
+                    ids[i] = ledger.createUser("User" + i, "user" + i + "@bench.test").getId();
+                }
+            });
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            ledger.close();
+        }
+    }
+
+    // One ledger shared by all threads, with either a group per thread or a single group
+    @State(Scope.Benchmark)
+    public static class Groups {
+        @Param({ "own", "shared" })
+        String groups;
+
+        @Param({ "8" })
+        int members;
+
+        Splitwise ledger;
+        String[] groupIds;
+        List<List<String>> memberIds;
+
+        @Setup(Level.Iteration)
+        public void setUp(BenchmarkParams params) {
+            int count = groups.equals("own") ? params.getThreads() : 1;
+            ledger = new Splitwise(ExpenseStore.inMemory());
+            ledger.setNotificationDispatcher(NotificationDispatcher.inline());
+            groupIds = new String[count];
+            memberIds = new ArrayList<>();
+            Console.quietly(() -> {
+                for (int g = 0; g < count; g++) {
+                    Group group = ledger.createGroup("Bench" + g);
+                    groupIds[g] = group.getId();
+                    List<String> ids = new ArrayList<>();
+                    for (int i = 0; i < members; i++) {
+                        String id = ledger.createUser("Member" + g + "-" + i, "member" + g + "-" + i + "@bench.test")
+                                .getId();
+                        ledger.addGroupUser(group.getId(), id);
+                        ids.add(id);
+                    }
+                    memberIds.add(ids);
+                }
+            });
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            ledger.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Poster {
+        int thread;
+
+        @Setup
+        public void setUp(ThreadParams params) {
+            thread = params.getThreadIndex();
+        }
+    }
+
+    private static final List<Double> NO_SPLITS = Collections.emptyList();
+
+    @Benchmark
+    public int addIndividualPayment(Payments state) {
+        int i = state.next++;
+        String paidBy = state.ids[i % state.users];
+        String other = state.ids[(i * 7 + 1) % state.users];
+        state.ledger.addIndividualPayment("Coffee", 4.5, paidBy, other, SplitType.EQUAL);
+        return i;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int addExpenseToGroup(Groups state, Poster poster) {
+        int g = poster.thread % state.groupIds.length;
+        List<String> ids = state.memberIds.get(g);
+        state.ledger.addExpenseToGroup(state.groupIds[g], "Dinner", 80.0, ids.get(poster.thread % state.members), ids,
+                SplitType.EQUAL, NO_SPLITS);
+        return g;
+    }
+}
@@ -0,0 +1,280 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import enums.SplitType;
+
+// Deterministic synthetic traffic for load tests. The same seed and settings always give the
+// same users, groups and operation streams, so runs can be compared across changes.
+//
+// Group sizes follow a Pareto distribution: most groups are a handful of friends, a few are
+// clubs with hundreds of members. Busier groups are the bigger ones, since each operation
+// picks its group with probability proportional to size. Expense amounts are log-normal.
+public class WorkloadGenerator {
+
+    public enum Kind {
+        EXPENSE,
+        SETTLEMENT,
+        SIMPLIFY
+    }
+
+    // One operation against group and user indexes; the harness maps them to ids.
+    // For expenses other is unused, for settlements payer pays other, for simplifications
+    // only group is set.
+    public static class Op {
+        private final Kind kind;
+        private final int group;
+        private final int payer;
+        private final int other;
+        private final int[] participants;
+        private final SplitType splitType;
+        private final double amount;
+        private final List<Double> splits;
+
+        Op(Kind kind, int group, int payer, int other, int[] participants, SplitType splitType, double amount,
+                List<Double> splits) {
+            this.kind = kind;
+            this.group = group;
+            this.payer = payer;
+            this.other = other;
+            this.participants = participants;
+            this.splitType = splitType;
+            this.amount = amount;
+            this.splits = splits;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getGroup() {
+            return group;
+        }
+
+        public int getPayer() {
+            return payer;
+        }
+
+        public int getOther() {
+            return other;
+        }
+
+        public int[] getParticipants() {
+            return participants;
+        }
+
+        public SplitType getSplitType() {
+            return splitType;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public List<Double> getSplits() {
+            return splits;
+        }
+    }
+
+    private final long seed;
+    private int userCount = 10_000;
+    private int groupCount = 2_000;
+    private int minGroupSize = 2;
+    private int maxGroupSize = 1_000;
+    private double sizeExponent = 1.2;
+    private int maxParticipants = 12;
+    private double settlementRatio = 0.15;
+    private int simplifyEvery = 500;
+    private double[] splitMix = { 0.6, 0.2, 0.2 }; // EQUAL, EXACT, PERCENT
+
+    private int[][] members;
+    private long[] cumulativeSize;
+
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setUserCount(int userCount) {
+        this.userCount = userCount;
+        this.members = null;
+    }
+
+    public void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+        this.members = null;
+    }
+
+    public void setGroupSizes(int minGroupSize, int maxGroupSize, double sizeExponent) {
+        if (minGroupSize < 2 || maxGroupSize < minGroupSize || sizeExponent <= 0) {
+            throw new IllegalArgumentException("Invalid group size distribution");
+        }
+        this.minGroupSize = minGroupSize;
+        this.maxGroupSize = maxGroupSize;
+        this.sizeExponent = sizeExponent;
+        this.members = null;
+    }
+
+    public void setMaxParticipants(int maxParticipants) {
+        this.maxParticipants = Math.max(2, maxParticipants);
+    }
+
+    // Share of operations, other than simplifications, that are settlements
+    public void setSettlementRatio(double settlementRatio) {
+        this.settlementRatio = settlementRatio;
+    }
+
+    // Each stream simplifies a group every this many operations; 0 turns it off
+    public void setSimplifyEvery(int simplifyEvery) {
+        this.simplifyEvery = simplifyEvery;
+    }
+
+    public void setSplitMix(double equal, double exact, double percent) {
+        double total = equal + exact + percent;
+        if (total <= 0) {
+            throw new IllegalArgumentException("Split mix must not be empty");
+        }
+        this.splitMix = new double[] { equal / total, exact / total, percent / total };
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    // members[g] holds the user indexes of group g
+    public synchronized int[][] getGroupMembers() {
+        if (members == null) {
+            generateGroups();
+        }
+        return members;
+    }
+
+    private void generateGroups() {
+        Random random = new Random(seed);
+        int maxSize = Math.min(maxGroupSize, userCount);
+        members = new int[groupCount][];
+        cumulativeSize = new long[groupCount];
+        long running = 0;
+        for (int g = 0; g < groupCount; g++) {
+            double pareto = minGroupSize / Math.pow(1 - random.nextDouble(), 1 / sizeExponent);
+            int size = (int) Math.min(maxSize, Math.max(minGroupSize, pareto));
+            members[g] = sample(random, userCount, size);
+            running += size;
+            cumulativeSize[g] = running;
+        }
+    }
+
+    // Stream i of a run; different streams are independent but each is reproducible on its own
+    public List<Op> generate(int stream, int count) {
+        int[][] groups = getGroupMembers();
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + stream + 1);
+        List<Op> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int group = pickGroup(random);
+            if (simplifyEvery > 0 && i % simplifyEvery == simplifyEvery - 1) {
+                ops.add(new Op(Kind.SIMPLIFY, group, -1, -1, null, null, 0, null));
+            } else if (random.nextDouble() < settlementRatio) {
+                int[] pair = sample(random, groups[group].length, 2);
+                long paise = amountInPaise(random) / 4 + 1;
+                ops.add(new Op(Kind.SETTLEMENT, group, groups[group][pair[0]], groups[group][pair[1]], null, null,
+                        paise / 100.0, null));
+            } else {
+                ops.add(expense(random, group, groups[group]));
+            }
+        }
+        return ops;
+    }
+
+    private Op expense(Random random, int group, int[] groupMembers) {
+        int count;
+        if (groupMembers.length <= maxParticipants && random.nextBoolean()) {
+            count = groupMembers.length;
+        } else {
+            count = 2 + random.nextInt(Math.min(groupMembers.length, maxParticipants) - 1);
+        }
+        int[] picked = sample(random, groupMembers.length, count);
+        int[] participants = new int[count];
+        for (int i = 0; i < count; i++) {
+            participants[i] = groupMembers[picked[i]];
+        }
+        int payer = participants[random.nextInt(count)];
+        long paise = Math.max(count, amountInPaise(random));
+
+        double pick = random.nextDouble();
+        if (pick < splitMix[0]) {
+            return new Op(Kind.EXPENSE, group, payer, -1, participants, SplitType.EQUAL, paise / 100.0,
+                    Collections.emptyList());
+        }
+        // exact amounts and percentages are drawn in whole paise and basis points so they add up
+        if (pick < splitMix[0] + splitMix[1]) {
+            return new Op(Kind.EXPENSE, group, payer, -1, participants, SplitType.EXACT, paise / 100.0,
+                    shares(random, paise, count));
+        }
+        return new Op(Kind.EXPENSE, group, payer, -1, participants, SplitType.PERCENT, paise / 100.0,
+                shares(random, 10_000, count));
+    }
+
+    // Splits total hundredths into count random positive parts
+    private static List<Double> shares(Random random, long total, int count) {
+        double[] weights = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            weights[i] = 0.5 + random.nextDouble();
+            sum += weights[i];
+        }
+        List<Double> shares = new ArrayList<>(count);
+        long assigned = 0;
+        for (int i = 0; i < count - 1; i++) {
+            long share = Math.max(1, (long) (total * weights[i] / sum));
+            shares.add(share / 100.0);
+            assigned += share;
+        }
+        shares.add((total - assigned) / 100.0);
+        return shares;
+    }
+
+    // Log-normal around Rs 20, capped at Rs 1 lakh
+    private static long amountInPaise(Random random) {
+        double rupees = Math.exp(3.0 + random.nextGaussian());
+        return Math.min(10_000_000L, Math.max(100L, Math.round(rupees * 100)));
+    }
+
+    private int pickGroup(Random random) {
+        long target = (long) (random.nextDouble() * cumulativeSize[cumulativeSize.length - 1]);
+        int index = Arrays.binarySearch(cumulativeSize, target + 1);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // count distinct values from [0, bound)
+    private static int[] sample(Random random, int bound, int count) {
+        int[] picked = new int[count];
+        if (count * 4 > bound) {
+            int[] all = new int[bound];
+            for (int i = 0; i < bound; i++) {
+                all[i] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                int j = i + random.nextInt(bound - i);
+                int swap = all[i];
+                all[i] = all[j];
+                all[j] = swap;
+                picked[i] = all[i];
+            }
+            return picked;
+        }
+        Set<Integer> seen = new HashSet<>();
+        int filled = 0;
+        while (filled < count) {
+            int candidate = random.nextInt(bound);
+            if (seen.add(candidate)) {
+                picked[filled++] = candidate;
+            }
+        }
+        return picked;
+    }
+}
@@ -2,11 +2,17 @@ import java.util.Arrays;
 import java.util.List;
 
 import enums.SplitType;
+import events.ConsoleLedgerEventListener;
+import events.LedgerEvents;
 import models.*;
+import observer.NotificationDispatcher;
+import service.Splitwise;
 
 public class App {
     public static void main(String[] args) throws Exception {
            Splitwise manager = Splitwise.getInstance();
+        LedgerEvents.set(new ConsoleLedgerEventListener());
+        manager.setNotificationDispatcher(NotificationDispatcher.inline());
         
         System.out.println("\n=========== Creating Users ====================");
         User user1 = manager.createUser("Aditya", "aditya@gmail.com");
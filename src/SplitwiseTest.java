@@ -1,13 +1,59 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import enums.FileFormat;
+import enums.SimplificationMode;
 import enums.SplitType;
+import events.AsyncLedgerEventListener;
+import events.ConsoleLedgerEventListener;
+import events.LedgerEventListener;
+import events.LedgerEvents;
+import factory.SplitFactory;
+import importer.ImportReport;
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import metrics.MetricsSnapshot;
 import models.*;
+import observer.Notification;
+import observer.NotificationDispatcher;
+import observer.Observer;
+import persistence.LedgerJournal;
+import persistence.RecoveryReport;
+import service.Splitwise;
+import utils.DebtSimplifier;
+import utils.SettlementPlanner;
+import utils.Transfer;
 
 public class SplitwiseTest {
     public static void main(String[] args) {
         try {
             Splitwise.resetInstance();
             Splitwise manager = Splitwise.getInstance();
+            LedgerEvents.set(new ConsoleLedgerEventListener());
+            // deliver notifications on the caller's thread so the console output stays in order
+            manager.setNotificationDispatcher(NotificationDispatcher.inline());
 
             System.out.println("\n--- Test Case 1: Equal Split in Group ---");
             User u1 = manager.createUser("Alice", "alice@test.com");
@@ -47,11 +93,1619 @@ public class SplitwiseTest {
             boolean removed = manager.removeGroupUser(g1.getId(), u1.getId());
             System.out.println("Can Alice leave with active debt? " + removed);
 
+            System.out.println("\n--- Test Case 7: Large Group Balance Matrix ---");
+            Group g2 = manager.createGroup("Conference");
+            List<String> attendees = new ArrayList<>();
+            quietly(() -> {
+                for (int i = 0; i < 200; i++) {
+                    User attendee = manager.createUser("Attendee" + i, "attendee" + i + "@test.com");
+                    manager.addGroupUser(g2.getId(), attendee.getId());
+                    attendees.add(attendee.getId());
+                }
+                manager.addExpenseToGroup(g2.getId(), "Venue", 2000.0, attendees.get(0), attendees, SplitType.EQUAL);
+            });
+            check(g2.getBalanceSheet().get(attendees.get(150)).get(attendees.get(0)).equals(Money.of(10.0)),
+                    "Attendee150 should owe Attendee0 Rs 10");
+            check(!g2.canLeaveGroup(attendees.get(150)), "Attendee150 cannot leave with debt");
+            quietly(() -> manager.settlePaymentInGroup(g2.getId(), attendees.get(150), attendees.get(0), 10.0));
+            check(manager.removeGroupUser(g2.getId(), attendees.get(150)), "Attendee150 can leave once settled");
+            manager.addGroupUser(g2.getId(), attendees.get(150));
+            check(g2.getBalanceSheet().get(attendees.get(150)).isEmpty(), "Rejoined member starts settled");
+            manager.addGroupUser(g2.getId(), attendees.get(150));
+            check(g2.getUsers().size() == 200, "Adding an existing member is a no-op");
+            check(g2.isMember(attendees.get(199)) && !g2.isMember(u1.getId()), "Membership index is consistent");
+            System.out.println("Large group balances verified");
+
+            System.out.println("\n--- Test Case 8: Exact Money Rounding ---");
+            List<Split> thirds = SplitFactory.getInstance(SplitType.EQUAL).calculateSplit(Money.of(100.0),
+                    Arrays.asList(u1.getId(), u2.getId(), u3.getId()), new ArrayList<>());
+            check(thirds.get(0).getAmount().equals(Money.of(33.34)), "First user absorbs the leftover paisa");
+            check(thirds.get(2).getAmount().equals(Money.of(33.33)), "Remaining users get the floor share");
+            List<Split> percents = SplitFactory.getInstance(SplitType.PERCENT).calculateSplit(Money.of(10.0),
+                    Arrays.asList(u1.getId(), u2.getId(), u3.getId()), Arrays.asList(33.33, 33.33, 33.34));
+            Money sum = Money.ZERO;
+            for (Split split : percents) {
+                sum = sum.plus(split.getAmount());
+            }
+            check(sum.equals(Money.of(10.0)), "Percentage splits add up to the total");
+            check(Money.of(0.1).plus(Money.of(0.2)).equals(Money.of(0.3)), "Money arithmetic is exact");
+            System.out.println("Equal split of 100.00 : " + thirds.get(0).getAmount() + ", "
+                    + thirds.get(1).getAmount() + ", " + thirds.get(2).getAmount());
+
+            System.out.println("\n--- Test Case 9: Concurrent Group Stress ---");
+            runConcurrentStress(manager);
+            System.out.println("Concurrent balances net to zero and match the posted expenses");
+
+            System.out.println("\n--- Test Case 10: Concurrent P2P Payments ---");
+            runConcurrentPeerPayments(manager);
+            System.out.println("Both sides of every P2P balance stay consistent");
+
+            System.out.println("\n--- Test Case 11: Incremental Net Balances ---");
+            Group g3 = manager.createGroup("Flat");
+            manager.addGroupUser(g3.getId(), u1.getId());
+            manager.addGroupUser(g3.getId(), u2.getId());
+            manager.addGroupUser(g3.getId(), u3.getId());
+            quietly(() -> {
+                manager.addExpenseToGroup(g3.getId(), "Rent", 900.0, u1.getId(),
+                        Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+                manager.addExpenseToGroup(g3.getId(), "Wifi", 300.0, u2.getId(),
+                        Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+            });
+            check(g3.getNetBalance(u1.getId()).equals(Money.of(500.0)), "Alice is owed 500 net");
+            check(g3.getNetBalance(u2.getId()).equals(Money.of(-100.0)), "Bob owes 100 net");
+            check(g3.getNetBalance(u3.getId()).equals(Money.of(-400.0)), "Charlie owes 400 net");
+            manager.simplifyGroupDept(g3.getId());
+            check(g3.getNetBalance(u1.getId()).equals(Money.of(500.0)), "Simplification keeps nets");
+            check(g3.getBalanceSheet().get(u3.getId()).get(u1.getId()).equals(Money.of(400.0)),
+                    "Charlie pays Alice directly");
+            manager.showGroupBalances(g3.getId());
+
+            System.out.println("\n--- Test Case 12: Heap Simplifier vs Greedy (10k members) ---");
+            compareSimplifiers(10_000);
+
+            System.out.println("\n--- Test Case 13: Optimal Settlement ---");
+            int[] smallSlots = { 0, 1, 2, 3, 4, 5 };
+            long[] smallNets = { 500, -300, 300, -200, 200, -500 };
+            List<Transfer> greedyPlan = DebtSimplifier.simplifyNets(smallSlots, smallNets, SimplificationMode.GREEDY);
+            List<Transfer> optimalPlan = DebtSimplifier.simplifyNets(smallSlots, smallNets, SimplificationMode.OPTIMAL);
+            check(settles(optimalPlan, smallNets), "Optimal plan must settle every net");
+            check(optimalPlan.size() == 3, "Three zero-sum pairs need exactly three transfers");
+            check(greedyPlan.size() > optimalPlan.size(), "Greedy misses the zero-sum pairs");
+            long[] wideNets = new long[20];
+            int[] wideSlots = new int[20];
+            for (int i = 0; i < 20; i++) {
+                wideSlots[i] = i;
+                wideNets[i] = i % 2 == 0 ? i + 1 : -i;
+            }
+            check(DebtSimplifier.simplifyOptimal(wideSlots, wideNets, 0) == null, "An exhausted budget gives up");
+            int autoWidth = DebtSimplifier.AUTO_OPTIMAL_MAX_MEMBERS + 2;
+            List<Transfer> autoPlan = DebtSimplifier.simplifyNets(Arrays.copyOf(wideSlots, autoWidth),
+                    new long[] { 7, -3, 5, -9, 2, -2, 8, -8, 1, -1, 6, -4, 3, -5 }, SimplificationMode.AUTO);
+            List<Transfer> heapPlan = DebtSimplifier.simplifyNets(Arrays.copyOf(wideSlots, autoWidth),
+                    new long[] { 7, -3, 5, -9, 2, -2, 8, -8, 1, -1, 6, -4, 3, -5 }, SimplificationMode.MAX_HEAP);
+            check(autoPlan.size() == heapPlan.size(), "AUTO leaves wide groups to heap matching");
+            System.out.println("Greedy : " + greedyPlan.size() + " transfers, Optimal : " + optimalPlan.size()
+                    + " transfers");
+
+            System.out.println("\n--- Test Case 14: Bulk Parallel Simplification ---");
+            List<String> bulkGroupIds = new ArrayList<>();
+            quietly(() -> {
+                for (int i = 0; i < 50; i++) {
+                    Group bulk = manager.createGroup("Bulk" + i);
+                    for (User member : Arrays.asList(u1, u2, u3)) {
+                        manager.addGroupUser(bulk.getId(), member.getId());
+                    }
+                    manager.addExpenseToGroup(bulk.getId(), "Hotel", 300.0, u1.getId(),
+                            Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+                    manager.addExpenseToGroup(bulk.getId(), "Cab", 150.0, u2.getId(),
+                            Arrays.asList(u2.getId(), u3.getId()), SplitType.EQUAL);
+                    bulkGroupIds.add(bulk.getId());
+                }
+            });
+            Map<String, SimplificationReport> reports = manager.simplifyGroups(bulkGroupIds);
+            int saved = 0;
+            for (String bulkGroupId : bulkGroupIds) {
+                SimplificationReport report = reports.get(bulkGroupId);
+                check(report != null && report.getEdgesAfter() <= report.getEdgesBefore(), "Every group is reported");
+                check(manager.getGroupById(bulkGroupId).getNetBalance(u3.getId()).equals(Money.of(-175.0)),
+                        "Bulk simplification keeps nets");
+                saved += report.getTransfersSaved();
+            }
+            check(manager.simplifyAll().size() >= bulkGroupIds.size(), "simplifyAll covers every group");
+            System.out.println("Simplified " + reports.size() + " groups, saving " + saved + " transfers");
+
+            System.out.println("\n--- Test Case 15: Pluggable Event Sink ---");
+            LedgerEvents.set(LedgerEvents.NO_OP);
+            PrintStream console = System.out;
+            ByteArrayOutputStream captured = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(captured));
+            try {
+                manager.addExpenseToGroup(g3.getId(), "Snacks", 90.0, u3.getId(),
+                        Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+                manager.settlePaymentInGroup(g3.getId(), u3.getId(), u1.getId(), 30.0);
+            } finally {
+                System.setOut(console);
+            }
+            check(captured.size() == 0, "Without a listener posting does no console I/O");
+
+            AtomicInteger expenseEvents = new AtomicInteger();
+            AtomicInteger notifications = new AtomicInteger();
+            AsyncLedgerEventListener async = new AsyncLedgerEventListener(new LedgerEventListener() {
+                @Override
+                public void onExpenseAdded(Group group, Expense expense) {
+                    expenseEvents.incrementAndGet();
+                }
+
+                @Override
+                public void onNotification(User user, String message) {
+                    notifications.incrementAndGet();
+                }
+            });
+            LedgerEvents.set(async);
+            manager.addExpenseToGroup(g3.getId(), "Tea", 30.0, u1.getId(),
+                    Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+            async.flush();
+            async.close();
+            async.flush(); // returns at once rather than waiting on the stopped worker
+            LedgerEvents.set(new ConsoleLedgerEventListener());
+            check(expenseEvents.get() == 1 && notifications.get() == 3, "Async listener receives every event");
+            System.out.println("Async listener delivered " + expenseEvents.get() + " expense and "
+                    + notifications.get() + " notification events");
+
+            System.out.println("\n--- Test Case 16: Batched Notification Dispatcher ---");
+            NotificationDispatcher dispatcher = new NotificationDispatcher(64, 100);
+            manager.setNotificationDispatcher(dispatcher);
+            List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch producerDone = new CountDownLatch(1);
+            Observer slowObserver = message -> {
+                try {
+                    // hold the first delivery so the rest of the burst piles up behind it
+                    producerDone.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.add(message);
+            };
+            g3.addObserver(slowObserver);
+            for (int i = 0; i < 12; i++) {
+                manager.addExpenseToGroup(g3.getId(), "Groceries " + i, 30.0, u2.getId(),
+                        Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+            }
+            producerDone.countDown();
+            dispatcher.flush();
+            g3.removeObserver(slowObserver);
+            manager.setNotificationDispatcher(NotificationDispatcher.inline());
+            dispatcher.close();
+
+            check(delivered.size() < 12, "A burst is coalesced per recipient");
+            check(delivered.stream().anyMatch(message -> message.contains("new expenses in Flat")),
+                    "Coalesced notifications are summarized");
+            check(dispatcher.getEnqueuedCount() == 12 && dispatcher.getQueueDepth() == 0,
+                    "Every notification is drained");
+            check(dispatcher.getCoalescedCount() > 0, "Coalesced notifications are counted");
+            System.out.println("Observer received " + delivered.size() + " messages for 12 expenses: " + delivered);
+            System.out.printf("Dispatcher latency avg %.2f ms, max %.2f ms%n", dispatcher.getAverageLatencyMillis(),
+                    dispatcher.getMaxLatencyMillis());
+
+            // a full queue must not block the posting thread, which holds the group monitor
+            NotificationDispatcher tiny = new NotificationDispatcher(2, 1);
+            manager.setNotificationDispatcher(tiny);
+            List<String> overflowDelivered = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch overflowPosted = new CountDownLatch(1);
+            Observer stuckObserver = message -> {
+                try {
+                    overflowPosted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                overflowDelivered.add(message);
+            };
+            g3.addObserver(stuckObserver);
+            long postStart = System.nanoTime();
+            quietly(() -> {
+                for (int i = 0; i < 20; i++) {
+                    manager.addExpenseToGroup(g3.getId(), "Snacks " + i, 3.0, u2.getId(),
+                            Arrays.asList(u1.getId(), u2.getId(), u3.getId()), SplitType.EQUAL);
+                }
+            });
+            long postMillis = (System.nanoTime() - postStart) / 1_000_000;
+            overflowPosted.countDown();
+            tiny.flush();
+            g3.removeObserver(stuckObserver);
+            manager.setNotificationDispatcher(NotificationDispatcher.inline());
+            tiny.close();
+            check(postMillis < 4_000 && tiny.getOverflowedCount() > 0,
+                    "A full queue folds notifications into an overflow summary instead of blocking");
+            check(overflowDelivered.stream().anyMatch(message -> message.contains("new expenses in Flat")),
+                    "Overflowed notifications are delivered as a summary");
+
+            // a lone overflowed notification keeps its own text, and nothing is dropped on close
+            NotificationDispatcher single = new NotificationDispatcher(1, 1);
+            List<String> singleDelivered = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch singleHeld = new CountDownLatch(1);
+            CountDownLatch singleRelease = new CountDownLatch(1);
+            Observer heldObserver = message -> {
+                singleHeld.countDown();
+                try {
+                    singleRelease.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                singleDelivered.add(message);
+            };
+            g3.addObserver(heldObserver);
+            single.dispatch(Notification.message(g3, "Rent is due"));
+            singleHeld.await(5, TimeUnit.SECONDS);
+            single.dispatch(Notification.message(g3, "Wifi is down"));
+            single.dispatch(Notification.message(g3, "Plumber on Friday"));
+            check(single.getOverflowedCount() == 1, "The third notification overflows the one-slot queue");
+            singleRelease.countDown();
+            single.close();
+            single.flush();
+            check(singleDelivered.contains("Plumber on Friday")
+                    && singleDelivered.stream().noneMatch(message -> message.startsWith("1 new")),
+                    "A single overflowed notification is delivered as itself");
+            single.dispatch(Notification.message(g3, "Keys are with Bob"));
+            single.flush();
+            g3.removeObserver(heldObserver);
+            check(singleDelivered.size() == 4 && singleDelivered.contains("Keys are with Bob"),
+                    "Notifications dispatched after close are delivered inline");
+
+            System.out.println("\n--- Test Case 17: Write-Ahead Journal ---");
+            Path journalPath = Files.createTempFile("splitwise", ".journal");
+            String tripId;
+            String ashaId;
+            Map<String, Map<String, Money>> tripSheet;
+            Map<String, Money> ashaPeerBalance;
+            long appended;
+            try (Splitwise durable = Splitwise.open(journalPath)) {
+                durable.setNotificationDispatcher(NotificationDispatcher.inline());
+                User asha = durable.createUser("Asha", "asha@test.com");
+                User ben = durable.createUser("Ben", "ben@test.com");
+                User chen = durable.createUser("Chen", "chen@test.com");
+                Group trip = durable.createGroup("Journal Trip");
+                List<String> tripMembers = Arrays.asList(asha.getId(), ben.getId(), chen.getId());
+                quietly(() -> {
+                    for (String memberId : tripMembers) {
+                        durable.addGroupUser(trip.getId(), memberId);
+                    }
+                    durable.addExpenseToGroup(trip.getId(), "Hotel", 900.0, asha.getId(), tripMembers,
+                            SplitType.EQUAL);
+                    durable.addExpenseToGroup(trip.getId(), "Cab", 100.0, ben.getId(),
+                            Arrays.asList(asha.getId(), chen.getId()), SplitType.EXACT, Arrays.asList(40.0, 60.0));
+                    durable.settlePaymentInGroup(trip.getId(), chen.getId(), asha.getId(), 100.0);
+                    durable.simplifyGroupDept(trip.getId(), SimplificationMode.MAX_HEAP);
+                    durable.addIndividualPayment("Coffee", 50.0, asha.getId(), ben.getId(), SplitType.EQUAL);
+                    durable.settleIndividualPayment(ben.getId(), asha.getId(), 10.0);
+                });
+                runJournalWriters(durable, trip.getId(), tripMembers);
+
+                // direct edge edits journal only the change, not the whole sheet
+                LedgerJournal journal = durable.getJournal();
+                journal.sync();
+                long bytesBeforeEdit = journal.getBytesWritten();
+                trip.updateGroupBalance(chen.getId(), ben.getId(), Money.of(12.5));
+                journal.sync();
+                // three ids, an amount and framing, however many edges the group has
+                check(journal.getBytesWritten() - bytesBeforeEdit <= 3 * 16 + 24, "An edge edit is a small delta record");
+                trip.addBalanceSheet(ben.getId(), Map.of(asha.getId(), Money.of(7.0)));
+                trip.removeBalanceSheet(chen.getId());
+                journal.sync();
+                check(journal.getDurableLsn() == journal.getAppendedLsn(), "Every acknowledged write is durable");
+                // pool workers only append; the caller waits for the group commit once
+                long appendedBeforeBulk = journal.getAppendedLsn();
+                quietly(() -> durable.simplifyGroups(List.of(trip.getId())));
+                check(journal.getAppendedLsn() > appendedBeforeBulk
+                        && journal.getDurableLsn() == journal.getAppendedLsn(),
+                        "A bulk simplify is durable once it returns");
+                check(journal.getFsyncCount() <= journal.getAppendedLsn(), "Writers share fsyncs");
+                System.out.println("Journaled " + journal.getAppendedLsn() + " records in " + journal.getBytesWritten()
+                        + " bytes with " + journal.getFsyncCount() + " fsyncs");
+
+                tripId = trip.getId();
+                ashaId = asha.getId();
+                tripSheet = trip.getBalanceSheet();
+                ashaPeerBalance = asha.getBalance();
+                appended = journal.getAppendedLsn();
+            }
+
+            // a torn record at the tail, as left by a crash mid-write, is dropped on open
+            Files.write(journalPath, new byte[] { 0, 0, 0, 42, 5, 1 }, StandardOpenOption.APPEND);
+            long recoveryStart = System.nanoTime();
+            try (Splitwise recovered = Splitwise.open(journalPath)) {
+                long recoveryMillis = (System.nanoTime() - recoveryStart) / 1_000_000;
+                check(recovered.getJournal().getRecordsReplayed() == appended, "Every record is replayed");
+                check(recovered.getGroupById(tripId).getBalanceSheet().equals(tripSheet),
+                        "Replay rebuilds the group balance sheet");
+                check(recovered.getUserById(ashaId).getBalance().equals(ashaPeerBalance),
+                        "Replay rebuilds P2P balances");
+                check(recovered.getGroupById(tripId).getMember(ashaId) != null, "Replay rebuilds members");
+                System.out.println("Replayed " + appended + " records in " + recoveryMillis + " ms");
+            } finally {
+                Files.deleteIfExists(journalPath);
+            }
+
+            // a null field is encoded, and a record that fails to encode leaves no half-written frame
+            Path nullJournal = Files.createTempFile("splitwise-null", ".journal");
+            String quietId;
+            String laterId;
+            try (Splitwise durable = Splitwise.open(nullJournal)) {
+                quietId = durable.createUser("Quiet", null).getId();
+                LedgerJournal journal = durable.getJournal();
+                boolean rejected = false;
+                try {
+                    journal.appendMemberAdded(null, quietId);
+                } catch (NullPointerException e) {
+                    rejected = true;
+                }
+                check(rejected, "A record with a missing id is rejected");
+                laterId = durable.createUser("Later", "later@test.com").getId();
+            }
+            try (Splitwise recovered = Splitwise.open(nullJournal)) {
+                check(recovered.getJournal().getRecordsReplayed() == 2, "Records after a failed append still replay");
+                check(recovered.getUserById(quietId) != null && recovered.getUserById(quietId).getEmail() == null,
+                        "A null email survives replay");
+                check(recovered.getUserById(laterId).getEmail().equals("later@test.com"),
+                        "The user after the failed append is replayed");
+            } finally {
+                Files.deleteIfExists(nullJournal);
+            }
+
+            System.out.println("\n--- Test Case 18: Snapshot and Journal Compaction ---");
+            Path storeDir = Files.createTempDirectory("splitwise-store");
+            Path storeJournal = storeDir.resolve("ledger.journal");
+            Path storeSnapshot = storeDir.resolve("ledger.snapshot");
+            Path journalBackup = storeDir.resolve("ledger.journal.bak");
+            String flatId;
+            String deviId;
+            Map<String, Map<String, Money>> flatSheet;
+            Map<String, Map<String, Money>> checkpointSheet;
+            Map<String, Money> deviPeerBalance;
+            try (Splitwise durable = Splitwise.open(storeJournal, storeSnapshot)) {
+                durable.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> flatmates = new ArrayList<>();
+                Group flat = durable.createGroup("Snapshot Flat");
+                quietly(() -> {
+                    for (int i = 0; i < 4; i++) {
+                        User flatmate = durable.createUser("Flatmate" + i, "flatmate" + i + "@test.com");
+                        flatmates.add(flatmate.getId());
+                        durable.addGroupUser(flat.getId(), flatmate.getId());
+                    }
+                    for (int i = 0; i < 2_000; i++) {
+                        durable.addExpenseToGroup(flat.getId(), "Groceries " + i, 10.0 + i % 7,
+                                flatmates.get(i % 4), flatmates, SplitType.EQUAL);
+                    }
+                    durable.addIndividualPayment("Movie", 30.0, flatmates.get(0), flatmates.get(1), SplitType.EQUAL);
+                });
+                long journalBefore = durable.getJournal().size();
+                Files.copy(storeJournal, journalBackup);
+                long snapshotBytes = durable.checkpoint();
+                checkpointSheet = flat.getBalanceSheet();
+                check(durable.getJournal().size() < journalBefore, "Checkpoint truncates the journal");
+                System.out.println("Checkpoint wrote a " + snapshotBytes + " byte snapshot and cut the journal from "
+                        + journalBefore + " to " + durable.getJournal().size() + " bytes");
+
+                quietly(() -> {
+                    durable.addExpenseToGroup(flat.getId(), "Gas", 40.0, flatmates.get(1), flatmates, SplitType.EQUAL);
+                    durable.settlePaymentInGroup(flat.getId(), flatmates.get(2), flatmates.get(1), 5.0);
+                    durable.settleIndividualPayment(flatmates.get(1), flatmates.get(0), 5.0);
+                });
+                flatId = flat.getId();
+                deviId = flatmates.get(0);
+                flatSheet = flat.getBalanceSheet();
+                deviPeerBalance = durable.getUserById(deviId).getBalance();
+            }
+
+            try (Splitwise recovered = Splitwise.open(storeJournal, storeSnapshot)) {
+                RecoveryReport report = recovered.getRecoveryReport();
+                check(report.getJournalRecordsReplayed() == 3, "Only the journal tail is replayed");
+                check(recovered.getGroupById(flatId).getBalanceSheet().equals(flatSheet),
+                        "Snapshot plus tail rebuilds the balance sheet");
+                check(recovered.getGroupById(flatId).getExpenses().size() == 2_001, "Expense history survives");
+                check(recovered.getUserById(deviId).getBalance().equals(deviPeerBalance),
+                        "Snapshot plus tail rebuilds P2P balances");
+                System.out.println(report);
+            }
+
+            // a crash after the snapshot but before the archived journal was deleted leaves it behind
+            Files.copy(journalBackup, storeJournal, StandardCopyOption.REPLACE_EXISTING);
+            Path coveredArchive = storeDir.resolve("ledger.journal.0");
+            Files.copy(journalBackup, coveredArchive);
+            try (Splitwise recovered = Splitwise.open(storeJournal, storeSnapshot)) {
+                check(recovered.getRecoveryReport().getJournalRecordsReplayed() == 0,
+                        "A journal the snapshot already covers is skipped");
+                check(recovered.getGroupById(flatId).getBalanceSheet().equals(checkpointSheet),
+                        "Skipping the covered journal does not apply it twice");
+                check(!Files.exists(coveredArchive), "Covered archives are deleted on open");
+            }
+
+            // a crash after rolling the journal over but before the snapshot was written
+            Map<String, Map<String, Money>> rolledSheet;
+            try (Splitwise durable = Splitwise.open(storeJournal, storeSnapshot)) {
+                durable.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> flatmates = new ArrayList<>(durable.getGroupById(flatId).getBalanceSheet().keySet());
+                quietly(() -> durable.addExpenseToGroup(flatId, "Rent", 400.0, flatmates.get(0), flatmates,
+                        SplitType.EQUAL));
+                long archived = durable.getJournal().rollOver();
+                check(Files.exists(storeDir.resolve("ledger.journal." + archived)), "Roll over archives the journal");
+                quietly(() -> durable.addExpenseToGroup(flatId, "Power", 60.0, flatmates.get(1), flatmates,
+                        SplitType.EQUAL));
+                rolledSheet = durable.getGroupById(flatId).getBalanceSheet();
+            }
+            try (Splitwise recovered = Splitwise.open(storeJournal, storeSnapshot)) {
+                check(recovered.getRecoveryReport().getJournalRecordsReplayed() == 2,
+                        "An archive the snapshot does not cover is replayed before the journal");
+                check(recovered.getGroupById(flatId).getBalanceSheet().equals(rolledSheet),
+                        "Archive plus journal rebuild the balance sheet");
+            }
+
+            // the snapshot is written while changes carry on, and holds the ledger as of the roll over
+            int checkpointedExpenses;
+            Map<String, Map<String, Money>> busySheet;
+            try (Splitwise durable = Splitwise.open(storeJournal, storeSnapshot)) {
+                durable.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> flatmates = new ArrayList<>(durable.getGroupById(flatId).getBalanceSheet().keySet());
+                ExecutorService writer = Executors.newSingleThreadExecutor();
+                Future<?> writes = writer.submit(() -> quietly(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        durable.addExpenseToGroup(flatId, "Busy " + i, 5.0 + i % 3, flatmates.get(i % 4), flatmates,
+                                SplitType.EQUAL);
+                        if (i % 10 == 0) {
+                            Expense oldest = durable.getGroupById(flatId).getExpenses().values().iterator().next();
+                            durable.deleteExpense(flatId, oldest.getId());
+                        }
+                    }
+                }));
+                for (int i = 0; i < 5; i++) {
+                    durable.checkpoint();
+                }
+                writes.get();
+                writer.shutdown();
+                checkpointedExpenses = durable.getGroupById(flatId).getExpenses().size();
+                busySheet = durable.getGroupById(flatId).getBalanceSheet();
+            }
+            try (Splitwise recovered = Splitwise.open(storeJournal, storeSnapshot)) {
+                check(recovered.getGroupById(flatId).getExpenses().size() == checkpointedExpenses,
+                        "Checkpoints taken under load lose no expense and keep no deleted one");
+                check(recovered.getGroupById(flatId).getBalanceSheet().equals(busySheet),
+                        "Checkpoints taken under load rebuild the balance sheet");
+                try (Stream<Path> files = Files.list(storeDir)) {
+                    check(files.noneMatch(file -> file.getFileName().toString().matches("ledger\\.journal\\.\\d+")),
+                            "Finished checkpoints leave no archived journal behind");
+                }
+            } finally {
+                deleteRecursively(storeDir);
+            }
+
+            System.out.println("\n--- Test Case 19: Columnar Expense Store ---");
+            Path columnDir = Files.createTempDirectory("splitwise-columns");
+            try (Splitwise columnar = new Splitwise(ExpenseStore.mapped(columnDir))) {
+                columnar.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> hikers = new ArrayList<>();
+                Group hike = columnar.createGroup("Columnar Hike");
+                quietly(() -> {
+                    for (int i = 0; i < 3; i++) {
+                        User hiker = columnar.createUser("Hiker" + i, "hiker" + i + "@test.com");
+                        hikers.add(hiker.getId());
+                        columnar.addGroupUser(hike.getId(), hiker.getId());
+                    }
+                    for (int i = 0; i < 20_000; i++) {
+                        columnar.addExpenseToGroup(hike.getId(), "Trail snack " + i, 9.0 + i % 5,
+                                hikers.get(i % 3), hikers, SplitType.EQUAL);
+                    }
+                });
+
+                Map<String, Expense> hikeExpenses = hike.getExpenses();
+                check(hikeExpenses.size() == 20_000, "Every expense lands in the store");
+                Expense first = hikeExpenses.values().iterator().next();
+                Expense byId = hikeExpenses.get(first.getId());
+                check(byId.getId().equals(first.getId()) && byId.getDescription().startsWith("Trail snack "),
+                        "Lookup by id reads the description column");
+                check(byId.getGroupId().equals(hike.getId()) && byId.getPaidBy().equals(first.getPaidBy()),
+                        "Payer and group are dictionary decoded");
+                check(byId.getCreatedAt() > 0 && byId.getSplits().size() == 3, "Splits come back from the columns");
+                Money splitTotal = Money.ZERO;
+                for (Split split : byId.getSplits()) {
+                    splitTotal = splitTotal.plus(split.getAmount());
+                }
+                check(splitTotal.equals(byId.getTotalAmount()), "Stored splits add up to the total");
+
+                hike.removeExpense(first.getId());
+                check(!hikeExpenses.containsKey(first.getId()) && hikeExpenses.size() == 19_999,
+                        "Removed expenses disappear from the group view");
+
+                ExpenseStore store = hike.getExpenseStore();
+                System.out.println("Stored " + store.size() + " expenses in " + store.offHeapBytes()
+                        + " off-heap bytes (" + store.offHeapBytes() / store.size() + " bytes each)");
+                check(store != columnar.getExpenseStore() && columnar.getExpenseStore().size() == 0,
+                        "Each group gets a store of its own");
+
+                // thousands of small groups share one mapped file instead of mapping columns each
+                List<String> pair = hikers.subList(0, 2);
+                quietly(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        Group small = columnar.createGroup("Columnar Small " + i);
+                        columnar.addGroupUser(small.getId(), pair.get(0));
+                        columnar.addGroupUser(small.getId(), pair.get(1));
+                        columnar.addExpenseToGroup(small.getId(), "Coffee", 4.0, pair.get(0), pair, SplitType.EQUAL);
+                    }
+                });
+                try (Stream<Path> files = Files.list(columnDir)) {
+                    check(files.count() == 1, "Every owner's columns live in one arena file");
+                }
+                check(Files.size(columnDir.resolve("expenses.arena")) <= 2L * (64 << 20),
+                        "Small groups take a few kilobytes of the arena, not mappings of their own");
+
+                // every edit leaves a dead row behind until the store is compacted
+                Group edits = columnar.createGroup("Columnar Edits");
+                Expense edited = quietlyReturn(() -> {
+                    columnar.addGroupUser(edits.getId(), hikers.get(0));
+                    columnar.addGroupUser(edits.getId(), hikers.get(1));
+                    columnar.addExpenseToGroup(edits.getId(), "Permit", 10.0, hikers.get(0), hikers.subList(0, 2),
+                            SplitType.EQUAL);
+                    Expense latest = edits.getExpenses().values().iterator().next();
+                    for (int i = 0; i < 5_000; i++) {
+                        latest = columnar.updateExpense(edits.getId(), latest.getId(), "Permit " + i, 10.0 + i % 7,
+                                hikers.get(i % 2), hikers.subList(0, 2), SplitType.EQUAL, null);
+                    }
+                    return latest;
+                });
+                ExpenseStore compacted = edits.getExpenseStore();
+                check(compacted.size() <= 2 * 1024 + 1, "Dead rows are compacted away, not kept forever");
+                check(edits.getExpenses().size() == 1 && edits.getExpenses().get(edited.getId()) != null
+                        && edits.getExpenses().get(edited.getId()).getDescription().equals("Permit 4999"),
+                        "Compaction keeps the live expense");
+                check(edited.getDescription().equals("Permit 4999"), "Flyweights outlive the store they came from");
+            } finally {
+                deleteRecursively(columnDir);
+            }
+
+            System.out.println("\n--- Test Case 20: Batch Expense Ingestion ---");
+            Path batchJournal = Files.createTempFile("splitwise-batch", ".journal");
+            try {
+                String statementId;
+                Map<String, Map<String, Money>> statementSheet;
+                try (Splitwise batched = Splitwise.open(batchJournal)) {
+                    batched.setNotificationDispatcher(NotificationDispatcher.inline());
+                    List<String> roommates = new ArrayList<>();
+                    Group statement = batched.createGroup("Statement");
+                    Group oneByOne = batched.createGroup("One By One");
+                    quietly(() -> {
+                        for (int i = 0; i < 5; i++) {
+                            User roommate = batched.createUser("Roommate" + i, "roommate" + i + "@test.com");
+                            roommates.add(roommate.getId());
+                            batched.addGroupUser(statement.getId(), roommate.getId());
+                            batched.addGroupUser(oneByOne.getId(), roommate.getId());
+                        }
+                    });
+
+                    List<ExpenseRequest> requests = new ArrayList<>();
+                    for (int i = 0; i < 1_000; i++) {
+                        String paidBy = roommates.get(i % 5);
+                        if (i % 3 == 0) {
+                            requests.add(new ExpenseRequest("Rent " + i, 100.0, paidBy,
+                                    roommates.subList(0, 2), SplitType.EXACT, Arrays.asList(60.0, 40.0)));
+                        } else {
+                            requests.add(new ExpenseRequest("Line " + i, 10.0 + i % 13, paidBy,
+                                    roommates.subList(0, 2 + i % 4), SplitType.EQUAL));
+                        }
+                    }
+
+                    AtomicInteger statementNotices = new AtomicInteger();
+                    statement.addObserver(message -> statementNotices.incrementAndGet());
+                    List<Expense> posted = batched.addExpensesToGroup(statement.getId(), requests);
+                    quietly(() -> {
+                        for (ExpenseRequest request : requests) {
+                            batched.addExpenseToGroup(oneByOne.getId(), request.getDescription(),
+                                    request.getTotalAmount().toBigDecimal().doubleValue(), request.getPaidBy(), request.getUsers(),
+                                    request.getSplitType(), request.getSplits());
+                        }
+                    });
+                    check(posted.size() == 1_000 && statement.getExpenses().size() == 1_000,
+                            "Every request in the batch is posted");
+                    check(statement.getBalanceSheet().equals(oneByOne.getBalanceSheet()),
+                            "A batch nets to the same balances as posting one at a time");
+                    check(statementNotices.get() == 1, "Observers get one summary per batch");
+
+                    // one non-member at the end rejects the whole batch
+                    List<ExpenseRequest> badBatch = new ArrayList<>(requests.subList(0, 10));
+                    badBatch.add(new ExpenseRequest("Stranger", 5.0, "not-a-member", roommates, SplitType.EQUAL));
+                    Map<String, Map<String, Money>> before = statement.getBalanceSheet();
+                    try {
+                        batched.addExpensesToGroup(statement.getId(), badBatch);
+                        check(false, "A bad request must reject the batch");
+                    } catch (IllegalArgumentException expected) {
+                        check(expected.getMessage().startsWith("Request 10"), "The rejection names the request");
+                    }
+                    check(statement.getBalanceSheet().equals(before) && statement.getExpenses().size() == 1_000,
+                            "A rejected batch leaves the group untouched");
+
+                    statementId = statement.getId();
+                    statementSheet = statement.getBalanceSheet();
+                }
+
+                try (Splitwise recovered = Splitwise.open(batchJournal)) {
+                    check(recovered.getGroupById(statementId).getBalanceSheet().equals(statementSheet),
+                            "Replaying the batch record rebuilds the balances");
+                    check(recovered.getGroupById(statementId).getExpenses().size() == 1_000,
+                            "Replaying the batch record rebuilds the expenses");
+                }
+            } finally {
+                Files.deleteIfExists(batchJournal);
+            }
+
+            System.out.println("\n--- Test Case 21: Streaming Import ---");
+            Path importDir = Files.createTempDirectory("splitwise-import");
+            Path csvFile = importDir.resolve("statement.csv");
+            Path jsonFile = importDir.resolve("statement.jsonl");
+            try {
+                Splitwise importing = new Splitwise();
+                importing.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> emails = new ArrayList<>();
+                List<String> travellerIds = new ArrayList<>();
+                Group imported = importing.createGroup("Imported Trip");
+                Group mirror = importing.createGroup("Mirror Trip");
+                quietly(() -> {
+                    for (int i = 0; i < 4; i++) {
+                        User traveller = importing.createUser("Traveller" + i, "traveller" + i + "@test.com");
+                        emails.add(traveller.getEmail());
+                        travellerIds.add(traveller.getId());
+                        importing.addGroupUser(imported.getId(), traveller.getId());
+                        importing.addGroupUser(mirror.getId(), traveller.getId());
+                    }
+                    importing.createUser("Outsider", "outsider@test.com");
+                });
+
+                // enough rows to cross the reader's 1 MB chunk, with a few bad ones mixed in
+                List<ExpenseRequest> expected = new ArrayList<>();
+                StringBuilder csv = new StringBuilder("group,description,amount,paid_by,participants,split_type,splits\n");
+                for (int i = 0; i < 20_000; i++) {
+                    int payer = i % 4;
+                    if (i % 5_000 == 1) {
+                        csv.append("Imported Trip,Bad amount,12.x,").append(emails.get(payer)).append(',')
+                                .append(emails.get(0)).append(";").append(emails.get(1)).append(",EQUAL,\n");
+                    } else if (i % 5_000 == 2) {
+                        csv.append("Imported Trip,Stranger,10,OUTSIDER@test.com,").append(emails.get(0))
+                                .append(",EQUAL,\n");
+                    } else if (i % 5_000 == 3) {
+                        csv.append("Imported Trip,Nobody,10,").append(emails.get(0)).append(",ghost@test.com,EQUAL,\n");
+                    } else if (i % 3 == 0) {
+                        csv.append("Imported Trip,\"Taxi, \"\"airport\"\"\",100.00,").append(emails.get(payer))
+                                .append(',').append(emails.get(payer)).append(';').append(emails.get((payer + 1) % 4))
+                                .append(",EXACT,70;30\r\n");
+                        expected.add(new ExpenseRequest("Taxi, \"airport\"", 100.0, travellerIds.get(payer),
+                                Arrays.asList(travellerIds.get(payer), travellerIds.get((payer + 1) % 4)),
+                                SplitType.EXACT, Arrays.asList(70.0, 30.0)));
+                    } else {
+                        double amount = 10 + i % 17 + 0.25;
+                        csv.append("Imported Trip,Meal ").append(i).append(',').append(amount).append(',')
+                                .append(emails.get(payer)).append(',').append(String.join(";", emails)).append("\n");
+                        expected.add(new ExpenseRequest("Meal " + i, amount, travellerIds.get(payer), travellerIds,
+                                SplitType.EQUAL));
+                    }
+                }
+                Files.writeString(csvFile, csv);
+
+                ImportReport csvReport = quietImport(importing, csvFile);
+                check(csvReport.getRowsRead() == 20_000 && csvReport.getRowsRejected() == 12,
+                        "Every row is read and only the bad ones are rejected");
+                check(csvReport.getRowsImported() == expected.size()
+                        && imported.getExpenses().size() == expected.size(), "Good rows are posted");
+                check(csvReport.getRejections().get(0).startsWith("line 3: Bad amount"), "Rejections name the line");
+                check(csvReport.getBytesRead() == Files.size(csvFile), "The whole file is streamed");
+                quietly(() -> importing.addExpensesToGroup(mirror.getId(), expected));
+                check(imported.getBalanceSheet().equals(mirror.getBalanceSheet()),
+                        "Imported rows net to the same balances as the batch API");
+                System.out.println(csvReport);
+
+                Files.write(jsonFile, Arrays.asList(
+                        "{\"group\":\"Imported Trip\",\"description\":\"Museum\",\"amount\":90,\"paidBy\":\""
+                                + emails.get(0) + "\",\"participants\":[\"" + emails.get(0) + "\",\"" + emails.get(1)
+                                + "\"],\"splitType\":\"PERCENT\",\"splits\":[50,50]}",
+                        "",
+                        "{\"group\":\"Imported Trip\",\"description\":\"Caf\\u00e9\",\"amount\":\"12.50\",\"paidBy\":\""
+                                + emails.get(1) + "\",\"participants\":[\"" + emails.get(1) + "\",\"" + emails.get(2) + "\"]}",
+                        "{\"group\":\"Nowhere\",\"description\":\"Lost\",\"amount\":5,\"paidBy\":\"" + emails.get(0)
+                                + "\",\"participants\":[\"" + emails.get(0) + "\"]}",
+                        "{\"group\":\"Imported Trip\""));
+                ImportReport jsonReport = quietImport(importing, jsonFile);
+                check(jsonReport.getRowsRead() == 4 && jsonReport.getRowsImported() == 2
+                        && jsonReport.getRowsRejected() == 2, "JSON lines import the good rows");
+                check(imported.getNetBalance(travellerIds.get(1)).equals(
+                        mirror.getNetBalance(travellerIds.get(1)).minus(Money.of(45.0)).plus(Money.of(6.25))),
+                        "JSON rows post the right splits");
+            } finally {
+                for (Path file : Arrays.asList(csvFile, jsonFile)) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(importDir);
+            }
+
+            System.out.println("\n--- Test Case 22: Streaming Export ---");
+            Path exportDir = Files.createTempDirectory("splitwise-export");
+            try {
+                Splitwise source = new Splitwise();
+                Splitwise target = new Splitwise();
+                source.setNotificationDispatcher(NotificationDispatcher.inline());
+                target.setNotificationDispatcher(NotificationDispatcher.inline());
+                List<String> friendIds = new ArrayList<>();
+                List<Group> trips = new ArrayList<>();
+                quietly(() -> {
+                    for (int i = 0; i < 4; i++) {
+                        friendIds.add(source.createUser("Friend" + i, "friend" + i + "@test.com").getId());
+                        target.createUser("Friend" + i, "friend" + i + "@test.com");
+                    }
+                    for (int t = 0; t < 6; t++) {
+                        Group trip = source.createGroup("Export Trip " + t);
+                        target.createGroup("Export Trip " + t);
+                        for (String friendId : friendIds) {
+                            source.addGroupUser(trip.getId(), friendId);
+                            target.addGroupUser(target.getGroupByName(trip.getName()).getId(),
+                                    target.getUserByEmail(source.getUserById(friendId).getEmail()).getId());
+                        }
+                        for (int i = 0; i < 500; i++) {
+                            source.addExpenseToGroup(trip.getId(), i % 2 == 0 ? "Fuel, \"diesel\"" : "Snacks",
+                                    10.0 + (i * 7 + t) % 31, friendIds.get(i % 4), friendIds.subList(0, 2 + i % 3),
+                                    SplitType.EQUAL);
+                        }
+                        source.addExpenseToGroup(trip.getId(), "Hotel", 300.0, friendIds.get(0), friendIds,
+                                SplitType.PERCENT, Arrays.asList(40.0, 30.0, 20.0, 10.0));
+                        trips.add(trip);
+                    }
+                    source.addIndividualPayment("Tickets", 50.0, friendIds.get(1), friendIds.get(0), SplitType.EQUAL);
+                });
+
+                Path expenseCsv = exportDir.resolve("expenses.csv");
+                check(source.exportExpenses(expenseCsv) == 6 * 501, "Every group expense is exported");
+                ImportReport reimport = quietImport(target, expenseCsv);
+                check(reimport.getRowsImported() == 6 * 501, "An export imports back cleanly");
+                for (Group trip : trips) {
+                    check(target.getGroupByName(trip.getName()).getNetBalance(
+                            target.getUserByEmail("friend2@test.com").getId())
+                            .equals(trip.getNetBalance(friendIds.get(2))), "Re-imported balances match");
+                }
+
+                Path expenseJson = exportDir.resolve("expenses.jsonl");
+                source.exportExpenses(expenseJson);
+                Splitwise jsonTarget = new Splitwise();
+                jsonTarget.setNotificationDispatcher(NotificationDispatcher.inline());
+                quietly(() -> {
+                    Group trip = jsonTarget.createGroup(trips.get(0).getName());
+                    for (int i = 0; i < 4; i++) {
+                        jsonTarget.addGroupUser(trip.getId(),
+                                jsonTarget.createUser("Friend" + i, "friend" + i + "@test.com").getId());
+                    }
+                });
+                ImportReport jsonImport = quietImport(jsonTarget, expenseJson);
+                check(jsonImport.getRowsImported() == 501 && jsonImport.getRowsRejected() == 5 * 501,
+                        "JSON lines export imports back, rows for missing groups are rejected");
+
+                Path balancesCsv = exportDir.resolve("balances.csv");
+                long debts = 0;
+                for (Group trip : trips) {
+                    for (Map<String, Money> owes : trip.getBalanceSheet().values()) {
+                        debts += owes.size();
+                    }
+                }
+                check(source.exportBalances(balancesCsv) == debts, "One balance row per debt");
+
+                Path statementCsv = exportDir.resolve("statement.csv");
+                long statementRows = source.exportStatement(friendIds.get(0), statementCsv);
+                long netFromBalances = 0;
+                try (Stream<String> lines = Files.lines(statementCsv)) {
+                    for (String line : (Iterable<String>) lines.skip(1)::iterator) {
+                        if (line.startsWith("balance,")) {
+                            netFromBalances += Money.of(Double.parseDouble(line.substring(line.lastIndexOf(',') + 1)))
+                                    .getMinorUnits();
+                        }
+                    }
+                }
+                long expectedNet = source.getUserById(friendIds.get(0)).getBalance().get(friendIds.get(1)).negate()
+                        .getMinorUnits();
+                for (Group trip : trips) {
+                    expectedNet += trip.getNetBalance(friendIds.get(0)).getMinorUnits();
+                }
+                check(statementRows > 6 * 300 && netFromBalances == expectedNet,
+                        "A statement's balance rows add up to the user's position");
+
+                Path perGroup = Files.createDirectory(exportDir.resolve("groups"));
+                Map<String, Long> exported = source.exportGroups(perGroup, FileFormat.JSON_LINES);
+                check(exported.size() == 6, "Each group exports in parallel");
+                for (Group trip : trips) {
+                    try (Stream<String> lines = Files.lines(perGroup.resolve(trip.getId() + "-expenses.jsonl"))) {
+                        check(exported.get(trip.getId()) == 501 && lines.count() == 501,
+                                "A group's file holds its expenses");
+                    }
+                }
+                System.out.println("Exported " + 6 * 501 + " expenses and re-imported them: " + reimport);
+            } finally {
+                try (Stream<Path> files = Files.walk(exportDir)) {
+                    List<Path> paths = new ArrayList<>();
+                    files.forEach(paths::add);
+                    Collections.reverse(paths);
+                    for (Path path : paths) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+
+            System.out.println("\n--- Test Case 23: Cross-Group Totals ---");
+            Splitwise dashboard = new Splitwise();
+            dashboard.setNotificationDispatcher(NotificationDispatcher.inline());
+            List<String> neighbours = new ArrayList<>();
+            List<Group> clubs = new ArrayList<>();
+            quietly(() -> {
+                for (int i = 0; i < 5; i++) {
+                    neighbours.add(dashboard.createUser("Neighbour" + i, "neighbour" + i + "@test.com").getId());
+                }
+                for (int c = 0; c < 4; c++) {
+                    Group club = dashboard.createGroup("Club " + c);
+                    for (int i = 0; i < 5; i++) {
+                        if (i != c) {
+                            dashboard.addGroupUser(club.getId(), neighbours.get(i));
+                        }
+                    }
+                    clubs.add(club);
+                }
+            });
+            check(dashboard.getGroupsOfUser(neighbours.get(4)).size() == 4
+                    && dashboard.getGroupsOfUser(neighbours.get(0)).size() == 3, "Each user indexes their groups");
+
+            ExecutorService clubPool = Executors.newFixedThreadPool(4);
+            List<Future<?>> clubRuns = new ArrayList<>();
+            PrintStream dashboardOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (Group club : clubs) {
+                clubRuns.add(clubPool.submit(() -> {
+                    List<String> members = new ArrayList<>();
+                    for (User member : club.getUsers()) {
+                        members.add(member.getId());
+                    }
+                    for (int i = 0; i < 2_000; i++) {
+                        dashboard.addExpenseToGroup(club.getId(), "Dues", 5.0 + i % 9, members.get(i % 4), members,
+                                SplitType.EQUAL);
+                        if (i % 50 == 0) {
+                            dashboard.settlePaymentInGroup(club.getId(), members.get(1), members.get(2), 3.0);
+                        }
+                        if (i % 500 == 499) {
+                            dashboard.simplifyGroupDept(club.getId());
+                        }
+                        dashboard.addIndividualPayment("Coffee", 4.0, members.get(i % 4), members.get((i + 1) % 4),
+                                SplitType.EQUAL);
+                    }
+                }));
+            }
+            try {
+                for (Future<?> run : clubRuns) {
+                    run.get();
+                }
+            } finally {
+                System.setOut(dashboardOut);
+                clubPool.shutdown();
+            }
+
+            for (String neighbourId : neighbours) {
+                long owed = 0;
+                long owing = 0;
+                for (Group club : clubs) {
+                    for (Map.Entry<String, Map<String, Money>> debtor : club.getBalanceSheet().entrySet()) {
+                        for (Map.Entry<String, Money> creditor : debtor.getValue().entrySet()) {
+                            if (debtor.getKey().equals(neighbourId)) {
+                                owing += creditor.getValue().getMinorUnits();
+                            } else if (creditor.getKey().equals(neighbourId)) {
+                                owed += creditor.getValue().getMinorUnits();
+                            }
+                        }
+                    }
+                }
+                for (Money peer : dashboard.getUserById(neighbourId).getBalance().values()) {
+                    if (peer.isPositive()) {
+                        owing += peer.getMinorUnits();
+                    } else {
+                        owed -= peer.getMinorUnits();
+                    }
+                }
+                User neighbour = dashboard.getUserById(neighbourId);
+                check(neighbour.getTotalOwedAmount().getMinorUnits() == owed, "Cached owed total matches a full scan");
+                check(neighbour.getTotalOwingAmount().getMinorUnits() == owing,
+                        "Cached owing total matches a full scan");
+                check(neighbour.getNetAmount().getMinorUnits() == owed - owing, "Net is owed minus owing");
+            }
+
+            Group club0 = clubs.get(0);
+            String leaver = neighbours.get(1);
+            quietly(() -> {
+                club0.setBalanceSheet(new HashMap<>());
+                dashboard.removeGroupUser(club0.getId(), leaver);
+            });
+            check(!dashboard.getUserById(leaver).getGroupIds().contains(club0.getId())
+                    && dashboard.getGroupsOfUser(leaver).size() == 2, "Leaving a group updates the index");
+            User neighbour4 = dashboard.getUserById(neighbours.get(4));
+            System.out.println("Neighbour4 is owed " + neighbour4.getTotalOwedAmount() + " and owes "
+                    + neighbour4.getTotalOwingAmount() + " across " + neighbour4.getGroupIds().size() + " groups");
+
+            System.out.println("\n--- Test Case 24: Global Settlement Planning ---");
+            Splitwise planning = new Splitwise();
+            planning.setNotificationDispatcher(NotificationDispatcher.inline());
+            Map<String, String> ids = new HashMap<>();
+            Map<String, Group> planGroups = new HashMap<>();
+            quietly(() -> {
+                for (String name : Arrays.asList("Ana", "Ben", "Cal", "Dee", "Eli")) {
+                    ids.put(name, planning.createUser(name, name.toLowerCase() + "@test.com").getId());
+                }
+                for (String name : Arrays.asList("Lunch Club", "Book Club")) {
+                    planGroups.put(name, planning.createGroup(name));
+                }
+                planning.addGroupUser(planGroups.get("Lunch Club").getId(), ids.get("Ana"));
+                planning.addGroupUser(planGroups.get("Lunch Club").getId(), ids.get("Ben"));
+                planning.addGroupUser(planGroups.get("Book Club").getId(), ids.get("Ana"));
+                planning.addGroupUser(planGroups.get("Book Club").getId(), ids.get("Cal"));
+                // Ben owes Ana 50 at lunch, Ana owes Cal 50 at the book club
+                planning.addExpenseToGroup(planGroups.get("Lunch Club").getId(), "Lunch", 100.0, ids.get("Ana"),
+                        Arrays.asList(ids.get("Ana"), ids.get("Ben")), SplitType.EQUAL);
+                planning.addExpenseToGroup(planGroups.get("Book Club").getId(), "Books", 100.0, ids.get("Cal"),
+                        Arrays.asList(ids.get("Ana"), ids.get("Cal")), SplitType.EQUAL);
+                // Dee and Eli only know each other
+                planning.addIndividualPayment("Taxi", 20.0, ids.get("Dee"), ids.get("Eli"), SplitType.EQUAL);
+            });
+
+            SettlementPlan globalPlan = planning.planGlobalSettlement();
+            check(globalPlan.getDebtsBefore() == 3 && globalPlan.getComponentCount() == 2,
+                    "Separate networks plan separately");
+            check(globalPlan.getTransfers().size() == 2, "Ana's debts net out, so only Ben and Eli pay");
+            for (PlannedTransfer transfer : globalPlan.getTransfers()) {
+                if (transfer.getFromUserId().equals(ids.get("Ben"))) {
+                    check(transfer.getToUserId().equals(ids.get("Cal")) && transfer.getAmount().equals(Money.of(50.0)),
+                            "Ben pays Cal directly");
+                    check(transfer.getAmountBySource().equals(Map.of(planGroups.get("Lunch Club").getId(),
+                            Money.of(50.0))), "Ben's payment clears his lunch debt");
+                } else {
+                    check(transfer.getAmountBySource().equals(Map.of(SettlementPlanner.PEER_SOURCE, Money.of(10.0))),
+                            "Eli's payment clears a P2P debt");
+                }
+            }
+            SettlementPlan benPlan = planning.planSettlementFor(ids.get("Ben"));
+            check(benPlan.getComponentCount() == 1 && benPlan.getTransfers().size() == 1,
+                    "A user's plan covers only their network");
+
+            // every plan must move each person exactly by their overall net
+            SettlementPlan dashboardPlan = dashboard.planGlobalSettlement();
+            Map<String, Long> moved = new HashMap<>();
+            for (PlannedTransfer transfer : dashboardPlan.getTransfers()) {
+                long amount = transfer.getAmount().getMinorUnits();
+                moved.merge(transfer.getFromUserId(), -amount, Long::sum);
+                moved.merge(transfer.getToUserId(), amount, Long::sum);
+                long attributed = 0;
+                for (Money share : transfer.getAmountBySource().values()) {
+                    attributed += share.getMinorUnits();
+                }
+                check(attributed == amount, "Attribution covers each transfer");
+            }
+            for (String neighbourId : neighbours) {
+                check(moved.getOrDefault(neighbourId, 0L) == dashboard.getUserById(neighbourId).getNetAmount()
+                        .getMinorUnits(), "Planned transfers settle each user's overall net");
+            }
+
+            SettlementPlanner largePlanner = new SettlementPlanner();
+            Random planRandom = new Random(24);
+            int communities = 50_000;
+            long[] largeNets = new long[communities * 4];
+            for (int community = 0; community < communities; community++) {
+                for (int debt = 0; debt < 6; debt++) {
+                    int debtor = community * 4 + planRandom.nextInt(4);
+                    int creditor = community * 4 + planRandom.nextInt(4);
+                    long amount = 1 + planRandom.nextInt(10_000);
+                    largePlanner.addDebt("u" + debtor, "u" + creditor, amount, "g" + community % 100);
+                    if (debtor != creditor) {
+                        largeNets[debtor] -= amount;
+                        largeNets[creditor] += amount;
+                    }
+                }
+            }
+            SettlementPlan largePlan = largePlanner.plan(SimplificationMode.MAX_HEAP, true, ForkJoinPool.commonPool());
+            for (PlannedTransfer transfer : largePlan.getTransfers()) {
+                largeNets[Integer.parseInt(transfer.getFromUserId().substring(1))] += transfer.getAmount()
+                        .getMinorUnits();
+                largeNets[Integer.parseInt(transfer.getToUserId().substring(1))] -= transfer.getAmount()
+                        .getMinorUnits();
+            }
+            check(Arrays.stream(largeNets).allMatch(net -> net == 0), "A large plan settles everyone");
+            check(largePlan.getTransfers().size() < largePlan.getDebtsBefore(), "Planning removes transfers");
+            System.out.println(largePlan);
+
+            System.out.println("\n--- Test Case 25: Editing and Deleting Expenses ---");
+            Path editJournal = Files.createTempFile("splitwise-edit", ".journal");
+            try {
+                String editedGroupId;
+                Map<String, Money> expectedNets = new HashMap<>();
+                List<String> flatmates = new ArrayList<>();
+                try (Splitwise editing = Splitwise.open(editJournal)) {
+                    editing.setNotificationDispatcher(NotificationDispatcher.inline());
+                    Group flat = editing.createGroup("Flat");
+                    Group control = editing.createGroup("Control");
+                    editedGroupId = flat.getId();
+                    List<Expense> kept = new ArrayList<>();
+                    quietly(() -> {
+                        for (int i = 0; i < 4; i++) {
+                            User flatmate = editing.createUser("Flatmate" + i, "flatmate" + i + "@test.com");
+                            flatmates.add(flatmate.getId());
+                            editing.addGroupUser(flat.getId(), flatmate.getId());
+                            editing.addGroupUser(control.getId(), flatmate.getId());
+                        }
+                        for (int i = 0; i < 12; i++) {
+                            String payer = flatmates.get(i % 4);
+                            editing.addExpenseToGroup(flat.getId(), "Bill " + i, 40.0 + i, payer, flatmates,
+                                    SplitType.EQUAL);
+                        }
+                    });
+                    kept.addAll(flat.getExpenses().values());
+                    Expense doomed = kept.get(3);
+                    Expense edited = kept.get(7);
+
+                    // the sheet is rewritten before the changes, so reversals cannot rely on the original edges
+                    quietly(() -> editing.simplifyGroupDept(flat.getId()));
+                    check(quietlyReturn(() -> editing.deleteExpense(flat.getId(), doomed.getId())),
+                            "An expense can be deleted after simplification");
+                    Expense updated = quietlyReturn(() -> editing.updateExpense(flat.getId(), edited.getId(),
+                            "Bill 7 corrected", 90.0, flatmates.get(1), flatmates.subList(1, 3), SplitType.EQUAL,
+                            null));
+                    check(updated != null && updated.getId().equals(edited.getId())
+                            && updated.getCreatedAt() == edited.getCreatedAt(), "An update keeps id and creation time");
+                    check(!quietlyReturn(() -> editing.deleteExpense(flat.getId(), doomed.getId())),
+                            "Deleting twice is rejected");
+                    check(flat.getExpenses().size() == 11, "Deleting removes the expense");
+
+                    // the control group only ever saw the surviving expenses
+                    quietly(() -> {
+                        for (Expense expense : kept) {
+                            if (expense == doomed) {
+                                continue;
+                            }
+                            if (expense == edited) {
+                                editing.addExpenseToGroup(control.getId(), "Bill 7 corrected", 90.0,
+                                        flatmates.get(1), flatmates.subList(1, 3), SplitType.EQUAL);
+                            } else {
+                                editing.addExpenseToGroup(control.getId(), expense.getDescription(),
+                                        expense.getTotalAmount().toBigDecimal().doubleValue(), expense.getPaidBy(),
+                                        flatmates, SplitType.EQUAL);
+                            }
+                        }
+                    });
+                    for (String flatmate : flatmates) {
+                        check(flat.getNetBalance(flatmate).equals(control.getNetBalance(flatmate)),
+                                "Nets match a group that never had the old expenses");
+                        expectedNets.put(flatmate, flat.getNetBalance(flatmate));
+                    }
+                }
+
+                try (Splitwise replayed = Splitwise.open(editJournal)) {
+                    Group flat = replayed.getGroupById(editedGroupId);
+                    check(flat.getExpenses().size() == 11, "Replay drops the deleted expense");
+                    for (String flatmate : flatmates) {
+                        check(flat.getNetBalance(flatmate).equals(expectedNets.get(flatmate)),
+                                "Replay applies edits and deletes to the balances");
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(editJournal);
+            }
+
+            // edits cost the same no matter how much history the group has
+            Splitwise history = new Splitwise();
+            history.setNotificationDispatcher(NotificationDispatcher.inline());
+            Group archive = history.createGroup("Archive");
+            List<String> archivists = new ArrayList<>();
+            quietly(() -> {
+                for (int i = 0; i < 20; i++) {
+                    String id = history.createUser("Archivist" + i, "archivist" + i + "@test.com").getId();
+                    archivists.add(id);
+                    history.addGroupUser(archive.getId(), id);
+                }
+            });
+            List<ExpenseRequest> years = new ArrayList<>();
+            for (int i = 0; i < 200_000; i++) {
+                years.add(new ExpenseRequest("Day " + i, 10.0 + i % 50, archivists.get(i % 20),
+                        archivists.subList(0, 5 + i % 15), SplitType.EQUAL));
+            }
+            List<Expense> archived = new ArrayList<>();
+            for (int from = 0; from < years.size(); from += 10_000) {
+                int start = from;
+                archived.addAll(quietlyReturn(
+                        () -> history.addExpensesToGroup(archive.getId(), years.subList(start, start + 10_000))));
+            }
+            quietly(() -> history.simplifyGroupDept(archive.getId()));
+            Random editRandom = new Random(25);
+            long editStart = System.nanoTime();
+            quietly(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    Expense target = archived.get(editRandom.nextInt(archived.size()));
+                    history.updateExpense(archive.getId(), target.getId(), target.getDescription(), 12.5,
+                            archivists.get(i % 20), archivists.subList(0, 4), SplitType.EQUAL, null);
+                }
+            });
+            long editMicros = (System.nanoTime() - editStart) / 1_000 / 1_000;
+            long netSum = 0;
+            for (String archivist : archivists) {
+                netSum += archive.getNetBalance(archivist).getMinorUnits();
+            }
+            check(netSum == 0, "Balances still add up after edits on a long history");
+            System.out.println("1000 edits over " + archived.size() + " expenses took " + editMicros
+                    + " us per edit");
+
+            System.out.println("\n--- Test Case 26: Operation Metrics ---");
+            Splitwise measured = new Splitwise();
+            measured.setNotificationDispatcher(NotificationDispatcher.inline());
+            Group measuredGroup = measured.createGroup("Measured");
+            List<String> measuredIds = new ArrayList<>();
+            quietly(() -> {
+                for (int i = 0; i < 6; i++) {
+                    String id = measured.createUser("Measured" + i, "measured" + i + "@test.com").getId();
+                    measuredIds.add(id);
+                    measured.addGroupUser(measuredGroup.getId(), id);
+                }
+                for (int i = 0; i < 30; i++) {
+                    measured.addExpenseToGroup(measuredGroup.getId(), "Round " + i, 60.0, measuredIds.get(i % 6),
+                            measuredIds, SplitType.EQUAL);
+                }
+                measured.settlePaymentInGroup(measuredGroup.getId(), measuredIds.get(1), measuredIds.get(0), 5.0);
+                measured.simplifyGroupDept(measuredGroup.getId());
+            });
+
+            MetricsSnapshot measuredSnapshot = measured.getMetrics().snapshot();
+            check(measuredSnapshot.getCounter("ledger_expenses_added_total") == 30
+                    && measuredSnapshot.getHistogram("ledger_add_expense_nanos").getCount() == 30,
+                    "Each expense is counted and timed");
+            check(measuredSnapshot.getCounter("ledger_settlements_total") == 1
+                    && measuredSnapshot.getCounter("ledger_simplifications_total") == 1,
+                    "Settlements and simplifications are counted");
+            check(measuredSnapshot.getCounter("ledger_simplify_edges_after_total") <= measuredSnapshot
+                    .getCounter("ledger_simplify_edges_before_total"), "Simplification never adds edges");
+            check(measuredSnapshot.getHistogram("ledger_notification_latency_nanos").getCount() == measured
+                    .getNotificationDispatcher().getEnqueuedCount(),
+                    "Every notification's delivery is timed");
+            check(measuredSnapshot.getGauge("ledger_users") == 6 && measuredSnapshot.getGauge("ledger_groups") == 1,
+                    "Gauges read the current sizes");
+            HistogramSnapshot memberSizes = measuredSnapshot.getHistogram("ledger_group_members");
+            check(memberSizes.getCount() == 1 && memberSizes.getMax() == 6, "Group sizes are reported per group");
+            check(measuredSnapshot.getHistogram("ledger_group_expenses").getMax() == 30,
+                    "Expense counts are reported per group");
+            check(measuredSnapshot.format().contains("ledger_add_expense_nanos{quantile=\"0.99\"}"),
+                    "The dump is in a scrapeable text format");
+
+            // striped recording from many threads loses nothing, and percentiles stay within a few percent
+            LatencyHistogram shared = new LatencyHistogram();
+            ExecutorService recorders = Executors.newFixedThreadPool(8);
+            List<Future<?>> recorded = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                recorded.add(recorders.submit(() -> {
+                    for (int value = 1; value <= 100_000; value++) {
+                        shared.record(value * 1_000L);
+                    }
+                }));
+            }
+            for (Future<?> future : recorded) {
+                future.get();
+            }
+            recorders.shutdown();
+            HistogramSnapshot spread = shared.snapshot();
+            check(spread.getCount() == 800_000 && spread.getMax() == 100_000_000L, "Concurrent records are all kept");
+            long p99 = spread.getPercentile(99);
+            check(p99 >= 99_000_000L && p99 <= 99_000_000L * 104 / 100, "Percentiles are accurate to the bucket");
+
+            Path metricsFile = Files.createTempFile("splitwise-metrics", ".prom");
+            try {
+                measured.getMetrics().startPeriodicDump(metricsFile, 20, TimeUnit.MILLISECONDS);
+                long waitUntil = System.currentTimeMillis() + 5_000;
+                while (Files.size(metricsFile) == 0 && System.currentTimeMillis() < waitUntil) {
+                    Thread.sleep(10);
+                }
+                check(Files.readString(metricsFile).contains("ledger_expenses_added_total 30"),
+                        "The periodic dump writes the current values");
+            } finally {
+                measured.getMetrics().stopPeriodicDump();
+                Files.deleteIfExists(metricsFile);
+            }
+            System.out.println("add expense p50 " + measuredSnapshot.getHistogram("ledger_add_expense_nanos")
+                    .getPercentile(50) / 1_000 + " us over "
+                    + measuredSnapshot.getCounter("ledger_expenses_added_total") + " expenses");
+
+            System.out.println("\n--- Test Case 27: Shared Strategies and Split Validation ---");
+            check(SplitFactory.getInstance(SplitType.EQUAL) == SplitFactory.getInstance(SplitType.EQUAL),
+                    "Strategies are shared instances");
+            long[] shareBuffer = new long[4];
+            SplitFactory.getInstance(SplitType.PERCENT).split(1_000, 2, new double[] { 33.33, 33.33, 33.34 }, 3,
+                    shareBuffer);
+            check(shareBuffer[0] + shareBuffer[1] + shareBuffer[2] == 1_000 && shareBuffer[2] == 334,
+                    "Percent shares are written into the caller's array");
+            SplitFactory.getInstance(SplitType.EQUAL).split(1_000, 2, new double[0], 3, shareBuffer);
+            check(shareBuffer[0] == 334 && shareBuffer[1] == 333 && shareBuffer[2] == 333,
+                    "Equal shares hand leftover paise out in order");
+            boolean exactRejected = false;
+            try {
+                SplitFactory.getInstance(SplitType.EXACT).calculateSplit(Money.of(100.0),
+                        Arrays.asList("a", "b"), Arrays.asList(40.0, 50.0));
+            } catch (IllegalArgumentException e) {
+                exactRejected = e.getMessage().contains("90.00");
+            }
+            check(exactRejected, "Exact amounts must add up to the total");
+            boolean percentRejected = false;
+            try {
+                SplitFactory.getInstance(SplitType.PERCENT).calculateSplit(Money.of(100.0),
+                        Arrays.asList("a", "b"), Arrays.asList(40.0, 50.0));
+            } catch (IllegalArgumentException e) {
+                percentRejected = true;
+            }
+            check(percentRejected, "Percentages must add up to 100");
+
+            Group strict = quietlyReturn(() -> measured.createGroup("Strict"));
+            quietly(() -> {
+                for (String id : measuredIds.subList(0, 3)) {
+                    measured.addGroupUser(strict.getId(), id);
+                }
+            });
+            boolean postRejected = false;
+            try {
+                quietly(() -> strict.addExpense("Short", Money.of(90.0), measuredIds.get(0),
+                        Arrays.asList(30.0, 30.0, 20.0), measuredIds.subList(0, 3), SplitType.EXACT));
+            } catch (IllegalArgumentException e) {
+                postRejected = true;
+            }
+            check(postRejected && strict.getExpenseCount() == 0 && strict.getEdgeCount() == 0,
+                    "A rejected split leaves the group untouched");
+            quietly(() -> strict.addExpense("Odd", Money.of(0.1), measuredIds.get(0),
+                    Arrays.asList(50.0, 25.0, 25.0), measuredIds.subList(0, 3), SplitType.PERCENT));
+            Expense odd = strict.getExpenses().values().iterator().next();
+            long oddTotal = 0;
+            for (Split split : odd.getSplits()) {
+                oddTotal += split.getAmount().getMinorUnits();
+            }
+            check(oddTotal == 10 && strict.getNetBalance(measuredIds.get(0)).equals(Money.of(0.05)),
+                    "Stored splits and balances come from the same shares");
+
+            System.out.println("\n--- Test Case 28: Shares, Adjustment and Itemized Splits ---");
+            SplitFactory.getInstance(SplitType.SHARES).split(1_000, 2, new double[] { 2, 1, 1 }, 3, shareBuffer);
+            check(shareBuffer[0] == 500 && shareBuffer[1] == 250 && shareBuffer[2] == 250,
+                    "Shares split 2:1:1 by weight");
+            SplitFactory.getInstance(SplitType.SHARES).split(1_000, 2, new double[] { 1, 1, 1 }, 3, shareBuffer);
+            check(shareBuffer[0] == 334 && shareBuffer[1] == 333 && shareBuffer[2] == 333,
+                    "Shares hand leftover paise out in order on ties");
+            SplitFactory.getInstance(SplitType.ADJUSTMENT).split(10_000, 2, new double[] { 10, 0, 0 }, 3,
+                    shareBuffer);
+            check(shareBuffer[0] == 4_000 && shareBuffer[1] == 3_000 && shareBuffer[2] == 3_000,
+                    "Adjustments come on top of an equal split of the rest");
+            boolean adjustmentRejected = false;
+            try {
+                SplitFactory.getInstance(SplitType.ADJUSTMENT).split(10_000, 2, new double[] { 150, 0 }, 2,
+                        shareBuffer);
+            } catch (IllegalArgumentException e) {
+                adjustmentRejected = true;
+            }
+            check(adjustmentRejected, "Adjustments larger than the total are rejected");
+            SplitFactory.getInstance(SplitType.ITEMIZED).split(4_400, 2, new double[] { 30, 10 }, 2, shareBuffer);
+            check(shareBuffer[0] == 3_300 && shareBuffer[1] == 1_100, "Itemized extras follow the subtotals");
+
+            Group dinner = quietlyReturn(() -> measured.createGroup("Dinner"));
+            quietly(() -> {
+                for (String id : measuredIds.subList(0, 4)) {
+                    measured.addGroupUser(dinner.getId(), id);
+                }
+            });
+            Receipt receipt = new Receipt();
+            Random lines = new Random(28);
+            for (int line = 0; line < 120; line++) {
+                int first = lines.nextInt(4);
+                List<String> sharedBy = new ArrayList<>();
+                for (int k = 0; k <= line % 3; k++) {
+                    sharedBy.add(measuredIds.get((first + k) % 4));
+                }
+                receipt.addItem("Plate " + line, Money.ofMinor(99 + lines.nextInt(2_000)), sharedBy);
+            }
+            receipt.setTax(123.45).setTip(200.0);
+            Expense itemized = quietlyReturn(() -> measured.addItemizedExpenseToGroup(dinner.getId(), "Banquet",
+                    measuredIds.get(0), receipt));
+            long itemizedTotal = 0;
+            for (Split split : itemized.getSplits()) {
+                itemizedTotal += split.getAmount().getMinorUnits();
+            }
+            Money payerShare = itemized.getSplits().stream()
+                    .filter(split -> split.getUserId().equals(measuredIds.get(0)))
+                    .findFirst().get().getAmount();
+            check(dinner.getExpenseCount() == 1 && itemized.getSplits().size() == 4
+                    && itemizedTotal == receipt.getTotal().getMinorUnits(),
+                    "A 120-line receipt posts as one expense whose splits add up to the total");
+            check(dinner.getNetBalance(measuredIds.get(0)).equals(receipt.getTotal().minus(payerShare)),
+                    "The payer is owed everyone else's share of the receipt");
+
+            Receipt stranger = new Receipt().addItem("Wine", 40.0, Arrays.asList(measuredIds.get(5)));
+            boolean strangerRejected = false;
+            try {
+                quietly(() -> dinner.addItemizedExpense("Wine", measuredIds.get(0), stranger));
+            } catch (IllegalArgumentException e) {
+                strangerRejected = true;
+            }
+            check(strangerRejected && dinner.getExpenseCount() == 1,
+                    "Receipts naming non-members are rejected before anything is posted");
+
             System.out.println("\n--- ALL TESTS COMPLETED SUCCESSFULLY ---");
 
         } catch (Exception e) {
             System.err.println("Test Failed with Exception: " + e.getMessage());
             e.printStackTrace();
+            // so the build's test phase fails too
+            System.exit(1);
+        }
+    }
+
+    private static void runConcurrentStress(Splitwise manager) throws Exception {
+        int groupCount = 4;
+        int membersPerGroup = 6;
+        int tasksPerGroup = 4;
+        int operationsPerTask = 300;
+
+        List<Group> groups = new ArrayList<>();
+        List<List<String>> members = new ArrayList<>();
+        List<String> guests = new ArrayList<>();
+        quietly(() -> {
+            for (int g = 0; g < groupCount; g++) {
+                Group group = manager.createGroup("Stress" + g);
+                List<String> ids = new ArrayList<>();
+                for (int m = 0; m < membersPerGroup; m++) {
+                    User user = manager.createUser("Stress" + g + "_" + m, "stress" + g + "_" + m + "@test.com");
+                    manager.addGroupUser(group.getId(), user.getId());
+                    ids.add(user.getId());
+                }
+                groups.add(group);
+                members.add(ids);
+                guests.add(manager.createUser("Guest" + g, "guest" + g + "@test.com").getId());
+            }
+        });
+
+        // Expected nets (positive = owed to the user) accumulated by each task, merged afterwards
+        long[][] expected = new long[groupCount][membersPerGroup];
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<long[]>> results = new ArrayList<>();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            for (int g = 0; g < groupCount; g++) {
+                for (int t = 0; t < tasksPerGroup; t++) {
+                    int groupIndex = g;
+                    long seed = g * 31L + t;
+                    results.add(pool.submit(() -> runStressTask(manager, groups.get(groupIndex).getId(),
+                            members.get(groupIndex), guests.get(groupIndex), seed, operationsPerTask)));
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                long[] nets = results.get(i).get();
+                for (int m = 0; m < membersPerGroup; m++) {
+                    expected[i / tasksPerGroup][m] += nets[m];
+                }
+            }
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+
+        for (int g = 0; g < groupCount; g++) {
+            Map<String, Long> actual = new HashMap<>();
+            for (Map.Entry<String, Map<String, Money>> entry : groups.get(g).getBalanceSheet().entrySet()) {
+                for (Map.Entry<String, Money> owes : entry.getValue().entrySet()) {
+                    actual.merge(entry.getKey(), -owes.getValue().getMinorUnits(), Long::sum);
+                    actual.merge(owes.getKey(), owes.getValue().getMinorUnits(), Long::sum);
+                }
+            }
+
+            long total = 0;
+            for (int m = 0; m < membersPerGroup; m++) {
+                long net = actual.getOrDefault(members.get(g).get(m), 0L);
+                check(net == expected[g][m], "Net balance mismatch in group Stress" + g);
+                total += net;
+            }
+            check(total == 0, "Group Stress" + g + " does not net to zero");
+        }
+    }
+
+    private static void compareSimplifiers(int members) {
+        Random random = new Random(42);
+        int[] slots = new int[members];
+        long[] nets = new long[members];
+        long sum = 0;
+        for (int i = 0; i < members; i++) {
+            slots[i] = i;
+            nets[i] = i == members - 1 ? -sum : random.nextInt(2_000_001) - 1_000_000;
+            sum += nets[i];
+        }
+
+        for (int warmup = 0; warmup < 5; warmup++) {
+            DebtSimplifier.simplifyNets(slots, nets, SimplificationMode.GREEDY);
+            DebtSimplifier.simplifyNets(slots, nets, SimplificationMode.MAX_HEAP);
+        }
+
+        long start = System.nanoTime();
+        List<Transfer> greedy = DebtSimplifier.simplifyNets(slots, nets, SimplificationMode.GREEDY);
+        long greedyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Transfer> heap = DebtSimplifier.simplifyNets(slots, nets, SimplificationMode.MAX_HEAP);
+        long heapNanos = System.nanoTime() - start;
+
+        check(settles(heap, nets) && settles(greedy, nets), "Transfers must settle every net exactly");
+        check(heap.size() < members, "Heap matching needs at most n - 1 transfers");
+        List<Transfer> again = DebtSimplifier.simplifyNets(slots, nets, SimplificationMode.MAX_HEAP);
+        for (int i = 0; i < heap.size(); i++) {
+            check(again.get(i).getDebtor() == heap.get(i).getDebtor()
+                    && again.get(i).getCreditor() == heap.get(i).getCreditor()
+                    && again.get(i).getAmount() == heap.get(i).getAmount(), "Heap output must be deterministic");
+        }
+
+        System.out.println("Greedy : " + greedy.size() + " transfers in " + greedyNanos / 1_000 + " us");
+        System.out.println("Heap   : " + heap.size() + " transfers in " + heapNanos / 1_000 + " us");
+    }
+
+    private static boolean settles(List<Transfer> transfers, long[] nets) {
+        long[] remaining = nets.clone();
+        for (Transfer transfer : transfers) {
+            remaining[transfer.getDebtor()] += transfer.getAmount();
+            remaining[transfer.getCreditor()] -= transfer.getAmount();
+        }
+        for (long net : remaining) {
+            if (net != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void runConcurrentPeerPayments(Splitwise manager) throws Exception {
+        List<User> peers = new ArrayList<>();
+        quietly(() -> {
+            for (int i = 0; i < 4; i++) {
+                peers.add(manager.createUser("Peer" + i, "peer" + i + "@test.com"));
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        User payer = peers.get((offset + i) % peers.size());
+                        User other = peers.get((offset + i + 1) % peers.size());
+                        manager.addIndividualPayment("Coffee", 20.0, payer.getId(), other.getId(), SplitType.EQUAL);
+                        manager.settleIndividualPayment(other.getId(), payer.getId(), 10.0);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+
+        // Every coffee is repaid immediately, so all pairs end settled and both sides agree
+        for (User peer : peers) {
+            check(peer.getBalance().isEmpty(), peer.getName() + " should be settled up");
+            check(peer.getOwedAmount().isZero() && peer.getOwingAmount().isZero(), "Totals should be zero");
+        }
+
+        manager.addIndividualPayment("Lunch", 30.0, peers.get(0).getId(), peers.get(1).getId(), SplitType.EQUAL);
+        check(peers.get(1).getBalance().get(peers.get(0).getId()).equals(Money.of(15.0)), "Peer1 owes Peer0");
+        check(peers.get(0).getBalance().get(peers.get(1).getId()).equals(Money.of(-15.0)), "Peer0 is owed by Peer1");
+        manager.settleIndividualPayment(peers.get(1).getId(), peers.get(0).getId(), 15.0);
+        check(peers.get(0).getBalance().isEmpty(), "Settling clears the debt");
+    }
+
+    // Posts a seeded mix of expenses, settlements, simplifications and membership churn,
+    // returning the net (positive = owed to the user) it expects for each member.
+    private static long[] runStressTask(Splitwise manager, String groupId, List<String> ids, String guestId,
+            long seed, int operations) {
+        Random random = new Random(seed);
+        long[] nets = new long[ids.size()];
+
+        for (int op = 0; op < operations; op++) {
+            int payer = random.nextInt(ids.size());
+            int choice = random.nextInt(10);
+            if (choice < 6) {
+                double amount = (1 + random.nextInt(100_000)) / 100.0;
+                List<String> involved = new ArrayList<>(ids.subList(0, 2 + random.nextInt(ids.size() - 1)));
+                manager.addExpenseToGroup(groupId, "Stress", amount, ids.get(payer), involved, SplitType.EQUAL);
+                for (Split split : SplitFactory.getInstance(SplitType.EQUAL).calculateSplit(Money.of(amount),
+                        involved, new ArrayList<>())) {
+                    int debtor = ids.indexOf(split.getUserId());
+                    if (debtor != payer) {
+                        nets[debtor] -= split.getAmount().getMinorUnits();
+                        nets[payer] += split.getAmount().getMinorUnits();
+                    }
+                }
+            } else if (choice < 8) {
+                int receiver = (payer + 1 + random.nextInt(ids.size() - 1)) % ids.size();
+                double amount = (1 + random.nextInt(10_000)) / 100.0;
+                manager.settlePaymentInGroup(groupId, ids.get(payer), ids.get(receiver), amount);
+                nets[payer] += Money.of(amount).getMinorUnits();
+                nets[receiver] -= Money.of(amount).getMinorUnits();
+            } else if (choice < 9) {
+                manager.simplifyGroupDept(groupId);
+            } else {
+                manager.addGroupUser(groupId, guestId);
+                manager.removeGroupUser(groupId, guestId);
+            }
+        }
+        return nets;
+    }
+
+    private static void runJournalWriters(Splitwise durable, String groupId, List<String> members)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int t = 0; t < 8; t++) {
+                String paidBy = members.get(t % members.size());
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        durable.addExpenseToGroup(groupId, "Snack", 12.5, paidBy, members, SplitType.EQUAL);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            System.setOut(out);
+            pool.shutdown();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static ImportReport quietImport(Splitwise manager, Path file) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return manager.importExpenses(file);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static <T> T quietlyReturn(Supplier<T> action) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return action.get();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void quietly(Runnable action) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            action.run();
+        } finally {
+            System.setOut(out);
         }
     }
 }
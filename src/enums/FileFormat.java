@@ -0,0 +1,16 @@
+package enums;
+
+public enum FileFormat {
+    CSV,
+    JSON_LINES;
+
+    // Picks the format from the file extension: .jsonl/.ndjson are JSON lines, anything else CSV
+    public static FileFormat forFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".jsonl") || lower.endsWith(".ndjson") ? JSON_LINES : CSV;
+    }
+
+    public String extension() {
+        return this == JSON_LINES ? ".jsonl" : ".csv";
+    }
+}
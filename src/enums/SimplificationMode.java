@@ -0,0 +1,8 @@
+package enums;
+
+public enum SimplificationMode {
+    GREEDY,
+    MAX_HEAP,
+    OPTIMAL,
+    AUTO
+}
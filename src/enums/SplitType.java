@@ -3,5 +3,8 @@ package enums;
 public enum SplitType {
     EQUAL,
     PERCENT,
-    EXACT
+    EXACT,
+    SHARES,
+    ADJUSTMENT,
+    ITEMIZED
 }
\ No newline at end of file
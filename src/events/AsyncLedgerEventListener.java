@@ -0,0 +1,164 @@
+package events;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.User;
+
+// Hands events to a delegate on a background thread so callers never wait on its I/O.
+// The queue is bounded; when it is full new events are dropped and counted rather than
+// blocking the write path.
+public class AsyncLedgerEventListener implements LedgerEventListener, AutoCloseable {
+    private final LedgerEventListener delegate;
+    private final BlockingQueue<Runnable> queue;
+    private final Thread worker;
+    private final AtomicLong droppedEvents;
+    private volatile boolean running;
+
+    public AsyncLedgerEventListener(LedgerEventListener delegate) {
+        this(delegate, 8192);
+    }
+
+    public AsyncLedgerEventListener(LedgerEventListener delegate, int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.droppedEvents = new AtomicLong();
+        this.running = true;
+        this.worker = new Thread(this::drain, "ledger-events");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Runnable event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    event.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // a failing listener must not stop delivery of later events
+            }
+        }
+    }
+
+    private void submit(Runnable event) {
+        if (!queue.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    // Blocks until every event queued before this call has been delivered. Returns at once
+    // after close, which has already drained the queue, and stops waiting if the worker exits.
+    public void flush() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        CountDownLatch delivered = new CountDownLatch(1);
+        while (!queue.offer(delivered::countDown, 100, TimeUnit.MILLISECONDS)) {
+            if (!worker.isAlive()) {
+                return;
+            }
+        }
+        while (!delivered.await(100, TimeUnit.MILLISECONDS)) {
+            if (!worker.isAlive()) {
+                return;
+            }
+        }
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Waits for queued events to drain. If interrupted it stops waiting and keeps the
+    // interrupt for the caller; the daemon worker finishes on its own.
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public void onUserCreated(User user) {
+        submit(() -> delegate.onUserCreated(user));
+    }
+
+    @Override
+    public void onGroupCreated(Group group) {
+        submit(() -> delegate.onGroupCreated(group));
+    }
+
+    @Override
+    public void onGroupMemberRemoved(Group group, User user) {
+        submit(() -> delegate.onGroupMemberRemoved(group, user));
+    }
+
+    @Override
+    public void onExpenseAdded(Group group, Expense expense) {
+        submit(() -> delegate.onExpenseAdded(group, expense));
+    }
+
+    @Override
+    public void onExpensesAdded(Group group, List<Expense> expenses) {
+        submit(() -> delegate.onExpensesAdded(group, expenses));
+    }
+
+    @Override
+    public void onExpenseUpdated(Group group, Expense previous, Expense updated) {
+        submit(() -> delegate.onExpenseUpdated(group, previous, updated));
+    }
+
+    @Override
+    public void onExpenseDeleted(Group group, Expense expense) {
+        submit(() -> delegate.onExpenseDeleted(group, expense));
+    }
+
+    @Override
+    public void onGroupSettlement(Group group, User fromUser, User toUser, Money amount) {
+        submit(() -> delegate.onGroupSettlement(group, fromUser, toUser, amount));
+    }
+
+    @Override
+    public void onIndividualExpense(Expense expense, User paidByUser, User otherUser) {
+        submit(() -> delegate.onIndividualExpense(expense, paidByUser, otherUser));
+    }
+
+    @Override
+    public void onIndividualSettlement(User fromUser, User toUser, Money amount) {
+        submit(() -> delegate.onIndividualSettlement(fromUser, toUser, amount));
+    }
+
+    @Override
+    public void onNotification(User user, String message) {
+        submit(() -> delegate.onNotification(user, message));
+    }
+
+    @Override
+    public void onRequestRejected(String reason) {
+        submit(() -> delegate.onRequestRejected(reason));
+    }
+}
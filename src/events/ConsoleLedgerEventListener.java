@@ -0,0 +1,101 @@
+package events;
+
+import java.util.List;
+
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.Split;
+import models.User;
+
+// Opt-in adapter that prints ledger activity to stdout, as the demo and tests expect.
+public class ConsoleLedgerEventListener implements LedgerEventListener {
+
+    @Override
+    public void onUserCreated(User user) {
+        System.out.println("User created name : " + user.getName() + " and email : " + user.getEmail());
+    }
+
+    @Override
+    public void onGroupCreated(Group group) {
+        System.out.println("Group created name : " + group.getName());
+    }
+
+    @Override
+    public void onGroupMemberRemoved(Group group, User user) {
+        System.out.println("User removed name : " + user.getName() + " and email : " + user.getEmail());
+    }
+
+    @Override
+    public void onExpenseAdded(Group group, Expense expense) {
+        System.out.println("\n=========== Expense Message ====================");
+        System.out.println("Expense added to " + group.getName() + ": " + expense.getDescription() + " (Rs "
+                + expense.getTotalAmount() + ") paid by " + nameOf(group, expense.getPaidBy())
+                + " and involved people are : ");
+
+        for (Split split : expense.getSplits()) {
+            System.out.println(nameOf(group, split.getUserId()) + " : " + split.getAmount());
+        }
+    }
+
+    @Override
+    public void onExpensesAdded(Group group, List<Expense> expenses) {
+        Money total = Money.ZERO;
+        for (Expense expense : expenses) {
+            total = total.plus(expense.getTotalAmount());
+        }
+        System.out.println("\n=========== Expense Message ====================");
+        System.out.println(expenses.size() + " expenses added to " + group.getName() + " (Rs " + total + ")");
+    }
+
+    @Override
+    public void onExpenseUpdated(Group group, Expense previous, Expense updated) {
+        System.out.println("Expense updated in " + group.getName() + ": " + previous.getDescription() + " (Rs "
+                + previous.getTotalAmount() + ") is now " + updated.getDescription() + " (Rs "
+                + updated.getTotalAmount() + ") paid by " + nameOf(group, updated.getPaidBy()));
+    }
+
+    @Override
+    public void onExpenseDeleted(Group group, Expense expense) {
+        System.out.println("Expense deleted from " + group.getName() + ": " + expense.getDescription() + " (Rs "
+                + expense.getTotalAmount() + ")");
+    }
+
+    @Override
+    public void onGroupSettlement(Group group, User fromUser, User toUser, Money amount) {
+        System.out.println("\n=========== Settling Expense ====================");
+        System.out.println("Settled expense from " + fromUser.getName() + " to " + toUser.getName() + " (Rs " + amount
+                + ")");
+    }
+
+    @Override
+    public void onIndividualExpense(Expense expense, User paidByUser, User otherUser) {
+        System.out.println("Individual Expense added : " + expense.getDescription() + " (Rs "
+                + expense.getTotalAmount() + ") paid by " + paidByUser.getName());
+        for (Split split : expense.getSplits()) {
+            User user = split.getUserId().equals(paidByUser.getId()) ? paidByUser : otherUser;
+            System.out.println(user.getName() + " : " + split.getAmount());
+        }
+    }
+
+    @Override
+    public void onIndividualSettlement(User fromUser, User toUser, Money amount) {
+        System.out.println("Individual payment settled from " + fromUser.getName() + " to " + toUser.getName()
+                + " (Rs " + amount + ")");
+    }
+
+    @Override
+    public void onNotification(User user, String message) {
+        System.out.println("User: " + user.getName() + " received message: " + message);
+    }
+
+    @Override
+    public void onRequestRejected(String reason) {
+        System.out.println(reason);
+    }
+
+    private static String nameOf(Group group, String userId) {
+        User user = group.getMember(userId);
+        return user == null ? userId : user.getName();
+    }
+}
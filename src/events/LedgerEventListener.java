@@ -0,0 +1,53 @@
+package events;
+
+import java.util.List;
+
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.User;
+
+// Receives ledger activity as typed callbacks. Callers pass the objects they already hold,
+// so nothing is formatted or allocated unless a listener chooses to.
+public interface LedgerEventListener {
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    default void onUserCreated(User user) {
+    }
+
+    default void onGroupCreated(Group group) {
+    }
+
+    default void onGroupMemberRemoved(Group group, User user) {
+    }
+
+    default void onExpenseAdded(Group group, Expense expense) {
+    }
+
+    default void onExpensesAdded(Group group, List<Expense> expenses) {
+    }
+
+    default void onExpenseUpdated(Group group, Expense previous, Expense updated) {
+    }
+
+    default void onExpenseDeleted(Group group, Expense expense) {
+    }
+
+    default void onGroupSettlement(Group group, User fromUser, User toUser, Money amount) {
+    }
+
+    default void onIndividualExpense(Expense expense, User paidByUser, User otherUser) {
+    }
+
+    default void onIndividualSettlement(User fromUser, User toUser, Money amount) {
+    }
+
+    default void onNotification(User user, String message) {
+    }
+
+    default void onRequestRejected(String reason) {
+    }
+}
@@ -0,0 +1,27 @@
+package events;
+
+// Process-wide listener used by Splitwise, Group and User. Defaults to a no-op so the
+// write path does no I/O until something is attached.
+public class LedgerEvents {
+
+    public static final LedgerEventListener NO_OP = new LedgerEventListener() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    private static volatile LedgerEventListener listener = NO_OP;
+
+    public static LedgerEventListener get() {
+        return listener;
+    }
+
+    public static void set(LedgerEventListener newListener) {
+        listener = newListener == null ? NO_OP : newListener;
+    }
+
+    public static boolean isEnabled() {
+        return listener.isEnabled();
+    }
+}
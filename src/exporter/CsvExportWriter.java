@@ -0,0 +1,58 @@
+package exporter;
+
+import java.io.IOException;
+import java.util.List;
+
+// Header row first; lists are joined with ';' and fields holding a comma, quote or line
+// break are quoted, the way CsvRowParser reads them back.
+public class CsvExportWriter extends ExportWriter {
+
+    public CsvExportWriter(BufferedChannelWriter out, String[] columns) throws IOException {
+        super(out, columns);
+        out.write(String.join(",", columns) + "\n");
+    }
+
+    @Override
+    protected void format(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = values[i];
+            if (value instanceof List) {
+                StringBuilder joined = new StringBuilder();
+                for (Object item : (List<?>) value) {
+                    if (joined.length() > 0) {
+                        joined.append(';');
+                    }
+                    joined.append(item);
+                }
+                appendField(joined);
+            } else if (value != null) {
+                appendField(value.toString());
+            }
+        }
+    }
+
+    private void appendField(CharSequence field) {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(field);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            // a row must stay on one line
+            line.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        line.append('"');
+    }
+}
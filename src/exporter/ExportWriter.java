@@ -0,0 +1,62 @@
+package exporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import enums.FileFormat;
+
+// Writes rows with a fixed set of columns. Column names are given in snake_case, as CSV
+// headers use them; JSON lines spell them in camelCase, matching what the importer reads.
+// Values may be strings, numbers, Money, lists of those, or null.
+public abstract class ExportWriter implements AutoCloseable {
+    private static final int BUFFER_BYTES = 256 << 10;
+
+    protected final BufferedChannelWriter out;
+    protected final String[] columns;
+    protected final StringBuilder line;
+    private long rowCount;
+
+    protected ExportWriter(BufferedChannelWriter out, String[] columns) {
+        this.out = out;
+        this.columns = columns;
+        this.line = new StringBuilder(256);
+    }
+
+    public static ExportWriter open(Path path, FileFormat format, String... columns) throws IOException {
+        BufferedChannelWriter out = new BufferedChannelWriter(path, BUFFER_BYTES);
+        try {
+            return format == FileFormat.JSON_LINES ? new JsonLineExportWriter(out, columns)
+                    : new CsvExportWriter(out, columns);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    // One value per column, in the order the columns were given
+    public void writeRow(Object... values) throws IOException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        line.setLength(0);
+        format(values);
+        line.append('\n');
+        out.write(line);
+        rowCount++;
+    }
+
+    protected abstract void format(Object[] values);
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getBytesWritten() {
+        return out.getBytesWritten();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
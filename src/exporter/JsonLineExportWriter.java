@@ -0,0 +1,91 @@
+package exporter;
+
+import java.util.List;
+
+import models.Money;
+
+// One flat JSON object per row. Numbers and Money are written as JSON numbers.
+public class JsonLineExportWriter extends ExportWriter {
+    private final String[] keys;
+
+    public JsonLineExportWriter(BufferedChannelWriter out, String[] columns) {
+        super(out, columns);
+        this.keys = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            StringBuilder key = new StringBuilder();
+            appendString(key, camelCase(columns[i]));
+            this.keys[i] = key.append(':').toString();
+        }
+    }
+
+    private static String camelCase(String column) {
+        StringBuilder key = new StringBuilder(column.length());
+        boolean upper = false;
+        for (int i = 0; i < column.length(); i++) {
+            char c = column.charAt(i);
+            if (c == '_') {
+                upper = true;
+            } else {
+                key.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return key.toString();
+    }
+
+    @Override
+    protected void format(Object[] values) {
+        line.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(keys[i]);
+            appendValue(values[i]);
+        }
+        line.append('}');
+    }
+
+    private void appendValue(Object value) {
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Number || value instanceof Money || value instanceof Boolean) {
+            line.append(value);
+        } else if (value instanceof List) {
+            line.append('[');
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) {
+                    line.append(',');
+                }
+                appendValue(item);
+                first = false;
+            }
+            line.append(']');
+        } else {
+            appendString(line, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,166 @@
+package exporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import enums.FileFormat;
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.Split;
+import models.User;
+
+// Streams ledger state to CSV or JSON-lines files. Groups and expenses are read one at a
+// time through their lazy iterators and written through a fixed buffer, so memory does not
+// grow with history. Each group's balance sheet is copied under its lock; expenses are not,
+// so one posted while an export runs may or may not appear in it.
+//
+// The expense file uses the importer's columns with exact splits, so it can be imported
+// back as it is. People are written by email, falling back to their id if unknown.
+public class LedgerExporter {
+    public static final String[] EXPENSE_COLUMNS = { "group", "description", "amount", "paid_by", "participants",
+            "split_type", "splits", "id", "created_at" };
+    public static final String[] BALANCE_COLUMNS = { "group", "debtor", "creditor", "amount" };
+    public static final String[] STATEMENT_COLUMNS = { "kind", "group", "created_at", "description", "counterparty",
+            "amount", "net" };
+
+    private final Function<String, User> users;
+
+    public LedgerExporter(Function<String, User> users) {
+        this.users = users;
+    }
+
+    // Returns the number of expenses written
+    public long writeExpenses(Path path, FileFormat format, Iterable<Group> groups) throws IOException {
+        try (ExportWriter out = ExportWriter.open(path, format, EXPENSE_COLUMNS)) {
+            for (Group group : groups) {
+                writeExpenses(out, group);
+            }
+            return out.getRowCount();
+        }
+    }
+
+    private void writeExpenses(ExportWriter out, Group group) throws IOException {
+        for (Expense expense : group.getExpenses().values()) {
+            List<Split> splits = expense.getSplits();
+            List<String> participants = new ArrayList<>(splits.size());
+            List<Money> amounts = new ArrayList<>(splits.size());
+            for (Split split : splits) {
+                participants.add(emailOf(split.getUserId()));
+                amounts.add(split.getAmount());
+            }
+            out.writeRow(group.getName(), expense.getDescription(), expense.getTotalAmount(),
+                    emailOf(expense.getPaidBy()), participants, "EXACT", amounts, expense.getId(),
+                    expense.getCreatedAt());
+        }
+    }
+
+    // One row per debt in each group's balance sheet. Returns the number of rows written.
+    public long writeBalances(Path path, FileFormat format, Iterable<Group> groups) throws IOException {
+        try (ExportWriter out = ExportWriter.open(path, format, BALANCE_COLUMNS)) {
+            for (Group group : groups) {
+                writeBalances(out, group);
+            }
+            return out.getRowCount();
+        }
+    }
+
+    private void writeBalances(ExportWriter out, Group group) throws IOException {
+        for (Map.Entry<String, Map<String, Money>> debtor : group.getBalanceSheet().entrySet()) {
+            for (Map.Entry<String, Money> creditor : debtor.getValue().entrySet()) {
+                out.writeRow(group.getName(), emailOf(debtor.getKey()), emailOf(creditor.getKey()),
+                        creditor.getValue());
+            }
+        }
+    }
+
+    // Both files for one group, named <group id>-expenses and <group id>-balances in directory
+    public long writeGroup(Path directory, FileFormat format, Group group) throws IOException {
+        long rows;
+        try (ExportWriter out = ExportWriter.open(directory.resolve(group.getId() + "-expenses"
+                + format.extension()), format, EXPENSE_COLUMNS)) {
+            writeExpenses(out, group);
+            rows = out.getRowCount();
+        }
+        try (ExportWriter out = ExportWriter.open(directory.resolve(group.getId() + "-balances"
+                + format.extension()), format, BALANCE_COLUMNS)) {
+            writeBalances(out, group);
+        }
+        return rows;
+    }
+
+    // Everything touching one user: an "expense" row for each group or individual expense they
+    // paid or share in, then a "balance" row per person they owe or are owed by. net is
+    // positive when it leaves others owing the user. Returns the number of rows written.
+    public long writeStatement(Path path, FileFormat format, User user, Iterable<Group> groups,
+            Iterable<Expense> individualExpenses) throws IOException {
+        String userId = user.getId();
+        try (ExportWriter out = ExportWriter.open(path, format, STATEMENT_COLUMNS)) {
+            List<Group> memberOf = new ArrayList<>();
+            for (Group group : groups) {
+                if (!group.isMember(userId)) {
+                    continue;
+                }
+                memberOf.add(group);
+                for (Expense expense : group.getExpenses().values()) {
+                    writeStatementExpense(out, group.getName(), expense, userId);
+                }
+            }
+            for (Expense expense : individualExpenses) {
+                writeStatementExpense(out, null, expense, userId);
+            }
+
+            for (Group group : memberOf) {
+                for (Map.Entry<String, Map<String, Money>> debtor : group.getBalanceSheet().entrySet()) {
+                    for (Map.Entry<String, Money> creditor : debtor.getValue().entrySet()) {
+                        if (debtor.getKey().equals(userId)) {
+                            out.writeRow("balance", group.getName(), null, null, emailOf(creditor.getKey()), null,
+                                    creditor.getValue().negate());
+                        } else if (creditor.getKey().equals(userId)) {
+                            out.writeRow("balance", group.getName(), null, null, emailOf(debtor.getKey()), null,
+                                    creditor.getValue());
+                        }
+                    }
+                }
+            }
+            // P2P balances are positive when the user owes the other person
+            for (Map.Entry<String, Money> other : user.getBalance().entrySet()) {
+                out.writeRow("balance", null, null, null, emailOf(other.getKey()), null, other.getValue().negate());
+            }
+            return out.getRowCount();
+        }
+    }
+
+    private void writeStatementExpense(ExportWriter out, String groupName, Expense expense, String userId)
+            throws IOException {
+        boolean paid = expense.getPaidBy().equals(userId);
+        Money share = null;
+        for (Split split : expense.getSplits()) {
+            if (split.getUserId().equals(userId)) {
+                share = split.getAmount();
+                break;
+            }
+        }
+        if (!paid && share == null) {
+            return;
+        }
+
+        Money net;
+        if (paid) {
+            net = share == null ? expense.getTotalAmount() : expense.getTotalAmount().minus(share);
+        } else {
+            net = share.negate();
+        }
+        out.writeRow("expense", groupName, expense.getCreatedAt(), expense.getDescription(),
+                emailOf(expense.getPaidBy()), expense.getTotalAmount(), net);
+    }
+
+    private String emailOf(String userId) {
+        User user = users.apply(userId);
+        return user == null || user.getEmail() == null ? userId : user.getEmail();
+    }
+}
@@ -1,26 +1,35 @@
 package factory;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import enums.SplitType;
+import strategy.AdjustmentSplit;
 import strategy.EqualSplit;
 import strategy.ExactSplit;
+import strategy.ItemizedSplit;
 import strategy.PercentageSplit;
+import strategy.SharesSplit;
 import strategy.SplitStrategy;
 
 public class SplitFactory {
+    // Strategies hold no state, so one instance per type serves every expense
+    private static final Map<SplitType, SplitStrategy> STRATEGIES = new EnumMap<>(SplitType.class);
+
+    static {
+        STRATEGIES.put(SplitType.EQUAL, new EqualSplit());
+        STRATEGIES.put(SplitType.EXACT, new ExactSplit());
+        STRATEGIES.put(SplitType.PERCENT, new PercentageSplit());
+        STRATEGIES.put(SplitType.SHARES, new SharesSplit());
+        STRATEGIES.put(SplitType.ADJUSTMENT, new AdjustmentSplit());
+        STRATEGIES.put(SplitType.ITEMIZED, new ItemizedSplit());
+    }
 
     public static SplitStrategy getInstance(SplitType type) {
-        switch (type) {
-            case EQUAL -> {
-                return new EqualSplit();
-            }
-            case EXACT -> {
-                return new ExactSplit();
-            }
-            case PERCENT -> {
-                return new PercentageSplit();
-            }
-            default -> throw new IllegalArgumentException("Invalid split type");
+        SplitStrategy strategy = type == null ? null : STRATEGIES.get(type);
+        if (strategy == null) {
+            throw new IllegalArgumentException("Invalid split type");
         }
-
+        return strategy;
     }
 }
@@ -0,0 +1,85 @@
+package importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a file line by line through a fixed-size buffer, so memory stays flat however
+// large the file is. Lines end at \n (a trailing \r is dropped) and must fit in one chunk.
+public class ChunkedLineReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int scanFrom; // bytes before this in the buffer are known not to hold \n
+    private long lineNumber;
+    private long bytesRead;
+    private boolean endOfFile;
+
+    public ChunkedLineReader(Path path, int chunkBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocate(chunkBytes);
+        this.buffer.limit(0);
+    }
+
+    // Returns the next line without its terminator, or null at end of file
+    public String readLine() throws IOException {
+        byte[] bytes = buffer.array();
+        while (true) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = Math.max(start, scanFrom); i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    buffer.position(i + 1);
+                    scanFrom = i + 1;
+                    return line(bytes, start, i);
+                }
+            }
+
+            if (endOfFile) {
+                if (start == limit) {
+                    return null;
+                }
+                buffer.position(limit);
+                return line(bytes, start, limit);
+            }
+            if (start == 0 && limit == bytes.length) {
+                throw new IOException("Line " + (lineNumber + 1) + " is longer than " + bytes.length + " bytes");
+            }
+
+            // keep the partial line, move it to the front and read the next chunk behind it
+            scanFrom = limit - start;
+            buffer.compact();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                bytesRead += read;
+            }
+            buffer.flip();
+        }
+    }
+
+    private String line(byte[] bytes, int start, int end) {
+        lineNumber++;
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Line number of the line last returned, starting at 1
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,138 @@
+package importer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import enums.SplitType;
+import models.Money;
+
+// Comma-separated rows under a header naming the columns, in any order:
+//
+//   group,description,amount,paid_by,participants,split_type,splits
+//
+// participants and splits hold ';'-separated lists; split_type and splits may be omitted
+// for equal splits. Fields may be quoted with "", doubling any quote inside them.
+// A quoted field cannot span lines.
+public class CsvRowParser implements RowParser {
+    private static final String[] REQUIRED = { "group", "description", "amount", "paid_by", "participants" };
+
+    private Map<String, Integer> columns; // null until the header is read
+
+    @Override
+    public ImportRow parse(String line, long lineNumber) {
+        if (line.isBlank()) {
+            return null;
+        }
+
+        List<String> fields = split(line);
+        if (columns == null) {
+            readHeader(fields);
+            return null;
+        }
+
+        String splitType = field(fields, "split_type");
+        String splits = field(fields, "splits");
+        return new ImportRow(lineNumber, required(fields, "group"), required(fields, "description"),
+                parseAmount(required(fields, "amount")), required(fields, "paid_by"),
+                list(required(fields, "participants")),
+                splitType.isEmpty() ? SplitType.EQUAL : parseSplitType(splitType), parseSplits(splits));
+    }
+
+    private void readHeader(List<String> fields) {
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            header.put(fields.get(i).trim().toLowerCase(), i);
+        }
+        for (String column : REQUIRED) {
+            if (!header.containsKey(column)) {
+                throw new IllegalStateException("CSV header is missing column " + column);
+            }
+        }
+        columns = header;
+    }
+
+    private String field(List<String> fields, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? "" : fields.get(index).trim();
+    }
+
+    private String required(List<String> fields, String column) {
+        String value = field(fields, column);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + column);
+        }
+        return value;
+    }
+
+    static Money parseAmount(String value) {
+        try {
+            return Money.of(new BigDecimal(value), Money.DEFAULT_SCALE);
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Bad amount " + value);
+        }
+    }
+
+    static SplitType parseSplitType(String value) {
+        try {
+            return SplitType.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown split type " + value);
+        }
+    }
+
+    private static List<Double> parseSplits(String value) {
+        List<Double> splits = new ArrayList<>();
+        for (String part : list(value)) {
+            try {
+                splits.add(Double.parseDouble(part));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad split " + part);
+            }
+        }
+        return splits;
+    }
+
+    private static List<String> list(String value) {
+        List<String> parts = new ArrayList<>();
+        for (String part : value.split(";")) {
+            if (!part.isBlank()) {
+                parts.add(part.trim());
+            }
+        }
+        return parts;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
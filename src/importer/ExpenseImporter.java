@@ -0,0 +1,158 @@
+package importer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import enums.FileFormat;
+import models.ExpenseRequest;
+import models.Group;
+import models.User;
+
+// Streams an expense file into the ledger. Lines are read through a fixed buffer, parsed
+// and resolved one at a time, and collected per group until batchSize rows are pending;
+// then every pending batch is posted. Memory is bounded by the chunk and batch sizes, not
+// the file.
+//
+// A row that cannot be parsed or names an unknown group or user is rejected on its own.
+// If the ledger rejects a batch, it is split and retried so only the bad rows are dropped.
+public class ExpenseImporter {
+    private static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+    private static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    private final ImportTarget target;
+    private final int chunkBytes;
+    private final int batchSize;
+
+    public ExpenseImporter(ImportTarget target) {
+        this(target, DEFAULT_CHUNK_BYTES, DEFAULT_BATCH_SIZE);
+    }
+
+    public ExpenseImporter(ImportTarget target, int chunkBytes, int batchSize) {
+        this.target = target;
+        this.chunkBytes = chunkBytes;
+        this.batchSize = batchSize;
+    }
+
+    public ImportReport importFile(Path path) throws IOException {
+        return importFile(path, FileFormat.forFileName(path.getFileName().toString()));
+    }
+
+    public ImportReport importFile(Path path, FileFormat format) throws IOException {
+        RowParser parser = format == FileFormat.JSON_LINES ? new JsonLineRowParser() : new CsvRowParser();
+        ImportReport report = new ImportReport();
+        Map<Group, PendingBatch> pending = new LinkedHashMap<>();
+        int pendingRows = 0;
+        long start = System.nanoTime();
+
+        try (ChunkedLineReader reader = new ChunkedLineReader(path, chunkBytes)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long lineNumber = reader.getLineNumber();
+                // drop a UTF-8 byte order mark
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+
+                ImportRow row;
+                try {
+                    row = parser.parse(line, lineNumber);
+                } catch (IllegalArgumentException e) {
+                    report.rowRead();
+                    report.rejected(lineNumber, e.getMessage());
+                    continue;
+                }
+                if (row == null) {
+                    continue;
+                }
+                report.rowRead();
+
+                Group group = target.findGroup(row.getGroupName());
+                if (group == null) {
+                    report.rejected(lineNumber, "Unknown group " + row.getGroupName());
+                    continue;
+                }
+                ExpenseRequest request;
+                try {
+                    request = toRequest(row);
+                } catch (IllegalArgumentException e) {
+                    report.rejected(lineNumber, e.getMessage());
+                    continue;
+                }
+
+                pending.computeIfAbsent(group, k -> new PendingBatch()).add(request, lineNumber);
+                if (++pendingRows >= batchSize) {
+                    postAll(pending, report);
+                    pendingRows = 0;
+                }
+            }
+            postAll(pending, report);
+            report.finished(reader.getBytesRead(), System.nanoTime() - start);
+        }
+        return report;
+    }
+
+    private ExpenseRequest toRequest(ImportRow row) {
+        String paidBy = userId(row.getPaidByEmail());
+        List<String> participants = new ArrayList<>(row.getParticipantEmails().size());
+        for (String email : row.getParticipantEmails()) {
+            participants.add(userId(email));
+        }
+        return new ExpenseRequest(row.getDescription(), row.getAmount(), paidBy, participants, row.getSplitType(),
+                row.getSplits());
+    }
+
+    private String userId(String email) {
+        User user = target.findUser(email);
+        if (user == null) {
+            throw new IllegalArgumentException("Unknown user " + email);
+        }
+        return user.getId();
+    }
+
+    private void postAll(Map<Group, PendingBatch> pending, ImportReport report) {
+        for (Map.Entry<Group, PendingBatch> entry : pending.entrySet()) {
+            post(entry.getKey(), entry.getValue(), report);
+        }
+        pending.clear();
+    }
+
+    private void post(Group group, PendingBatch batch, ImportReport report) {
+        post(group, batch, 0, batch.requests.size(), report);
+    }
+
+    // Posts requests [from, to); when the ledger refuses them, splits the range in half so the
+    // bad rows are found in a logarithmic number of retries
+    private void post(Group group, PendingBatch batch, int from, int to, ImportReport report) {
+        try {
+            target.post(group, batch.requests.subList(from, to));
+            report.imported(to - from);
+            return;
+        } catch (IllegalArgumentException e) {
+            if (to - from == 1) {
+                // a single-request batch names its only request; drop that prefix
+                String reason = e.getMessage();
+                report.rejected(batch.lineNumbers.get(from),
+                        reason != null && reason.startsWith("Request 0: ") ? reason.substring(11) : reason);
+                return;
+            }
+        }
+
+        int middle = (from + to) >>> 1;
+        post(group, batch, from, middle, report);
+        post(group, batch, middle, to, report);
+    }
+
+    private static class PendingBatch {
+        private final List<ExpenseRequest> requests = new ArrayList<>();
+        private final List<Long> lineNumbers = new ArrayList<>();
+
+        void add(ExpenseRequest request, long lineNumber) {
+            requests.add(request);
+            lineNumbers.add(lineNumber);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of one import: row counts, throughput, and the first rejected rows with reasons.
+public class ImportReport {
+    private static final int MAX_REJECTIONS_KEPT = 100;
+
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long batchesPosted;
+    private long bytesRead;
+    private long elapsedNanos;
+    private final List<String> rejections = new ArrayList<>();
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    void imported(int rows) {
+        rowsImported += rows;
+        batchesPosted++;
+    }
+
+    void rejected(long lineNumber, String reason) {
+        rowsRejected++;
+        if (rejections.size() < MAX_REJECTIONS_KEPT) {
+            rejections.add("line " + lineNumber + ": " + reason);
+        }
+    }
+
+    void finished(long bytesRead, long elapsedNanos) {
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getBatchesPosted() {
+        return batchesPosted;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsRead * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    // The first rejected rows, as "line N: reason"
+    public List<String> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %d of %d rows (%d rejected) from %d bytes in %.1f ms, %.0f rows/sec",
+                rowsImported, rowsRead, rowsRejected, bytesRead, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,62 @@
+package importer;
+
+import java.util.List;
+
+import enums.SplitType;
+import models.Money;
+
+// One parsed row, still naming its group and people the way the file does
+public class ImportRow {
+    private final long lineNumber;
+    private final String groupName;
+    private final String description;
+    private final Money amount;
+    private final String paidByEmail;
+    private final List<String> participantEmails;
+    private final SplitType splitType;
+    private final List<Double> splits;
+
+    public ImportRow(long lineNumber, String groupName, String description, Money amount, String paidByEmail,
+            List<String> participantEmails, SplitType splitType, List<Double> splits) {
+        this.lineNumber = lineNumber;
+        this.groupName = groupName;
+        this.description = description;
+        this.amount = amount;
+        this.paidByEmail = paidByEmail;
+        this.participantEmails = participantEmails;
+        this.splitType = splitType;
+        this.splits = splits;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public String getPaidByEmail() {
+        return paidByEmail;
+    }
+
+    public List<String> getParticipantEmails() {
+        return participantEmails;
+    }
+
+    public SplitType getSplitType() {
+        return splitType;
+    }
+
+    public List<Double> getSplits() {
+        return splits;
+    }
+}
@@ -0,0 +1,19 @@
+package importer;
+
+import java.util.List;
+
+import models.ExpenseRequest;
+import models.Group;
+import models.User;
+
+// Where imported rows are resolved and posted; Splitwise supplies its own lookups and batch API
+public interface ImportTarget {
+    // null when no group has this name
+    Group findGroup(String name);
+
+    // null when no user has this email
+    User findUser(String email);
+
+    // All-or-nothing; throws IllegalArgumentException if any request is rejected
+    void post(Group group, List<ExpenseRequest> batch);
+}
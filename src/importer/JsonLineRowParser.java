@@ -0,0 +1,208 @@
+package importer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import enums.SplitType;
+import models.Money;
+
+// One flat JSON object per line:
+//
+//   {"group":"Goa Trip","description":"Dinner","amount":1200.50,"paidBy":"a@x.com",
+//    "participants":["a@x.com","b@x.com"],"splitType":"EXACT","splits":[700.5,500]}
+//
+// splitType and splits may be omitted for equal splits. Unknown keys are ignored.
+public class JsonLineRowParser implements RowParser {
+
+    @Override
+    public ImportRow parse(String line, long lineNumber) {
+        if (line.isBlank()) {
+            return null;
+        }
+
+        Map<String, Object> fields = new Cursor(line).readRow();
+        Object splitType = fields.get("splitType");
+        List<Double> splits = new ArrayList<>();
+        for (Object split : list(fields, "splits")) {
+            if (!(split instanceof BigDecimal)) {
+                throw new IllegalArgumentException("Bad split " + split);
+            }
+            splits.add(((BigDecimal) split).doubleValue());
+        }
+
+        List<String> participants = new ArrayList<>();
+        for (Object participant : list(fields, "participants")) {
+            participants.add(String.valueOf(participant));
+        }
+        if (participants.isEmpty()) {
+            throw new IllegalArgumentException("Missing participants");
+        }
+
+        return new ImportRow(lineNumber, string(fields, "group"), string(fields, "description"), amount(fields),
+                string(fields, "paidBy"), participants,
+                splitType == null ? SplitType.EQUAL : CsvRowParser.parseSplitType(String.valueOf(splitType)),
+                splits);
+    }
+
+    private static String string(Map<String, Object> fields, String key) {
+        Object value = fields.get(key);
+        if (!(value instanceof String) || ((String) value).isBlank()) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return ((String) value).trim();
+    }
+
+    private static Money amount(Map<String, Object> fields) {
+        Object value = fields.get("amount");
+        if (value instanceof BigDecimal) {
+            return Money.of((BigDecimal) value, Money.DEFAULT_SCALE);
+        }
+        if (value instanceof String) {
+            return CsvRowParser.parseAmount((String) value);
+        }
+        throw new IllegalArgumentException("Missing amount");
+    }
+
+    private static List<?> list(Map<String, Object> fields, String key) {
+        Object value = fields.get(key);
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(key + " must be an array");
+        }
+        return (List<?>) value;
+    }
+
+    // Just enough JSON for a flat object whose values are strings, numbers, booleans, null
+    // or arrays of those.
+    private static class Cursor {
+        private final String text;
+        private int pos;
+
+        Cursor(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> readRow() {
+            Map<String, Object> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                pos++;
+            } else {
+                do {
+                    String key = readString();
+                    expect(':');
+                    fields.put(key, readValue());
+                } while (accept(','));
+                expect('}');
+            }
+            if (peek() != 0) {
+                throw error("Unexpected trailing content");
+            }
+            return fields;
+        }
+
+        private Object readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '[') {
+                pos++;
+                List<Object> values = new ArrayList<>();
+                if (peek() == ']') {
+                    pos++;
+                    return values;
+                }
+                do {
+                    values.add(readValue());
+                } while (accept(','));
+                expect(']');
+                return values;
+            }
+            if (text.startsWith("true", pos) || text.startsWith("null", pos)) {
+                pos += 4;
+                return c == 't' ? Boolean.TRUE : null;
+            }
+            if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            }
+
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return new BigDecimal(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Bad value");
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    case 'r' -> value.append('\r');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("Bad escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        // Next non-space character, or 0 at the end of the line
+        private char peek() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        private boolean accept(char c) {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (pos + 1));
+        }
+    }
+}
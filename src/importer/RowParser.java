@@ -0,0 +1,7 @@
+package importer;
+
+public interface RowParser {
+    // Returns null for lines that carry no expense (blank lines, a header). Throws
+    // IllegalArgumentException when the line is malformed.
+    ImportRow parse(String line, long lineNumber);
+}
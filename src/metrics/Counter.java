@@ -0,0 +1,21 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic count. Backed by a LongAdder, so threads incrementing it at once land on
+// different cells instead of contending for one.
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
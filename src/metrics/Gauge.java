@@ -0,0 +1,7 @@
+package metrics;
+
+// A value read when a snapshot is taken, such as a queue depth or a group count
+@FunctionalInterface
+public interface Gauge {
+    long value();
+}
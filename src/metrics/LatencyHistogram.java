@@ -0,0 +1,90 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram in the style of HdrHistogram: each power of two is split into 32
+// linear sub-buckets, so a value is reported within about 3%. Values are usually nanoseconds
+// but any non-negative long works; values past 2^41 (about 40 minutes) share the top bucket.
+//
+// Recording is lock-free. Each thread is mapped to one of a few stripes, each with its own
+// bucket array, so threads recording at once rarely touch the same cache lines. A snapshot
+// sums the stripes.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    // count, sum and max sit after the buckets in each stripe
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+    private static final int STRIPES = Math.min(16,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final AtomicLongArray[] stripes;
+
+    public LatencyHistogram() {
+        this.stripes = new AtomicLongArray[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKETS + 3);
+        }
+    }
+
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().threadId() & (STRIPES - 1)];
+        stripe.incrementAndGet(indexOf(clamped));
+        stripe.incrementAndGet(COUNT);
+        stripe.addAndGet(SUM, clamped);
+        long max = stripe.get(MAX);
+        while (clamped > max && !stripe.compareAndSet(MAX, max, clamped)) {
+            max = stripe.get(MAX);
+        }
+    }
+
+    // Records the time since startNanos, a value taken from System.nanoTime()
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    // Recording may continue while this runs; the copy can then be a few values behind
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            count += stripe.get(COUNT);
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new HistogramSnapshot(counts, count, sum, max);
+    }
+
+    // Values below SUB_BUCKETS are exact; above that, the SUB_BUCKET_BITS bits after the
+    // leading one pick the sub-bucket within the value's power of two
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int index = magnitude * SUB_BUCKETS + (int) (value >>> (magnitude - 1)) - SUB_BUCKETS;
+        return Math.min(BUCKETS - 1, index);
+    }
+
+    static long highestValueAt(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        if (index == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        long low = (long) (SUB_BUCKETS + subBucket) << (magnitude - 1);
+        return low + (1L << (magnitude - 1)) - 1;
+    }
+}
@@ -0,0 +1,109 @@
+package metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Named counters, gauges and histograms. Metrics are created on first use and live as long
+// as the registry. Recording never blocks; reading happens only when a snapshot is taken,
+// either on demand or from a periodic dump.
+public class MetricsRegistry implements AutoCloseable {
+    private final Map<String, Counter> counters;
+    private final Map<String, Gauge> gauges;
+    private final Map<String, LatencyHistogram> histograms;
+    private final Map<String, Consumer<LongConsumer>> distributions;
+    private ScheduledExecutorService dumpScheduler;
+
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+        this.distributions = new ConcurrentHashMap<>();
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    // A histogram rebuilt at every snapshot from whatever values source feeds it, for
+    // spreads that are cheaper to read on demand than to track, such as group sizes
+    public void distribution(String name, Consumer<LongConsumer> source) {
+        distributions.put(name, source);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new HashMap<>();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            counterValues.put(counter.getKey(), counter.getValue().get());
+        }
+        Map<String, Long> gaugeValues = new HashMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            gaugeValues.put(gauge.getKey(), gauge.getValue().value());
+        }
+        Map<String, HistogramSnapshot> histogramValues = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+            histogramValues.put(histogram.getKey(), histogram.getValue().snapshot());
+        }
+        for (Map.Entry<String, Consumer<LongConsumer>> distribution : distributions.entrySet()) {
+            LatencyHistogram values = new LatencyHistogram();
+            distribution.getValue().accept(values::record);
+            histogramValues.put(distribution.getKey(), values.snapshot());
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+    }
+
+    // Rewrites path with a fresh snapshot every interval. The file is replaced atomically, so
+    // a scraper reading it never sees half a dump.
+    public synchronized void startPeriodicDump(Path path, long interval, TimeUnit unit) {
+        if (this.dumpScheduler != null) {
+            return;
+        }
+        this.dumpScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dumpScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                dump(path);
+            } catch (IOException e) {
+                // a missed dump is replaced by the next one
+            }
+        }, interval, interval, unit);
+    }
+
+    public void dump(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, snapshot().format());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized void stopPeriodicDump() {
+        if (this.dumpScheduler != null) {
+            this.dumpScheduler.shutdown();
+            this.dumpScheduler = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stopPeriodicDump();
+    }
+}
@@ -0,0 +1,84 @@
+package metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Point-in-time values of every metric in a registry, sorted by name
+public class MetricsSnapshot {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+    private final long takenAtMillis;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    MetricsSnapshot(long takenAtMillis, Map<String, Long> counters, Map<String, Long> gauges,
+            Map<String, HistogramSnapshot> histograms) {
+        this.takenAtMillis = takenAtMillis;
+        this.counters = Collections.unmodifiableMap(new TreeMap<>(counters));
+        this.gauges = Collections.unmodifiableMap(new TreeMap<>(gauges));
+        this.histograms = Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public long getGauge(String name) {
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    public HistogramSnapshot getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    // Prometheus text format, one sample per line: counters and gauges as plain values,
+    // histograms as summaries with quantiles, _sum, _count and _max
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            out.append("# TYPE ").append(counter.getKey()).append(" counter\n");
+            out.append(counter.getKey()).append(' ').append(counter.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            out.append("# TYPE ").append(gauge.getKey()).append(" gauge\n");
+            out.append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+        }
+        for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+            String name = entry.getKey();
+            HistogramSnapshot histogram = entry.getValue();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(histogram.getPercentile(PERCENTILES[i])).append('\n');
+            }
+            out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            out.append(name).append("_max ").append(histogram.getMax()).append('\n');
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,358 @@
+package models;
+
+import java.util.Arrays;
+
+// Pairwise balances, in minor currency units, between members interned to dense int slots.
+// Each unordered pair (lo, hi) has one signed cell holding the amount lo owes hi
+// (negative means hi owes lo). Small groups use a dense square matrix (only the
+// lo < hi half is written); once a group grows past DENSE_LIMIT slots the cells move into an
+// open-addressed long -> long map so heap stays proportional to the number
+// of non-zero edges instead of members squared.
+public class BalanceMatrix {
+    private static final int DENSE_LIMIT = 128;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final long EMPTY = -1L;
+
+    private int capacity;
+    private int[] edgeCount;
+
+    // Running net per slot (positive = owed to the slot) and the set of slots whose net is non-zero
+    private long[] nets;
+    private int[] nonZeroSlots;
+    private int[] nonZeroPosition; // index into nonZeroSlots plus one, 0 when absent
+    private int nonZeroCount;
+
+    // dense mode
+    private long[] cells;
+
+    // sparse mode
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public interface EdgeVisitor {
+        void visit(int debtor, int creditor, long amount);
+    }
+
+    // Told about every cell that changes, as the amount lo owes hi before and after
+    public interface EdgeListener {
+        void onEdgeChanged(int lo, int hi, long before, long after);
+    }
+
+    private EdgeListener listener;
+
+    public BalanceMatrix() {
+        this.capacity = INITIAL_CAPACITY;
+        this.edgeCount = new int[capacity];
+        this.nets = new long[capacity];
+        this.nonZeroSlots = new int[capacity];
+        this.nonZeroPosition = new int[capacity];
+        this.cells = new long[capacity * capacity];
+    }
+
+    public void ensureCapacity(int slots) {
+        if (slots <= capacity) {
+            return;
+        }
+
+        int newCapacity = capacity;
+        while (newCapacity < slots) {
+            newCapacity <<= 1;
+        }
+
+        this.edgeCount = Arrays.copyOf(edgeCount, newCapacity);
+        this.nets = Arrays.copyOf(nets, newCapacity);
+        this.nonZeroSlots = Arrays.copyOf(nonZeroSlots, newCapacity);
+        this.nonZeroPosition = Arrays.copyOf(nonZeroPosition, newCapacity);
+
+        if (cells != null && newCapacity > DENSE_LIMIT) {
+            toSparse();
+        } else if (cells != null) {
+            long[] grown = new long[newCapacity * newCapacity];
+            for (int lo = 0; lo < capacity; lo++) {
+                System.arraycopy(cells, lo * capacity, grown, lo * newCapacity, capacity);
+            }
+            this.cells = grown;
+        }
+
+        this.capacity = newCapacity;
+    }
+
+    public void setEdgeListener(EdgeListener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isDense() {
+        return cells != null;
+    }
+
+    // Amount debtor owes creditor; negative if creditor owes debtor.
+    public long get(int debtor, int creditor) {
+        if (debtor == creditor) {
+            return 0;
+        }
+        return debtor < creditor ? raw(debtor, creditor) : -raw(creditor, debtor);
+    }
+
+    // Records that debtor owes creditor `amount` more, netting against any reverse debt.
+    public void add(int debtor, int creditor, long amount) {
+        if (debtor == creditor) {
+            return;
+        }
+
+        int lo = Math.min(debtor, creditor);
+        int hi = Math.max(debtor, creditor);
+        ensureCapacity(hi + 1);
+        long delta = debtor < creditor ? amount : -amount;
+
+        long before = raw(lo, hi);
+        long after = before + delta;
+
+        if (before == 0 && after != 0) {
+            edgeCount[lo]++;
+            edgeCount[hi]++;
+        } else if (before != 0 && after == 0) {
+            edgeCount[lo]--;
+            edgeCount[hi]--;
+        }
+
+        store(lo, hi, after);
+        adjustNet(debtor, -amount);
+        adjustNet(creditor, amount);
+        if (listener != null && delta != 0) {
+            listener.onEdgeChanged(lo, hi, before, after);
+        }
+    }
+
+    private void adjustNet(int slot, long delta) {
+        long before = nets[slot];
+        long after = before + delta;
+        nets[slot] = after;
+
+        if (before == 0 && after != 0) {
+            nonZeroSlots[nonZeroCount] = slot;
+            nonZeroPosition[slot] = ++nonZeroCount;
+        } else if (before != 0 && after == 0) {
+            // swap-remove keeps the set dense
+            int index = nonZeroPosition[slot] - 1;
+            int last = nonZeroSlots[--nonZeroCount];
+            nonZeroSlots[index] = last;
+            nonZeroPosition[last] = index + 1;
+            nonZeroPosition[slot] = 0;
+        }
+    }
+
+    // Net position of a slot: what others owe it minus what it owes others.
+    public long getNet(int slot) {
+        return slot < capacity ? nets[slot] : 0;
+    }
+
+    public int nonZeroCount() {
+        return nonZeroCount;
+    }
+
+    public int nonZeroSlot(int index) {
+        return nonZeroSlots[index];
+    }
+
+    public boolean hasEdges(int slot) {
+        return slot < capacity && edgeCount[slot] > 0;
+    }
+
+    public int edgeCount() {
+        if (cells == null) {
+            return size;
+        }
+        int total = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            total += edgeCount[slot];
+        }
+        return total / 2;
+    }
+
+    public void clear() {
+        if (listener != null) {
+            forEachEdge((debtor, creditor, amount) -> listener.onEdgeChanged(Math.min(debtor, creditor),
+                    Math.max(debtor, creditor), debtor < creditor ? amount : -amount, 0));
+        }
+        Arrays.fill(edgeCount, 0);
+        for (int i = 0; i < nonZeroCount; i++) {
+            nets[nonZeroSlots[i]] = 0;
+            nonZeroPosition[nonZeroSlots[i]] = 0;
+        }
+        this.nonZeroCount = 0;
+
+        if (cells != null) {
+            Arrays.fill(cells, 0);
+        } else if (keys.length > INITIAL_CAPACITY * 8) {
+            // a rebuilt sheet is usually far smaller, so start again from a small table
+            this.keys = new long[INITIAL_CAPACITY * 2];
+            this.values = new long[INITIAL_CAPACITY * 2];
+            Arrays.fill(keys, EMPTY);
+            this.size = 0;
+        } else {
+            Arrays.fill(keys, EMPTY);
+            this.size = 0;
+        }
+    }
+
+    // Visits every non-zero edge oriented from debtor to creditor with a positive amount.
+    public void forEachEdge(EdgeVisitor visitor) {
+        if (cells != null) {
+            for (int lo = 0; lo < capacity; lo++) {
+                if (edgeCount[lo] == 0) {
+                    continue;
+                }
+                for (int hi = lo + 1; hi < capacity; hi++) {
+                    visitOriented(visitor, lo, hi, cells[lo * capacity + hi]);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitOriented(visitor, lo(keys[i]), hi(keys[i]), values[i]);
+            }
+        }
+    }
+
+    private static void visitOriented(EdgeVisitor visitor, int lo, int hi, long value) {
+        if (value > 0) {
+            visitor.visit(lo, hi, value);
+        } else if (value < 0) {
+            visitor.visit(hi, lo, -value);
+        }
+    }
+
+    private long raw(int lo, int hi) {
+        if (hi >= capacity) {
+            return 0;
+        }
+        if (cells != null) {
+            return cells[lo * capacity + hi];
+        }
+        int index = indexOf(key(lo, hi));
+        return index < 0 ? 0 : values[index];
+    }
+
+    private void store(int lo, int hi, long value) {
+        if (cells != null) {
+            cells[lo * capacity + hi] = value;
+            return;
+        }
+
+        long key = key(lo, hi);
+        int index = indexOf(key);
+        if (value == 0) {
+            if (index >= 0) {
+                removeAt(index);
+            }
+        } else if (index >= 0) {
+            values[index] = value;
+        } else {
+            insert(key, value);
+        }
+    }
+
+    private void toSparse() {
+        int tableSize = INITIAL_CAPACITY * 2;
+        while (tableSize < edgeCount() * 2) {
+            tableSize <<= 1;
+        }
+        long[] dense = this.cells;
+        int denseCapacity = this.capacity;
+
+        this.keys = new long[tableSize];
+        this.values = new long[tableSize];
+        Arrays.fill(keys, EMPTY);
+        this.size = 0;
+        this.cells = null;
+
+        for (int lo = 0; lo < denseCapacity; lo++) {
+            for (int hi = lo + 1; hi < denseCapacity; hi++) {
+                long value = dense[lo * denseCapacity + hi];
+                if (value != 0) {
+                    insert(key(lo, hi), value);
+                }
+            }
+        }
+    }
+
+    private static long key(int lo, int hi) {
+        return ((long) lo << 32) | (hi & 0xffffffffL);
+    }
+
+    private static int lo(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int hi(long key) {
+        return (int) key;
+    }
+
+    private int slotFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = slotFor(key);; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long key, long value) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int i = slotFor(key);
+        while (keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones.
+    private void removeAt(int index) {
+        int mask = keys.length - 1;
+        int hole = index;
+        int i = (index + 1) & mask;
+        while (keys[i] != EMPTY) {
+            int home = slotFor(keys[i]);
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+        size--;
+    }
+
+    private void rehash(int newLength) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        this.keys = new long[newLength];
+        this.values = new long[newLength];
+        Arrays.fill(keys, EMPTY);
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
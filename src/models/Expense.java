@@ -3,54 +3,81 @@ package models;
 import java.util.List;
 import java.util.UUID;
 
-import enums.SplitType;
-
+// Either a detached value (while it is being built, journaled or decoded) or, once it is
+// stored, a flyweight over one row of an ExpenseStore holding nothing but the store and row.
 public class Expense {
     private String id;
     private String description;
-    private double totalAmount;
+    private Money totalAmount;
     private String paidBy;
     private List<Split> splits;
     private String groupId;
+    private long createdAt;
+
+    private final ExpenseStore store; // null while detached
+    private final int row;
+
+    public Expense(String description, Money totalAmount, String paidBy, List<Split> splits, String groupId) {
+        this(UUID.randomUUID().toString(), description, totalAmount, paidBy, splits, groupId,
+                System.currentTimeMillis());
+    }
 
-    public Expense(String description, double totalAmount, String paidBy, List<Split> splits, String groupId) {
-        this.id = UUID.randomUUID().toString();
+    // Rebuilds an expense that already has an id, e.g. when replaying the journal
+    public Expense(String id, String description, Money totalAmount, String paidBy, List<Split> splits,
+            String groupId, long createdAt) {
+        this.id = id;
         this.description = description;
         this.totalAmount = totalAmount;
         this.paidBy = paidBy;
         this.splits = splits;
         this.groupId = groupId;
+        this.createdAt = createdAt;
+        this.store = null;
+        this.row = -1;
     }
-    public Expense(String description, double totalAmount, String paidBy, List<Split> splits) {
-        this.id = UUID.randomUUID().toString();
-        this.description = description;
-        this.totalAmount = totalAmount;
-        this.paidBy = paidBy;
-        this.splits = splits;
-        this.groupId = null;
+    public Expense(String description, Money totalAmount, String paidBy, List<Split> splits) {
+        this(description, totalAmount, paidBy, splits, null);
+    }
+
+    Expense(ExpenseStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    boolean isStoredIn(ExpenseStore store) {
+        return this.store == store;
+    }
+
+    int getRow() {
+        return row;
     }
 
     public String getId() {
-        return id;
+        return store == null ? id : store.idOf(row);
     }
 
     public String getDescription() {
-        return description;
+        return store == null ? description : store.descriptionOf(row);
     }
 
-    public double getTotalAmount() {
-        return totalAmount;
+    public Money getTotalAmount() {
+        return store == null ? totalAmount : store.amountOf(row);
     }
 
     public String getPaidBy() {
-        return paidBy;
+        return store == null ? paidBy : store.payerOf(row);
     }
 
+    // For a stored expense this is a fresh copy built from the split columns
     public List<Split> getSplits() {
-        return splits;
+        return store == null ? splits : store.splitsOf(row);
     }
 
     public String getGroupId() {
-        return groupId;
+        return store == null ? groupId : store.groupOf(row);
+    }
+
+    public long getCreatedAt() {
+        return store == null ? createdAt : store.createdAtOf(row);
     }
 }
@@ -0,0 +1,273 @@
+package models;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+// Map view of one owner's expenses (a group, or null for individual expenses) in an
+// ExpenseStore. The only on-heap state is a primitive list of row numbers. Entries and values
+// are flyweights created as they are read. Removing an entry marks its row deleted.
+//
+// A store belongs to one owner's map (and the maps that replace it, e.g. on a rename).
+// Once at least COMPACT_MIN_DEAD rows are dead and they outnumber the live ones, the live
+// rows are copied into a fresh store that replaces this one, so history that keeps being
+// edited does not grow the store without bound. Flyweights already handed out keep reading
+// the old store.
+//
+// Writers synchronize on the map. Readers iterate a published prefix of the row list
+// without locking, and skip rows deleted after they started. The store and its row list are
+// published together, so a reader never pairs rows of one store with the other.
+public class ExpenseMap extends AbstractMap<String, Expense> {
+    private static final int COMPACT_MIN_DEAD = 1024;
+
+    private final String ownerId;
+    private volatile Rows current;
+    private volatile int liveCount;
+
+    public ExpenseMap(ExpenseStore store, String ownerId) {
+        this.ownerId = ownerId;
+        this.current = new Rows(store, new int[8], 0);
+    }
+
+    // One store and the rows of it this map owns; count is the published prefix
+    private static final class Rows {
+        final ExpenseStore store;
+        final int[] rows;
+        volatile int count;
+
+        Rows(ExpenseStore store, int[] rows, int count) {
+            this.store = store;
+            this.rows = rows;
+            this.count = count;
+        }
+    }
+
+    // The store currently holding this map's rows; compaction replaces it
+    public ExpenseStore getStore() {
+        return this.current.store;
+    }
+
+    private boolean owns(ExpenseStore store, int row) {
+        String owner = store.groupOf(row);
+        return owner == null ? this.ownerId == null : owner.equals(this.ownerId);
+    }
+
+    private int liveRowOf(ExpenseStore store, Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int row = store.rowOf((String) key);
+        return row >= 0 && !store.isDeleted(row) && owns(store, row) ? row : -1;
+    }
+
+    @Override
+    public Expense get(Object key) {
+        ExpenseStore store = this.current.store;
+        int row = liveRowOf(store, key);
+        return row < 0 ? null : store.expenseAt(row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return liveRowOf(this.current.store, key) >= 0;
+    }
+
+    @Override
+    public synchronized Expense put(String key, Expense expense) {
+        if (!key.equals(expense.getId())) {
+            throw new IllegalArgumentException("Expense " + expense.getId() + " stored under key " + key);
+        }
+
+        ExpenseStore store = this.current.store;
+        int previousRow = liveRowOf(store, key);
+        if (previousRow >= 0 && expense.isStoredIn(store) && expense.getRow() == previousRow) {
+            return expense;
+        }
+
+        Expense previous = null;
+        if (previousRow >= 0) {
+            previous = store.expenseAt(previousRow);
+            store.markDeleted(previousRow);
+            this.liveCount--;
+        }
+
+        addRow(store.append(expense, this.ownerId));
+        compactIfSparse();
+        return previous;
+    }
+
+    // Stores a new expense straight from its computed shares and returns its flyweight
+    public synchronized Expense append(String description, long totalMinor, int scale, String paidBy,
+            List<String> userIds, long[] shares) {
+        ExpenseStore store = this.current.store;
+        int row = store.append(UUID.randomUUID(), description, totalMinor, scale, paidBy, userIds, shares,
+                this.ownerId, System.currentTimeMillis());
+        addRow(row);
+        return store.expenseAt(row);
+    }
+
+    private void addRow(int row) {
+        Rows rows = this.current;
+        int count = rows.count;
+        if (count == rows.rows.length) {
+            rows = new Rows(rows.store, Arrays.copyOf(rows.rows, count * 2), count);
+            this.current = rows;
+        }
+        rows.rows[count] = row;
+        rows.count = count + 1;
+        this.liveCount++;
+    }
+
+    @Override
+    public synchronized Expense remove(Object key) {
+        ExpenseStore store = this.current.store;
+        int row = liveRowOf(store, key);
+        if (row < 0) {
+            return null;
+        }
+        store.markDeleted(row);
+        this.liveCount--;
+        Expense removed = store.expenseAt(row);
+        compactIfSparse();
+        return removed;
+    }
+
+    private void compactIfSparse() {
+        Rows old = this.current;
+        // counted over the whole store, which also holds rows of maps this one replaced
+        int dead = old.store.size() - this.liveCount;
+        if (dead < COMPACT_MIN_DEAD || dead <= this.liveCount) {
+            return;
+        }
+
+        ExpenseStore store = old.store.forOwner();
+        int[] rows = new int[Math.max(8, Integer.highestOneBit(this.liveCount) * 2)];
+        int count = 0;
+        for (int i = 0; i < old.count; i++) {
+            if (!old.store.isDeleted(old.rows[i])) {
+                rows[count++] = store.appendCopyOf(old.store, old.rows[i]);
+            }
+        }
+        this.current = new Rows(store, rows, count);
+    }
+
+    @Override
+    public int size() {
+        return this.liveCount;
+    }
+
+    // The expenses as they are now, readable later while writers carry on. Rows appended or
+    // deleted afterwards, and compaction into a new store, do not change what it holds.
+    public synchronized Frozen freeze() {
+        Rows rows = this.current;
+        return new Frozen(rows.store, rows.rows, rows.count, rows.store.deletionCount(), this.liveCount);
+    }
+
+    public static final class Frozen implements Iterable<Expense> {
+        private final ExpenseStore store;
+        private final int[] rows;
+        private final int count;
+        private final int deletionCount;
+        private final int size;
+
+        private Frozen(ExpenseStore store, int[] rows, int count, int deletionCount, int size) {
+            this.store = store;
+            this.rows = rows;
+            this.count = count;
+            this.deletionCount = deletionCount;
+            this.size = size;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Iterator<Expense> iterator() {
+            return new Iterator<>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    while (from < count && store.isDeletedAsOf(rows[from], deletionCount)) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return this.next < count;
+                }
+
+                @Override
+                public Expense next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Expense expense = store.expenseAt(rows[this.next]);
+                    this.next = advance(this.next + 1);
+                    return expense;
+                }
+            };
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Expense>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Expense>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return liveCount;
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, Expense>> {
+        private final Rows snapshot = current;
+        private final int end = this.snapshot.count;
+        private int next = advance(0);
+        private Expense last;
+
+        private int advance(int from) {
+            while (from < this.end && this.snapshot.store.isDeleted(this.snapshot.rows[from])) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.end;
+        }
+
+        @Override
+        public Map.Entry<String, Expense> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.snapshot.store.expenseAt(this.snapshot.rows[this.next]);
+            this.next = advance(this.next + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(this.last.getId(), this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+            ExpenseMap.this.remove(this.last.getId());
+            this.last = null;
+        }
+    }
+}
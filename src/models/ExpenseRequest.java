@@ -0,0 +1,61 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import enums.SplitType;
+
+// One expense in a batch posted with Group.addExpenses. Splits are computed when the batch
+// is applied, from the same inputs addExpense takes.
+public class ExpenseRequest {
+    private final String description;
+    private final Money totalAmount;
+    private final String paidBy;
+    private final List<String> users;
+    private final SplitType splitType;
+    private final List<Double> splits;
+
+    public ExpenseRequest(String description, Money totalAmount, String paidBy, List<String> users,
+            SplitType splitType, List<Double> splits) {
+        this.description = description;
+        this.totalAmount = totalAmount;
+        this.paidBy = paidBy;
+        this.users = users;
+        this.splitType = splitType;
+        this.splits = splits;
+    }
+
+    public ExpenseRequest(String description, double totalAmount, String paidBy, List<String> users,
+            SplitType splitType, List<Double> splits) {
+        this(description, Money.of(totalAmount), paidBy, users, splitType, splits);
+    }
+
+    public ExpenseRequest(String description, double totalAmount, String paidBy, List<String> users,
+            SplitType splitType) {
+        this(description, Money.of(totalAmount), paidBy, users, splitType, new ArrayList<>());
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Money getTotalAmount() {
+        return totalAmount;
+    }
+
+    public String getPaidBy() {
+        return paidBy;
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public SplitType getSplitType() {
+        return splitType;
+    }
+
+    public List<Double> getSplits() {
+        return splits;
+    }
+}
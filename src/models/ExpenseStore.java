@@ -0,0 +1,620 @@
+package models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Column-oriented, off-heap home for expense rows. Each attribute lives in its own column of
+// segments, either direct buffers or (given a directory) slices of one memory-mapped file
+// that the OS can page out. Segments start small and double up to a fixed size, so the many
+// small groups cost a few kilobytes each. Rows are append-only. Expense objects handed out
+// are flyweights over a row: of their fields only the store and row are set, so history
+// keeps no strings, amounts or split lists on the heap.
+//
+// Payer and group ids are dictionary-encoded to int indexes. Splits live in their own
+// pair of columns, addressed by a start offset and count per row. Descriptions are UTF-8
+// in a byte column. The id index is an open-addressed table in a direct buffer. The mapped
+// files are scratch space, not a durable format: the journal and snapshots remain the source
+// of truth and refill the store on startup.
+//
+// Every group gets a store of its own (see forOwner), all drawing segments from one Arena, so appends, which are serialized on
+// the store, only ever wait on the group already holding its own lock. Edits leave dead
+// rows behind; ExpenseMap compacts a store into a fresh copy once they outnumber the live
+// ones. Readers never lock: a row is published by the volatile row count after all of its
+// columns have been written.
+public class ExpenseStore implements AutoCloseable {
+    private static final int FIRST_ROWS = 64;
+    private static final int ROWS_PER_SEGMENT = 8192;
+    private static final int FIRST_SPLITS = 256;
+    private static final int SPLITS_PER_SEGMENT = 32768;
+    private static final int FIRST_TEXT_BYTES = 4096;
+    private static final int TEXT_BYTES_PER_SEGMENT = 256 << 10;
+    private static final int FIRST_ID_SLOTS = 64;
+    private static final int REGION_BYTES = 64 << 20;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Arena arena;
+
+    // one entry per expense
+    private final Column idHigh;
+    private final Column idLow;
+    private final Column amount;
+    private final Column scale;
+    private final Column payer;
+    private final Column group;
+    private final Column createdAt;
+    private final Column textOffset;
+    private final Column textLength;
+    private final Column splitStart;
+    private final Column splitCount;
+    private final Column deletedAt; // deletion number, 0 while live
+    private final List<Column> rowColumns;
+
+    // one entry per split, and the description bytes
+    private final Column splitUser;
+    private final Column splitAmount;
+    private final Column text;
+
+    private volatile String[] userIds;
+    private volatile String[] groupIds;
+    private final Map<String, Integer> userIndex;
+    private final Map<String, Integer> groupIndex;
+
+    private ByteBuffer idTable; // row + 1 per int slot, 0 when empty
+    private int idSlots;
+    private int idCount;
+    private volatile int rowCount;
+    private volatile int deletions;
+    private long splitEnd;
+    private long textEnd;
+
+    private ExpenseStore(Arena arena) {
+        this.arena = arena;
+        Segments segments = new Segments(arena);
+        this.idHigh = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.idLow = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.amount = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.scale = new Column(1, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.payer = new Column(4, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.group = new Column(4, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.createdAt = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.textOffset = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.textLength = new Column(4, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.splitStart = new Column(8, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.splitCount = new Column(4, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.deletedAt = new Column(4, FIRST_ROWS, ROWS_PER_SEGMENT, segments);
+        this.rowColumns = List.of(idHigh, idLow, amount, scale, payer, group, createdAt, textOffset, textLength,
+                splitStart, splitCount, deletedAt);
+
+        this.splitUser = new Column(4, FIRST_SPLITS, SPLITS_PER_SEGMENT, segments);
+        this.splitAmount = new Column(8, FIRST_SPLITS, SPLITS_PER_SEGMENT, segments);
+        this.text = new Column(1, FIRST_TEXT_BYTES, TEXT_BYTES_PER_SEGMENT, segments);
+
+        this.userIds = new String[16];
+        this.groupIds = new String[4];
+        this.userIndex = new HashMap<>();
+        this.groupIndex = new HashMap<>();
+        this.idSlots = FIRST_ID_SLOTS;
+        this.idTable = ByteBuffer.allocateDirect(FIRST_ID_SLOTS * 4);
+        if (arena.file != null) {
+            CLEANER.register(this, segments);
+        }
+    }
+
+    public static ExpenseStore inMemory() {
+        return new ExpenseStore(new Arena(null));
+    }
+
+    // Columns are backed by one file in directory, expenses.arena, which is overwritten.
+    public static ExpenseStore mapped(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("expenses.arena");
+        Files.deleteIfExists(file);
+        return new ExpenseStore(new Arena(file));
+    }
+
+    // A new, empty store for one owner's expenses, or to compact a store into. It shares this
+    // store's arena, so a mapped ledger keeps a single file however many groups it has.
+    public ExpenseStore forOwner() {
+        return new ExpenseStore(this.arena);
+    }
+
+    // Copies the expense into the columns under groupId (null for individual expenses) and returns its row.
+    public synchronized int append(Expense expense, String groupId) {
+        UUID id = parseId(expense.getId());
+        Money total = expense.getTotalAmount();
+        int row = appendRow(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                expense.getDescription().getBytes(StandardCharsets.UTF_8), total.getMinorUnits(), total.getScale(),
+                expense.getPaidBy(), groupId, expense.getCreatedAt());
+
+        List<Split> splits = expense.getSplits();
+        long start = this.splitEnd;
+        for (int i = 0; i < splits.size(); i++) {
+            Split split = splits.get(i);
+            putSplit(start + i, split.getUserId(), split.getAmount().toMinorUnits(total.getScale()));
+        }
+        return finishRow(row, start, splits.size());
+    }
+
+    // Appends an expense straight from computed shares (minor units at the total's scale), one
+    // per user in order, so posting needs no Split objects
+    public synchronized int append(UUID id, String description, long totalMinor, int scale, String paidBy,
+            List<String> userIds, long[] shares, String groupId, long createdAt) {
+        int row = appendRow(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                description.getBytes(StandardCharsets.UTF_8), totalMinor, scale, paidBy, groupId, createdAt);
+        long start = this.splitEnd;
+        for (int i = 0; i < userIds.size(); i++) {
+            putSplit(start + i, userIds.get(i), shares[i]);
+        }
+        return finishRow(row, start, userIds.size());
+    }
+
+    // Copies one row of another store, column to column, keeping its id and creation time
+    synchronized int appendCopyOf(ExpenseStore source, int sourceRow) {
+        int row = appendRow(source.idHigh.getLong(sourceRow), source.idLow.getLong(sourceRow),
+                source.descriptionBytesOf(sourceRow), source.amount.getLong(sourceRow),
+                source.scale.getByte(sourceRow), source.payerOf(sourceRow), source.groupOf(sourceRow),
+                source.createdAt.getLong(sourceRow));
+        long start = this.splitEnd;
+        long sourceStart = source.splitStart.getLong(sourceRow);
+        int count = source.splitCount.getInt(sourceRow);
+        for (int i = 0; i < count; i++) {
+            putSplit(start + i, source.userIdAt(source.splitUser.getInt(sourceStart + i)),
+                    source.splitAmount.getLong(sourceStart + i));
+        }
+        return finishRow(row, start, count);
+    }
+
+    private void putSplit(long index, String userId, long amountMinor) {
+        this.splitUser.ensure(index);
+        this.splitAmount.ensure(index);
+        this.splitUser.putInt(index, indexOf(userId, true));
+        this.splitAmount.putLong(index, amountMinor);
+    }
+
+    private int finishRow(int row, long splitStart, int splitCount) {
+        this.splitStart.putLong(row, splitStart);
+        this.splitCount.putInt(row, splitCount);
+        this.splitEnd = splitStart + splitCount;
+
+        index(row, this.idHigh.getLong(row), this.idLow.getLong(row));
+        this.rowCount = row + 1;
+        return row;
+    }
+
+    // Writes the fixed-width columns and description of the next row; splits come after
+    private int appendRow(long idHighBits, long idLowBits, byte[] description, long amountMinor, int amountScale,
+            String paidBy, String groupId, long createdAtMillis) {
+        if (description.length > TEXT_BYTES_PER_SEGMENT) {
+            throw new IllegalArgumentException("Expense description is too long");
+        }
+        int row = this.rowCount;
+        for (Column column : this.rowColumns) {
+            column.ensure(row);
+        }
+
+        this.idHigh.putLong(row, idHighBits);
+        this.idLow.putLong(row, idLowBits);
+        this.amount.putLong(row, amountMinor);
+        this.scale.putByte(row, (byte) amountScale);
+        this.payer.putInt(row, indexOf(paidBy, true));
+        this.group.putInt(row, groupId == null ? -1 : indexOf(groupId, false));
+        this.createdAt.putLong(row, createdAtMillis);
+        this.deletedAt.putInt(row, 0);
+
+        // a description never straddles two segments
+        long offset = this.textEnd;
+        while (offset + description.length > this.text.segmentEnd(offset)) {
+            offset = this.text.segmentEnd(offset);
+        }
+        if (description.length > 0) {
+            this.text.ensure(offset + description.length - 1);
+            this.text.putBytes(offset, description);
+        }
+        this.textOffset.putLong(row, offset);
+        this.textLength.putInt(row, description.length);
+        this.textEnd = offset + description.length;
+        return row;
+    }
+
+    private static UUID parseId(String id) {
+        UUID uuid = UUID.fromString(id);
+        if (!uuid.toString().equals(id)) {
+            throw new IllegalArgumentException("Expense ids must be lower-case UUIDs: " + id);
+        }
+        return uuid;
+    }
+
+    private int indexOf(String id, boolean user) {
+        Map<String, Integer> indexes = user ? this.userIndex : this.groupIndex;
+        Integer index = indexes.get(id);
+        if (index != null) {
+            return index;
+        }
+
+        int next = indexes.size();
+        String[] ids = user ? this.userIds : this.groupIds;
+        if (next == ids.length) {
+            ids = Arrays.copyOf(ids, next * 2);
+        }
+        ids[next] = id;
+        // publish the array before any row that refers to the new index
+        if (user) {
+            this.userIds = ids;
+        } else {
+            this.groupIds = ids;
+        }
+        indexes.put(id, next);
+        return next;
+    }
+
+    private static int hash(long high, long low, int mask) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // Points the id at row; an id stored again (e.g. after an edit) moves to its newest row
+    private void index(int row, long high, long low) {
+        if ((this.idCount + 1) * 2 > this.idSlots) {
+            ByteBuffer old = this.idTable;
+            int oldSlots = this.idSlots;
+            this.idSlots = oldSlots * 2;
+            this.idTable = ByteBuffer.allocateDirect(this.idSlots * 4);
+            for (int i = 0; i < oldSlots; i++) {
+                int entry = old.getInt(i * 4);
+                if (entry != 0) {
+                    this.idTable.putInt(probe(this.idHigh.getLong(entry - 1), this.idLow.getLong(entry - 1)) * 4,
+                            entry);
+                }
+            }
+        }
+
+        int slot = probe(high, low);
+        if (this.idTable.getInt(slot * 4) == 0) {
+            this.idCount++;
+        }
+        this.idTable.putInt(slot * 4, row + 1);
+    }
+
+    // Slot holding this id, or the empty slot where it would go
+    private int probe(long high, long low) {
+        int mask = this.idSlots - 1;
+        int i = hash(high, low, mask);
+        int entry;
+        while ((entry = this.idTable.getInt(i * 4)) != 0) {
+            int row = entry - 1;
+            if (this.idHigh.getLong(row) == high && this.idLow.getLong(row) == low) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // Row holding this expense id, or -1. Deleted rows are still found.
+    public synchronized int rowOf(String expenseId) {
+        UUID id;
+        try {
+            id = UUID.fromString(expenseId);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+
+        return this.idTable.getInt(probe(id.getMostSignificantBits(), id.getLeastSignificantBits()) * 4) - 1;
+    }
+
+    public Expense expenseAt(int row) {
+        if (row < 0 || row >= this.rowCount) {
+            throw new IndexOutOfBoundsException("No expense row " + row);
+        }
+        return new Expense(this, row);
+    }
+
+    // Deletions are numbered, so a reader holding deletionCount() can still see the store as
+    // it was then (see isDeletedAsOf)
+    public synchronized void markDeleted(int row) {
+        if (this.deletedAt.getInt(row) == 0) {
+            this.deletedAt.putInt(row, this.deletions + 1);
+            this.deletions++;
+        }
+    }
+
+    public boolean isDeleted(int row) {
+        return this.deletedAt.getInt(row) != 0;
+    }
+
+    public int deletionCount() {
+        return this.deletions;
+    }
+
+    public boolean isDeletedAsOf(int row, int deletionCount) {
+        int deletion = this.deletedAt.getInt(row);
+        return deletion != 0 && deletion <= deletionCount;
+    }
+
+    public int size() {
+        return this.rowCount;
+    }
+
+    // Bytes reserved across all column segments and the id index
+    public synchronized long offHeapBytes() {
+        long total = this.splitUser.bytes() + this.splitAmount.bytes() + this.text.bytes() + this.idSlots * 4L;
+        for (Column column : this.rowColumns) {
+            total += column.bytes();
+        }
+        return total;
+    }
+
+    // Column reads behind the Expense flyweight, plus primitive accessors for scans
+
+    public String idOf(int row) {
+        return new UUID(this.idHigh.getLong(row), this.idLow.getLong(row)).toString();
+    }
+
+    public String descriptionOf(int row) {
+        return new String(descriptionBytesOf(row), StandardCharsets.UTF_8);
+    }
+
+    private byte[] descriptionBytesOf(int row) {
+        byte[] bytes = new byte[this.textLength.getInt(row)];
+        if (bytes.length > 0) {
+            this.text.getBytes(this.textOffset.getLong(row), bytes);
+        }
+        return bytes;
+    }
+
+    public long amountMinorOf(int row) {
+        return this.amount.getLong(row);
+    }
+
+    public Money amountOf(int row) {
+        return Money.ofMinor(this.amount.getLong(row), this.scale.getByte(row));
+    }
+
+    public int payerIndexOf(int row) {
+        return this.payer.getInt(row);
+    }
+
+    public String payerOf(int row) {
+        return userIdAt(this.payer.getInt(row));
+    }
+
+    public int groupIndexOf(int row) {
+        return this.group.getInt(row);
+    }
+
+    public String groupOf(int row) {
+        int index = this.group.getInt(row);
+        return index < 0 ? null : this.groupIds[index];
+    }
+
+    public long createdAtOf(int row) {
+        return this.createdAt.getLong(row);
+    }
+
+    public int splitCountOf(int row) {
+        return this.splitCount.getInt(row);
+    }
+
+    public int splitUserIndexOf(int row, int split) {
+        return this.splitUser.getInt(this.splitStart.getLong(row) + split);
+    }
+
+    public long splitAmountMinorOf(int row, int split) {
+        return this.splitAmount.getLong(this.splitStart.getLong(row) + split);
+    }
+
+    public List<Split> splitsOf(int row) {
+        int count = this.splitCount.getInt(row);
+        long start = this.splitStart.getLong(row);
+        int amountScale = this.scale.getByte(row);
+        List<Split> splits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            splits.add(new Split(userIdAt(this.splitUser.getInt(start + i)),
+                    Money.ofMinor(this.splitAmount.getLong(start + i), amountScale)));
+        }
+        return splits;
+    }
+
+    public String userIdAt(int index) {
+        return this.userIds[index];
+    }
+
+    // Mapped segments stay valid after their files are closed, so there is nothing to release
+    // beyond what the garbage collector frees with the buffers
+    @Override
+    public void close() {
+    }
+
+    // Where segments come from. Without a file that is direct memory. With one, segments are
+    // slices of a single file mapped REGION_BYTES at a time, so the number of mappings follows
+    // the total size of the history rather than the number of groups and columns. Segment
+    // sizes are powers of two; those of a store that has become unreachable, e.g. after
+    // compaction, are kept on a free list per size and handed out again.
+    private static final class Arena {
+        private final Path file; // null for direct memory
+        private final Map<Integer, ArrayDeque<ByteBuffer>> free;
+        private ByteBuffer region;
+        private long mapped;
+
+        Arena(Path file) {
+            this.file = file;
+            this.free = new HashMap<>();
+        }
+
+        ByteBuffer allocate(int bytes) {
+            if (this.file == null) {
+                return ByteBuffer.allocateDirect(bytes);
+            }
+            synchronized (this) {
+                ArrayDeque<ByteBuffer> sized = this.free.get(bytes);
+                if (sized != null && !sized.isEmpty()) {
+                    return sized.pop();
+                }
+                if (this.region == null || this.region.remaining() < bytes) {
+                    // the region mapping stays valid after the file is closed
+                    try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                        this.region = channel.map(FileChannel.MapMode.READ_WRITE, this.mapped, REGION_BYTES);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not grow expense arena " + this.file, e);
+                    }
+                    this.mapped += REGION_BYTES;
+                }
+                ByteBuffer segment = this.region.slice(this.region.position(), bytes);
+                this.region.position(this.region.position() + bytes);
+                return segment;
+            }
+        }
+
+        synchronized void release(List<ByteBuffer> segments) {
+            for (ByteBuffer segment : segments) {
+                this.free.computeIfAbsent(segment.capacity(), size -> new ArrayDeque<>()).push(segment);
+            }
+        }
+    }
+
+    // The segments one store has taken from the arena. Registered with the cleaner, so it must
+    // not reach the store: it runs once the store, and every flyweight over it, is unreachable.
+    private static final class Segments implements Runnable {
+        private final Arena arena;
+        private final List<ByteBuffer> taken;
+
+        Segments(Arena arena) {
+            this.arena = arena;
+            this.taken = new ArrayList<>();
+        }
+
+        // Called with the store lock held
+        ByteBuffer allocate(int bytes) {
+            ByteBuffer segment = this.arena.allocate(bytes);
+            if (this.arena.file != null) {
+                this.taken.add(segment);
+            }
+            return segment;
+        }
+
+        @Override
+        public void run() {
+            this.arena.release(this.taken);
+        }
+    }
+
+    // Fixed-width values in segments that are allocated as the column grows. Segment k holds
+    // first << k values until that reaches perSegment; every later segment holds perSegment.
+    // Both are powers of two.
+    private static class Column {
+        private final int width;
+        private final int firstShift;
+        private final int maxShift;
+        private final int growthSegments;
+        private final long growthEntries;
+        private final Segments source;
+        private volatile ByteBuffer[] segments;
+
+        Column(int width, int first, int perSegment, Segments source) {
+            this.width = width;
+            this.firstShift = Integer.numberOfTrailingZeros(first);
+            this.maxShift = Integer.numberOfTrailingZeros(perSegment);
+            this.growthSegments = this.maxShift - this.firstShift;
+            this.growthEntries = perSegment - first;
+            this.source = source;
+            this.segments = new ByteBuffer[0];
+        }
+
+        private int segmentOf(long index) {
+            if (index < this.growthEntries) {
+                return 63 - Long.numberOfLeadingZeros((index >>> this.firstShift) + 1);
+            }
+            return this.growthSegments + (int) ((index - this.growthEntries) >>> this.maxShift);
+        }
+
+        private long segmentStart(int segment) {
+            if (segment < this.growthSegments) {
+                return ((1L << segment) - 1) << this.firstShift;
+            }
+            return this.growthEntries + ((long) (segment - this.growthSegments) << this.maxShift);
+        }
+
+        private int segmentSize(int segment) {
+            return 1 << (segment < this.growthSegments ? this.firstShift + segment : this.maxShift);
+        }
+
+        // First index past the segment holding index
+        long segmentEnd(long index) {
+            int segment = segmentOf(index);
+            return segmentStart(segment) + segmentSize(segment);
+        }
+
+        // Called with the store lock held
+        void ensure(long index) {
+            int needed = segmentOf(index) + 1;
+            if (needed <= this.segments.length) {
+                return;
+            }
+
+            ByteBuffer[] grown = Arrays.copyOf(this.segments, needed);
+            for (int i = this.segments.length; i < needed; i++) {
+                grown[i] = this.source.allocate(this.width * segmentSize(i));
+            }
+            this.segments = grown;
+        }
+
+        private ByteBuffer segment(long index) {
+            return this.segments[segmentOf(index)];
+        }
+
+        private int offset(long index) {
+            return (int) (index - segmentStart(segmentOf(index))) * this.width;
+        }
+        long getLong(long index) {
+            return segment(index).getLong(offset(index));
+        }
+
+        void putLong(long index, long value) {
+            segment(index).putLong(offset(index), value);
+        }
+
+        int getInt(long index) {
+            return segment(index).getInt(offset(index));
+        }
+
+        void putInt(long index, int value) {
+            segment(index).putInt(offset(index), value);
+        }
+
+        byte getByte(long index) {
+            return segment(index).get(offset(index));
+        }
+
+        void putByte(long index, byte value) {
+            segment(index).put(offset(index), value);
+        }
+
+        void getBytes(long index, byte[] target) {
+            segment(index).get(offset(index), target);
+        }
+
+        void putBytes(long index, byte[] source) {
+            segment(index).put(offset(index), source);
+        }
+
+        long bytes() {
+            int count = this.segments.length;
+            return count == 0 ? 0 : (segmentStart(count - 1) + segmentSize(count - 1)) * this.width;
+        }
+    }
+}
@@ -1,123 +1,259 @@
 package models;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import enums.SimplificationMode;
+import events.LedgerEventListener;
+import events.LedgerEvents;
 import enums.SplitType;
 import factory.SplitFactory;
+import observer.Notification;
+import observer.NotificationDispatcher;
+import observer.Observer;
+import persistence.LedgerJournal;
+import strategy.ItemizedSplit;
+import strategy.SplitStrategy;
 import utils.DebtSimplifier;
+import utils.Transfer;
 
+// Every method touching members, expenses or balances holds this group's monitor, so
+// operations on one group are linearizable while different groups proceed in parallel.
 public class Group {
+    private static final NotificationDispatcher INLINE_DISPATCHER = NotificationDispatcher.inline();
+
     private String id;
     private String name;
     private List<User> users;
-    private Map<String, Expense> expenses;
-    private Map<String, Map<String, Double>> balanceSheet;
+    private Map<String, User> usersById; // O(1) membership and lookup alongside the ordered list
+    private ExpenseMap expenses; // rows in this group's ExpenseStore, not heap objects
+    // reused by addExpense under the group lock, so posting does not allocate split arrays
+    private double[] splitValues;
+    private long[] splitShares;
+
+    // Members are interned to dense int slots so balances live in a primitive matrix
+    private Map<String, Integer> slotByUserId;
+    private List<String> userIdBySlot;
+    private List<User> memberBySlot; // null for slots of people who are not members
+    private ArrayDeque<Integer> freeSlots;
+    private BalanceMatrix balances;
+    private Map<String, Map<String, Money>> balanceSheetView; // materialized lazily, null when stale
+    private SimplificationMode simplificationMode;
+
+    // Members are registered automatically; anything else can subscribe through addObserver
+    private List<Observer> observers;
+    private volatile NotificationDispatcher dispatcher;
+    private volatile LedgerJournal journal; // null unless the ledger is durable
 
     public Group(String name) {
         this.id = UUID.randomUUID().toString();
         this.name = name;
         this.users = new ArrayList<>();
-        this.expenses = new HashMap<>();
-        this.balanceSheet = new HashMap<>();
+        this.usersById = new ConcurrentHashMap<>();
+        this.expenses = new ExpenseMap(ExpenseStore.inMemory(), this.id);
+        this.splitValues = new double[8];
+        this.splitShares = new long[8];
+        this.slotByUserId = new HashMap<>();
+        this.userIdBySlot = new ArrayList<>();
+        this.memberBySlot = new ArrayList<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.balances = new BalanceMatrix();
+        this.balances.setEdgeListener(this::edgeChanged);
+        this.simplificationMode = SimplificationMode.AUTO;
+        this.observers = new CopyOnWriteArrayList<>();
+        this.dispatcher = INLINE_DISPATCHER;
     }
 
     private User getUserByUserId(String id) {
-        for (User user : this.users) {
-            if (user.getId().equals(id)) {
-                return user;
+        return this.usersById.get(id);
+    }
+
+    // Safe without the group lock, so listeners on other threads can resolve names.
+    public User getMember(String userId) {
+        return this.usersById.get(userId);
+    }
+
+    private int slotOf(String userId) {
+        Integer slot = this.slotByUserId.get(userId);
+        if (slot != null) {
+            return slot;
+        }
+
+        int newSlot;
+        if (this.freeSlots.isEmpty()) {
+            newSlot = this.userIdBySlot.size();
+            this.userIdBySlot.add(userId);
+            this.memberBySlot.add(this.usersById.get(userId));
+        } else {
+            newSlot = this.freeSlots.pop();
+            this.userIdBySlot.set(newSlot, userId);
+            this.memberBySlot.set(newSlot, this.usersById.get(userId));
+        }
+
+        this.slotByUserId.put(userId, newSlot);
+        this.balances.ensureCapacity(newSlot + 1);
+        return newSlot;
+    }
+
+    // Keeps each member's cross-group owed/owing totals in step with this group's matrix
+    private void edgeChanged(int lo, int hi, long before, long after) {
+        User low = this.memberBySlot.get(lo);
+        if (low != null) {
+            low.adjustGroupTotals(before, after);
+        }
+        User high = this.memberBySlot.get(hi);
+        if (high != null) {
+            high.adjustGroupTotals(-before, -after);
+        }
+    }
+
+    // A slot can carry balances from before its user joined (a restored sheet); count them now
+    private void bindMember(int slot, User user) {
+        if (this.memberBySlot.get(slot) == user) {
+            return;
+        }
+        this.memberBySlot.set(slot, user);
+        if (this.balances.hasEdges(slot)) {
+            for (int other = 0; other < this.userIdBySlot.size(); other++) {
+                long owes = this.balances.get(slot, other);
+                if (owes != 0) {
+                    user.adjustGroupTotals(0, owes);
+                }
             }
         }
-        return null;
     }
 
-    public void addUser(User user) {
+    // Only reached once canLeaveGroup has found the slot settled, so there are no edges to clear
+    private void releaseSlot(String userId) {
+        Integer slot = this.slotByUserId.get(userId);
+        if (slot == null) {
+            return;
+        }
+        if (this.balances.hasEdges(slot)) {
+            throw new IllegalStateException("Cannot release a member who still has balances: " + userId);
+        }
+
+        this.slotByUserId.remove(userId);
+        this.userIdBySlot.set(slot, null);
+        this.memberBySlot.set(slot, null);
+        this.freeSlots.push(slot);
+        this.balanceSheetView = null;
+    }
+
+    public synchronized void addUser(User user) {
+        if (this.usersById.putIfAbsent(user.getId(), user) != null) {
+            return;
+        }
+
         this.users.add(user);
-        this.balanceSheet.put(user.getId(), new HashMap<>());
+        this.observers.add(user);
+        user.joinedGroup(this.id);
+        bindMember(slotOf(user.getId()), user);
+        this.balanceSheetView = null;
+
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendMemberAdded(this.id, user.getId());
+        }
     }
 
-    public boolean removeUser(String userId) {
+    public synchronized boolean removeUser(String userId) {
 
         if (!canLeaveGroup(userId)) {
             return false;
         }
 
-        this.users.remove(getUserByUserId(userId));
-        this.balanceSheet.remove(userId);
+        User user = this.usersById.remove(userId);
+        if (user != null) {
+            this.users.remove(user);
+            this.observers.remove(user);
+            user.leftGroup(this.id);
+        }
+        releaseSlot(userId);
 
-        for (Map<String, Double> balanceSheet : this.balanceSheet.values()) {
-            balanceSheet.remove(userId);
+        LedgerJournal journal = this.journal;
+        if (journal != null && user != null) {
+            journal.appendMemberRemoved(this.id, userId);
         }
 
         return true;
     }
 
-    public boolean canLeaveGroup(String userId) {
-        // Check if this user owes anything
-        Map<String, Double> owesothers = this.balanceSheet.getOrDefault(userId, new HashMap<>());
-        for (double amount : owesothers.values()) {
-            if (Math.abs(amount) > 0.001)
-                return false;
-        }
+    public synchronized boolean canLeaveGroup(String userId) {
+        // A user can leave only when nobody owes them and they owe nobody
+        Integer slot = this.slotByUserId.get(userId);
+        return slot == null || !this.balances.hasEdges(slot);
+    }
 
-        // Check if anyone owes this user
-        for (Map<String, Double> othersBalances : this.balanceSheet.values()) {
-            if (Math.abs(othersBalances.getOrDefault(userId, 0.0)) > 0.001)
-                return false;
+    public void notifyUsers(String message) {
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.message(this, message));
         }
+    }
 
-        return true;
+    public void addObserver(Observer observer) {
+        this.observers.add(observer);
     }
 
-    public void notifyUsers(String message) {
-        for (User user : this.users) {
-            user.update(message);
-        }
+    public void removeObserver(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    // Copy-on-write, so the dispatcher thread can iterate it without the group lock
+    public List<Observer> getObservers() {
+        return Collections.unmodifiableList(this.observers);
     }
 
-    public boolean isMember(String userId) {
-        return this.users.stream().anyMatch(user -> user.getId().equals(userId));
+    public synchronized boolean isMember(String userId) {
+        return this.usersById.containsKey(userId);
     }
 
-    public void updateGroupBalance(String debtorId, String creditorId, Double amount) {
+    public synchronized void updateGroupBalance(String debtorId, String creditorId, Money amount) {
         if (debtorId.equals(creditorId))
             return;
 
-        // Ensure both maps exist
-        this.balanceSheet.computeIfAbsent(debtorId, k -> new HashMap<>());
-        this.balanceSheet.computeIfAbsent(creditorId, k -> new HashMap<>());
-
-        // If creditorId already owes debtorId, reduce that debt first
-        double creditorOwesDebtor = this.balanceSheet.get(creditorId).getOrDefault(debtorId, 0.0);
-
-        if (creditorOwesDebtor > 0.001) {
-            if (creditorOwesDebtor >= amount) {
-                this.balanceSheet.get(creditorId).put(debtorId, creditorOwesDebtor - amount);
-            } else {
-                this.balanceSheet.get(creditorId).put(debtorId, 0.0);
-                double remaining = amount - creditorOwesDebtor;
-                this.balanceSheet.get(debtorId).put(creditorId,
-                        this.balanceSheet.get(debtorId).getOrDefault(creditorId, 0.0) + remaining);
-            }
-        } else {
-            this.balanceSheet.get(debtorId).put(creditorId,
-                    this.balanceSheet.get(debtorId).getOrDefault(creditorId, 0.0) + amount);
+        updateGroupBalance(slotOf(debtorId), slotOf(creditorId), toMinorUnits(amount));
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupBalanceDeltas(this.id, debtorId, Map.of(creditorId, amount));
         }
+    }
 
-        // Clean up zero balances
-        if (this.balanceSheet.get(debtorId).getOrDefault(creditorId, 0.0) < 0.001) {
-            this.balanceSheet.get(debtorId).remove(creditorId);
-        }
-        if (this.balanceSheet.get(creditorId).getOrDefault(debtorId, 0.0) < 0.001) {
-            this.balanceSheet.get(creditorId).remove(debtorId);
+    private static long toMinorUnits(Money amount) {
+        return amount.toMinorUnits(Money.DEFAULT_SCALE);
+    }
+
+    private static long toDefaultScale(long minorUnits, int scale) {
+        if (scale == Money.DEFAULT_SCALE) {
+            return minorUnits;
         }
+        return Money.ofMinor(minorUnits, scale).toMinorUnits(Money.DEFAULT_SCALE);
     }
 
-    public boolean addExpense(String description, double totalAmount, String paidBy, List<Double> splits,
+    private void updateGroupBalance(int debtor, int creditor, long amount) {
+        // The matrix nets this against any debt the creditor already owes the debtor
+        this.balances.add(debtor, creditor, amount);
+        this.balanceSheetView = null;
+    }
+
+    public synchronized boolean addExpense(String description, Money totalAmount, String paidBy, List<Double> splits,
             List<String> users, SplitType splitType) {
+        return addExpense(description, totalAmount.getMinorUnits(), totalAmount.getScale(), paidBy, splits, users,
+                splitType);
+    }
+
+    // The same with the total already in minor units at scale, so posting builds no Money
+    public synchronized boolean addExpense(String description, long totalMinor, int scale, String paidBy,
+            List<Double> splits, List<String> users, SplitType splitType) {
         if (!isMember(paidBy)) {
             throw new IllegalArgumentException("User is not a member of the group");
         }
@@ -128,41 +264,204 @@ public class Group {
             }
         }
 
-        // SplitFactory splitFactory = SplitFactory.getInstance(splitType);
-        List<Split> newSplits = SplitFactory.getInstance(splitType).calculateSplit(totalAmount, users, splits);
+        // Shares are computed into the group's scratch arrays and written straight to the store
+        SplitStrategy strategy = SplitFactory.getInstance(splitType);
+        int count = users.size();
+        int valueCount = splits == null ? 0 : splits.size();
+        strategy.checkCounts(count, valueCount);
+        ensureSplitCapacity(count);
+        double[] values = this.splitValues;
+        long[] shares = this.splitShares;
+        if (strategy.needsValues()) {
+            for (int i = 0; i < count; i++) {
+                values[i] = splits.get(i);
+            }
+        }
+        strategy.split(totalMinor, scale, values, count, shares);
+        postExpense(description, totalMinor, scale, paidBy, users, shares);
+        return true;
+
+    }
+
+    // Posts a whole receipt as one expense. A single pass over the lines adds each item's equal
+    // shares onto the subtotal of everyone who had it; tax and tip are then prorated by those
+    // subtotals and the combined shares are posted once, like any other expense.
+    public synchronized Expense addItemizedExpense(String description, String paidBy, Receipt receipt) {
+        if (!isMember(paidBy)) {
+            throw new IllegalArgumentException("User is not a member of the group");
+        }
+
+        Map<String, Integer> indexByUser = new HashMap<>();
+        List<String> users = new ArrayList<>();
+        long total = toMinorUnits(receipt.getTax()) + toMinorUnits(receipt.getTip());
+        for (Receipt.Item item : receipt.getItems()) {
+            long amount = toMinorUnits(item.getAmount());
+            total += amount;
+            List<String> participants = item.getParticipants();
+            int count = participants.size();
+            long each = amount / count;
+            long remainder = amount % count;
+            for (int p = 0; p < count; p++) {
+                String user = participants.get(p);
+                Integer index = indexByUser.get(user);
+                if (index == null) {
+                    if (!isMember(user)) {
+                        throw new IllegalArgumentException("User is not a member of the group");
+                    }
+                    index = users.size();
+                    indexByUser.put(user, index);
+                    users.add(user);
+                    ensureSplitCapacity(users.size());
+                    this.splitShares[index] = 0;
+                }
+                // leftover paise of the item go one each to its first participants
+                this.splitShares[index] += each + (p < remainder ? 1 : 0);
+            }
+        }
+
+        double[] weights = this.splitValues;
+        long[] shares = this.splitShares;
+        for (int i = 0; i < users.size(); i++) {
+            weights[i] = shares[i];
+        }
+        ItemizedSplit.prorate(total, weights, users.size(), shares);
+
+        return postExpense(description, total, Money.DEFAULT_SCALE, paidBy, users, shares);
+    }
+
+    private void ensureSplitCapacity(int count) {
+        if (this.splitShares.length < count) {
+            this.splitValues = Arrays.copyOf(this.splitValues, Math.max(count, this.splitValues.length * 2));
+            this.splitShares = Arrays.copyOf(this.splitShares, this.splitValues.length);
+        }
+    }
+
+    // Appends the expense with shares already computed, then updates balances, journals and notifies
+    private Expense postExpense(String description, long totalMinor, int scale, String paidBy, List<String> users,
+            long[] shares) {
+        int count = users.size();
+
+        Expense expense = this.expenses.append(description, totalMinor, scale, paidBy, users, shares);
+        int paidBySlot = slotOf(paidBy);
+        for (int i = 0; i < count; i++) {
+            String user = users.get(i);
+            if (!user.equals(paidBy)) {
+                // user owes paidBy
+                long amount = toDefaultScale(shares[i], scale);
+                this.updateGroupBalance(slotOf(user), paidBySlot, amount);
+            }
+        }
+
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupExpense(expense);
+        }
+
+        // One notification per expense; the dispatcher fans it out to observers
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.expenseAdded(this, expense));
+        }
+        LedgerEventListener events = LedgerEvents.get();
+        if (events.isEnabled()) {
+            events.onExpenseAdded(this, expense);
+        }
+
+        return expense;
+    }
 
-        Expense expense = new Expense(description, totalAmount, paidBy, newSplits, this.id);
+    // Posts an expense whose splits are already computed, without notifying anyone.
+    // Journal replay goes through here so a rebuilt group matches the original exactly.
+    public synchronized void applyExpense(Expense expense) {
         this.expenses.put(expense.getId(), expense);
+        postSplits(expense, false);
+
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupExpense(expense);
+        }
+    }
+
+    // Posts a batch of expenses all-or-nothing. Every request is validated and split before the
+    // ledger changes, so one bad request rejects the whole batch with nothing applied. Balance
+    // changes are netted per pair and written once, and observers get a single summary.
+    public synchronized List<Expense> addExpenses(List<ExpenseRequest> requests) {
+        Map<SplitType, SplitStrategy> strategies = new EnumMap<>(SplitType.class);
+        List<Expense> batch = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            ExpenseRequest request = requests.get(i);
+            if (!this.usersById.containsKey(request.getPaidBy())) {
+                throw new IllegalArgumentException("Request " + i + ": user is not a member of the group");
+            }
+            for (String user : request.getUsers()) {
+                if (!this.usersById.containsKey(user)) {
+                    throw new IllegalArgumentException("Request " + i + ": user is not a member of the group");
+                }
+            }
 
-        for (Split split : newSplits) {
-            if (!split.getUserId().equals(paidBy)) {
-                // split.getUserId() now owes paidBy
-                this.updateGroupBalance(split.getUserId(), paidBy, split.getAmount());
+            SplitStrategy strategy = strategies.computeIfAbsent(request.getSplitType(), SplitFactory::getInstance);
+            List<Split> newSplits;
+            try {
+                newSplits = strategy.calculateSplit(request.getTotalAmount(), request.getUsers(),
+                        request.getSplits());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Request " + i + ": " + e.getMessage(), e);
             }
+            batch.add(new Expense(request.getDescription(), request.getTotalAmount(), request.getPaidBy(),
+                    newSplits, this.id));
         }
 
-        // Notify users
-        System.out.println("\n=========== Sending Notifications ====================");
-        String paidByName = getUserByUserId(paidBy).getName();
-        this.notifyUsers("New expense added: " + description + " (Rs " + totalAmount + ")");
+        if (batch.isEmpty()) {
+            return batch;
+        }
 
-        // Printing console message-------
-        System.out.println("\n=========== Expense Message ====================");
-        System.out.println("Expense added to " + name + ": " + description + " (Rs " + totalAmount
-                + ") paid by " + paidByName + " and involved people are : ");
+        // Keyed by (low slot, high slot); a positive delta means the low slot owes the high one
+        Map<Long, long[]> deltas = new HashMap<>();
+        Money total = Money.ZERO;
+        for (Expense expense : batch) {
+            int paidBySlot = slotOf(expense.getPaidBy());
+            for (Split split : expense.getSplits()) {
+                if (split.getUserId().equals(expense.getPaidBy())) {
+                    continue;
+                }
+                int debtor = slotOf(split.getUserId());
+                long amount = toMinorUnits(split.getAmount());
+                long key = ((long) Math.min(debtor, paidBySlot) << 32) | Math.max(debtor, paidBySlot);
+                deltas.computeIfAbsent(key, k -> new long[1])[0] += debtor < paidBySlot ? amount : -amount;
+            }
+            total = total.plus(expense.getTotalAmount());
+        }
 
-        for (Split split : newSplits) {
-            System.out.println(getUserByUserId(split.getUserId()).getName() + " : " + split.getAmount());
+        for (Map.Entry<Long, long[]> delta : deltas.entrySet()) {
+            long key = delta.getKey();
+            if (delta.getValue()[0] != 0) {
+                updateGroupBalance((int) (key >>> 32), (int) key, delta.getValue()[0]);
+            }
+        }
+        for (Expense expense : batch) {
+            this.expenses.put(expense.getId(), expense);
         }
 
-        return true;
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupExpenses(this.id, batch);
+        }
 
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.expensesAdded(this, batch.size(), total));
+        }
+        LedgerEventListener events = LedgerEvents.get();
+        if (events.isEnabled()) {
+            events.onExpensesAdded(this, batch);
+        }
+
+        return batch;
     }
 
-    public boolean settleExpense(String fromUserId, String toUserId, double amount) {
+    public synchronized boolean settleExpense(String fromUserId, String toUserId, Money amount) {
 
         if (!isMember(fromUserId) || !isMember(toUserId)) {
-            System.out.println("user is not part or group");
+            LedgerEvents.get().onRequestRejected("user is not part or group");
             return false;
         }
 
@@ -172,65 +471,288 @@ public class Group {
         // Both are handled by updateGroupBalance(toUserId, fromUserId, amount)
         // Wait, if I (from) pay you (to), I am the creditor of this settlement
         // transaction.
-        this.updateGroupBalance(toUserId, fromUserId, amount);
+        applySettlement(fromUserId, toUserId, amount);
 
-        String fromUserName = getUserByUserId(fromUserId).getName();
-        String toUserName = getUserByUserId(toUserId).getName();
+        User fromUser = getUserByUserId(fromUserId);
+        User toUser = getUserByUserId(toUserId);
+        LedgerEventListener events = LedgerEvents.get();
+        if (events.isEnabled()) {
+            events.onGroupSettlement(this, fromUser, toUser, amount);
+        }
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.settlement(this, fromUser, toUser, amount));
+        }
 
-        System.out.println("\n=========== Settling Expense ====================");
-        System.out.println("Settled expense from " + fromUserName + " to " + toUserName + " (Rs " + amount + ")");
+        return true;
+    }
 
-        this.notifyUsers("Settled expense from " + fromUserName + " to " + toUserName + " (Rs " + amount + ")");
+    // Records a payment between members without notifying anyone.
+    public synchronized void applySettlement(String fromUserId, String toUserId, Money amount) {
+        this.updateGroupBalance(slotOf(toUserId), slotOf(fromUserId), toMinorUnits(amount));
 
-        return true;
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupSettlement(this.id, fromUserId, toUserId, amount);
+        }
     }
 
-    public void showGroupBalance() {
+    public synchronized void showGroupBalance() {
         System.out.println("balances sheet of " + name + " : ");
-        boolean hasBalance = false;
 
-        for (Map.Entry<String, Map<String, Double>> entry : this.balanceSheet.entrySet()) {
-            String userName = getUserByUserId(entry.getKey()).getName();
+        if (this.balances.edgeCount() == 0) {
+            System.out.println("All settled up!");
+            return;
+        }
+
+        this.balances.forEachEdge((debtor, creditor, amount) -> {
+            String userName = getUserByUserId(this.userIdBySlot.get(debtor)).getName();
+            String balanceUserName = getUserByUserId(this.userIdBySlot.get(creditor)).getName();
+            System.out.println(userName + " owes " + balanceUserName + " Rs " + Money.ofMinor(amount));
+        });
+    }
+
+    public synchronized int getMemberCount() {
+        return this.users.size();
+    }
+
+    // Non-zero debts between pairs of members
+    public synchronized int getEdgeCount() {
+        return this.balances.edgeCount();
+    }
+
+    public int getExpenseCount() {
+        return this.expenses.size();
+    }
+
+    public synchronized SimplificationReport simplifyBalanceSheet() {
+        return simplifyBalanceSheet(this.simplificationMode);
+    }
+
+    public synchronized SimplificationReport simplifyBalanceSheet(SimplificationMode mode) {
+        int edgesBefore = this.balances.edgeCount();
+
+        // Nets are kept up to date by every balance update, so only non-zero members are visited
+        int count = this.balances.nonZeroCount();
+        int[] slots = new int[count];
+        long[] nets = new long[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = this.balances.nonZeroSlot(i);
+            nets[i] = this.balances.getNet(slots[i]);
+        }
 
-            for (Map.Entry<String, Double> balanceEntry : entry.getValue().entrySet()) {
-                double amount = balanceEntry.getValue();
-                if (amount > 0.001) {
-                    String balanceUserName = getUserByUserId(balanceEntry.getKey()).getName();
-                    System.out.println(userName + " owes " + balanceUserName + " Rs " + amount);
-                    hasBalance = true;
+        List<Transfer> transfers = DebtSimplifier.simplifyNets(slots, nets, mode);
+
+        this.balances.clear();
+        for (Transfer transfer : transfers) {
+            this.balances.add(transfer.getDebtor(), transfer.getCreditor(), transfer.getAmount());
+        }
+        this.balanceSheetView = null;
+        // The resulting transfers are journaled rather than the mode, since OPTIMAL depends on a time budget
+        journalBalances();
+        return new SimplificationReport(this.id, mode, edgesBefore, this.balances.edgeCount());
+    }
+
+    // What others in the group owe this user minus what the user owes them.
+    public synchronized Money getNetBalance(String userId) {
+        Integer slot = this.slotByUserId.get(userId);
+        return slot == null ? Money.ZERO : Money.ofMinor(this.balances.getNet(slot));
+    }
+
+    // Each debtor owes the payer their split, or with reverse set, that debt is taken back.
+    // Reversal nets against whatever the sheet holds now, so it stays correct after
+    // simplification has rewritten who owes whom: every member's net moves back exactly.
+    private void postSplits(Expense expense, boolean reverse) {
+        int paidBySlot = slotOf(expense.getPaidBy());
+        for (Split split : expense.getSplits()) {
+            if (!split.getUserId().equals(expense.getPaidBy())) {
+                int debtor = slotOf(split.getUserId());
+                long amount = toMinorUnits(split.getAmount());
+                if (reverse) {
+                    this.updateGroupBalance(paidBySlot, debtor, amount);
+                } else {
+                    this.updateGroupBalance(debtor, paidBySlot, amount);
                 }
             }
         }
+    }
 
-        if (!hasBalance) {
-            System.out.println("All settled up!");
+    private void checkStillMembers(Expense expense) {
+        if (!isMember(expense.getPaidBy())) {
+            throw new IllegalArgumentException("User is not a member of the group");
+        }
+        for (Split split : expense.getSplits()) {
+            if (!isMember(split.getUserId())) {
+                throw new IllegalArgumentException("User is not a member of the group");
+            }
         }
     }
 
-    public void simplifyBalanceSheet() {
-        Map<String, Map<String, Double>> simplifiedBalanceSheet = DebtSimplifier.simplifyDebt(this.balanceSheet);
-        this.balanceSheet = simplifiedBalanceSheet;
-        return;
+    // Deletes an expense and takes its splits back off the balances. Costs one id lookup
+    // plus one update per split, however long the history. Returns false if there is no
+    // such expense; throws if someone on it has since left the group.
+    public synchronized boolean deleteExpense(String expenseId) {
+        Expense expense = this.expenses.get(expenseId);
+        if (expense == null) {
+            return false;
+        }
+        checkStillMembers(expense);
+        removeExpense(expenseId);
+
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.expenseDeleted(this, expense));
+        }
+        LedgerEventListener events = LedgerEvents.get();
+        if (events.isEnabled()) {
+            events.onExpenseDeleted(this, expense);
+        }
+        return true;
     }
 
-    public void removeExpense(String expenseId) {
-        this.expenses.remove(expenseId);
+    // Removes and reverses an expense without notifying anyone; journal replay goes through here
+    public synchronized boolean removeExpense(String expenseId) {
+        Expense expense = this.expenses.remove(expenseId);
+        if (expense == null) {
+            return false;
+        }
+        postSplits(expense, true);
+
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendExpenseRemoved(this.id, expenseId);
+        }
+        return true;
     }
 
-    public void addBalanceSheet(String userId, Map<String, Double> balanceSheet) {
-        this.balanceSheet.put(userId, balanceSheet);
+    // Replaces an expense with new details, keeping its id and creation time. The new splits
+    // are computed and checked before anything changes; then the old splits are reversed and
+    // the new ones posted. Returns the updated expense, or null if there is no such expense.
+    public synchronized Expense updateExpense(String expenseId, String description, Money totalAmount,
+            String paidBy, List<Double> splits, List<String> users, SplitType splitType) {
+        Expense previous = this.expenses.get(expenseId);
+        if (previous == null) {
+            return null;
+        }
+        checkStillMembers(previous);
+        if (!isMember(paidBy)) {
+            throw new IllegalArgumentException("User is not a member of the group");
+        }
+        for (String user : users) {
+            if (!isMember(user)) {
+                throw new IllegalArgumentException("User is not a member of the group");
+            }
+        }
+
+        List<Split> newSplits = SplitFactory.getInstance(splitType).calculateSplit(totalAmount, users, splits);
+        Expense updated = new Expense(expenseId, description, totalAmount, paidBy, newSplits, this.id,
+                previous.getCreatedAt());
+        replaceExpense(updated);
+
+        if (!this.observers.isEmpty()) {
+            this.dispatcher.dispatch(Notification.expenseUpdated(this, updated));
+        }
+        LedgerEventListener events = LedgerEvents.get();
+        if (events.isEnabled()) {
+            events.onExpenseUpdated(this, previous, updated);
+        }
+        return updated;
     }
 
-    public void removeBalanceSheet(String userId) {
-        this.balanceSheet.remove(userId);
+    // Swaps in an expense with the same id as an existing one, reversing the old splits and
+    // posting the new ones, without notifying anyone. Returns false if there is no such expense.
+    public synchronized boolean replaceExpense(Expense expense) {
+        Expense previous = this.expenses.get(expense.getId());
+        if (previous == null) {
+            return false;
+        }
+        postSplits(previous, true);
+        this.expenses.put(expense.getId(), expense);
+        postSplits(expense, false);
+
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupExpenseUpdated(expense);
+        }
+        return true;
+    }
+
+    // Full sheets are for simplification and whole-sheet replacement; edits of one member's
+    // edges journal only what changed
+    private void journalBalances() {
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendGroupBalances(this.id, getBalanceSheet());
+        }
+    }
+
+    public synchronized void addBalanceSheet(String userId, Map<String, Money> balanceSheet) {
+        Map<String, Money> deltas = removeOutgoingBalances(userId);
+        int debtor = slotOf(userId);
+        for (Map.Entry<String, Money> entry : balanceSheet.entrySet()) {
+            updateGroupBalance(debtor, slotOf(entry.getKey()), toMinorUnits(entry.getValue()));
+            deltas.merge(entry.getKey(), Money.ofMinor(toMinorUnits(entry.getValue())), Money::plus);
+        }
+        journalDeltas(userId, deltas);
+    }
+
+    public synchronized void removeBalanceSheet(String userId) {
+        journalDeltas(userId, removeOutgoingBalances(userId));
+    }
+
+    private void journalDeltas(String debtorId, Map<String, Money> deltas) {
+        LedgerJournal journal = this.journal;
+        if (journal != null && !deltas.isEmpty()) {
+            journal.appendGroupBalanceDeltas(this.id, debtorId, deltas);
+        }
+    }
+
+    // Drops everything userId owes, leaving debts owed to userId untouched. Returns the
+    // (negative) change per creditor.
+    private Map<String, Money> removeOutgoingBalances(String userId) {
+        Map<String, Money> deltas = new HashMap<>();
+        Integer slot = this.slotByUserId.get(userId);
+        if (slot == null || !this.balances.hasEdges(slot)) {
+            return deltas;
+        }
+
+        for (int other = 0; other < this.userIdBySlot.size(); other++) {
+            long owed = this.balances.get(slot, other);
+            if (owed > 0) {
+                updateGroupBalance(slot, other, -owed);
+                deltas.put(this.userIdBySlot.get(other), Money.ofMinor(-owed));
+            }
+        }
+        return deltas;
     }
 
     public String getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public synchronized void setId(String id) {
+        for (User user : this.users) {
+            user.leftGroup(this.id);
+            user.joinedGroup(id);
+        }
         this.id = id;
+        // expense rows are keyed by group id, so move them under the new one
+        moveExpenses(this.expenses.getStore());
+    }
+
+    public synchronized ExpenseStore getExpenseStore() {
+        return expenses.getStore();
+    }
+
+    public synchronized void setExpenseStore(ExpenseStore expenseStore) {
+        moveExpenses(expenseStore);
+    }
+
+    private void moveExpenses(ExpenseStore target) {
+        ExpenseMap moved = new ExpenseMap(target, this.id);
+        if (!this.expenses.isEmpty()) {
+            moved.putAll(this.expenses);
+            this.expenses.clear();
+        }
+        this.expenses = moved;
     }
 
     public String getName() {
@@ -241,28 +763,87 @@ public class Group {
         this.name = name;
     }
 
-    public List<User> getUsers() {
-        return users;
+    public synchronized List<User> getUsers() {
+        return List.copyOf(users);
+    }
+
+    public synchronized void setUsers(List<User> users) {
+        this.observers.removeIf(observer -> observer instanceof User);
+        this.users = new ArrayList<>();
+        this.usersById = new ConcurrentHashMap<>();
+        for (User user : users) {
+            addUser(user);
+        }
+    }
+
+    public NotificationDispatcher getNotificationDispatcher() {
+        return dispatcher;
+    }
+
+    public void setNotificationDispatcher(NotificationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public LedgerJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(LedgerJournal journal) {
+        this.journal = journal;
+    }
+
+    public synchronized SimplificationMode getSimplificationMode() {
+        return simplificationMode;
     }
 
-    public void setUsers(List<User> users) {
-        this.users = users;
+    public synchronized void setSimplificationMode(SimplificationMode simplificationMode) {
+        this.simplificationMode = simplificationMode;
     }
 
     public Map<String, Expense> getExpenses() {
         return expenses;
     }
 
-    public void setExpenses(Map<String, Expense> expenses) {
-        this.expenses = expenses;
+    // Expenses as of now, for a snapshot written while the group carries on
+    public synchronized ExpenseMap.Frozen freezeExpenses() {
+        return expenses.freeze();
     }
 
-    public Map<String, Map<String, Double>> getBalanceSheet() {
-        return balanceSheet;
+    public synchronized void setExpenses(Map<String, Expense> expenses) {
+        ExpenseMap replaced = new ExpenseMap(this.expenses.getStore(), this.id);
+        replaced.putAll(expenses);
+        this.expenses = replaced;
     }
 
-    public void setBalanceSheet(Map<String, Map<String, Double>> balanceSheet) {
-        this.balanceSheet = balanceSheet;
+    public synchronized Map<String, Map<String, Money>> getBalanceSheet() {
+        if (this.balanceSheetView != null) {
+            return this.balanceSheetView;
+        }
+
+        Map<String, Map<String, Money>> view = new HashMap<>();
+        for (User user : this.users) {
+            view.put(user.getId(), new HashMap<>());
+        }
+        this.balances.forEachEdge((debtor, creditor, amount) -> view
+                .computeIfAbsent(this.userIdBySlot.get(debtor), k -> new HashMap<>())
+                .put(this.userIdBySlot.get(creditor), Money.ofMinor(amount)));
+
+        view.replaceAll((userId, owes) -> Collections.unmodifiableMap(owes));
+        this.balanceSheetView = Collections.unmodifiableMap(view);
+        return this.balanceSheetView;
+    }
+
+    public synchronized void setBalanceSheet(Map<String, Map<String, Money>> balanceSheet) {
+        this.balances.clear();
+        this.balanceSheetView = null;
+
+        for (Map.Entry<String, Map<String, Money>> entry : balanceSheet.entrySet()) {
+            int debtor = slotOf(entry.getKey());
+            for (Map.Entry<String, Money> balanceEntry : entry.getValue().entrySet()) {
+                updateGroupBalance(debtor, slotOf(balanceEntry.getKey()), toMinorUnits(balanceEntry.getValue()));
+            }
+        }
+        journalBalances();
     }
 
 }
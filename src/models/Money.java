@@ -0,0 +1,152 @@
+package models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Exact fixed-point amount: a long count of minor units (paise) plus the currency scale.
+public final class Money implements Comparable<Money> {
+    public static final int DEFAULT_SCALE = 2;
+    public static final Money ZERO = new Money(0, DEFAULT_SCALE);
+
+    private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L };
+
+    private final long minorUnits;
+    private final int scale;
+
+    private Money(long minorUnits, int scale) {
+        this.minorUnits = minorUnits;
+        this.scale = scale;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return ofMinor(minorUnits, DEFAULT_SCALE);
+    }
+
+    public static Money ofMinor(long minorUnits, int scale) {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported currency scale: " + scale);
+        }
+        if (minorUnits == 0 && scale == DEFAULT_SCALE) {
+            return ZERO;
+        }
+        return new Money(minorUnits, scale);
+    }
+
+    public static Money of(double amount) {
+        return of(amount, DEFAULT_SCALE);
+    }
+
+    public static Money of(double amount, int scale) {
+        // BigDecimal.valueOf uses the shortest decimal form, so 0.1 becomes exactly 10 paise
+        return of(BigDecimal.valueOf(amount), scale);
+    }
+
+    // Same rounding as of(amount, scale), without allocating: only values within a hair of a
+    // half unit, where binary doubles and the decimal form can disagree, go through BigDecimal
+    public static long minorUnitsOf(double amount, int scale) {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported currency scale: " + scale);
+        }
+        double scaled = amount * POWERS_OF_TEN[scale];
+        double fraction = Math.abs(scaled - Math.rint(scaled));
+        if (Math.abs(scaled) < 1e15 && Math.abs(fraction - 0.5) > 1e-6) {
+            return Math.round(scaled);
+        }
+        return BigDecimal.valueOf(amount).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static Money of(BigDecimal amount, int scale) {
+        return ofMinor(amount.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact(), scale);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    // Minor units at the requested scale; throws if that would drop precision.
+    public long toMinorUnits(int targetScale) {
+        if (targetScale == scale) {
+            return minorUnits;
+        }
+        if (targetScale > scale) {
+            return Math.multiplyExact(minorUnits, POWERS_OF_TEN[targetScale - scale]);
+        }
+        long divisor = POWERS_OF_TEN[scale - targetScale];
+        if (minorUnits % divisor != 0) {
+            throw new ArithmeticException("Rescaling " + this + " to scale " + targetScale + " loses precision");
+        }
+        return minorUnits / divisor;
+    }
+
+    public Money plus(Money other) {
+        checkScale(other);
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits), scale);
+    }
+
+    public Money minus(Money other) {
+        checkScale(other);
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits), scale);
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits), scale);
+    }
+
+    public Money abs() {
+        return minorUnits < 0 ? negate() : this;
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    private void checkScale(Money other) {
+        if (other.scale != scale) {
+            throw new IllegalArgumentException("Currency scale mismatch: " + scale + " vs " + other.scale);
+        }
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkScale(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) o;
+        return minorUnits == other.minorUnits && scale == other.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits) * 31 + scale;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
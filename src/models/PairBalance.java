@@ -0,0 +1,47 @@
+package models;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// The single canonical balance cell for an unordered pair of users, shared by both of them.
+// Both sides read the same AtomicLong, so a payment is one CAS and no reader can see one
+// side updated without the other.
+public class PairBalance {
+    private final String lowUserId;
+    private final String highUserId;
+    private final AtomicLong lowOwesHigh; // minor units; negative means high owes low
+
+    public PairBalance(String userId, String otherUserId) {
+        if (userId.compareTo(otherUserId) < 0) {
+            this.lowUserId = userId;
+            this.highUserId = otherUserId;
+        } else {
+            this.lowUserId = otherUserId;
+            this.highUserId = userId;
+        }
+        this.lowOwesHigh = new AtomicLong();
+    }
+
+    // Records that debtorId owes the other user `amount` more minor units.
+    public long add(String debtorId, long amount) {
+        long after = lowOwesHigh.addAndGet(debtorId.equals(lowUserId) ? amount : -amount);
+        return debtorId.equals(lowUserId) ? after : -after;
+    }
+
+    // Positive if userId owes the other user, negative if the other user owes userId.
+    public long balanceFor(String userId) {
+        long value = lowOwesHigh.get();
+        return userId.equals(lowUserId) ? value : -value;
+    }
+
+    public String getOtherUserId(String userId) {
+        return userId.equals(lowUserId) ? highUserId : lowUserId;
+    }
+
+    public String getLowUserId() {
+        return lowUserId;
+    }
+
+    public String getHighUserId() {
+        return highUserId;
+    }
+}
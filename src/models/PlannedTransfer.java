@@ -0,0 +1,42 @@
+package models;
+
+import java.util.Collections;
+import java.util.Map;
+
+// One payment in a global settlement plan, with how much of it clears debt in each source:
+// a group id, or SettlementPlanner.PEER_SOURCE for direct balances.
+public class PlannedTransfer {
+    private final String fromUserId;
+    private final String toUserId;
+    private final Money amount;
+    private final Map<String, Money> amountBySource;
+
+    public PlannedTransfer(String fromUserId, String toUserId, Money amount, Map<String, Money> amountBySource) {
+        this.fromUserId = fromUserId;
+        this.toUserId = toUserId;
+        this.amount = amount;
+        this.amountBySource = Collections.unmodifiableMap(amountBySource);
+    }
+
+    public String getFromUserId() {
+        return fromUserId;
+    }
+
+    public String getToUserId() {
+        return toUserId;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    // Empty when the plan was computed without attribution
+    public Map<String, Money> getAmountBySource() {
+        return amountBySource;
+    }
+
+    @Override
+    public String toString() {
+        return fromUserId + " pays " + toUserId + " Rs " + amount + " " + amountBySource;
+    }
+}
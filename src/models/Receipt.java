@@ -0,0 +1,94 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Line items for an itemized expense. Each item is shared equally by the people who had it;
+// tax and tip are split in proportion to what each person's items came to. The whole receipt
+// posts as one expense, see Group.addItemizedExpense.
+public class Receipt {
+
+    public static class Item {
+        private final String description;
+        private final Money amount;
+        private final List<String> participants;
+
+        public Item(String description, Money amount, List<String> participants) {
+            this.description = description;
+            this.amount = amount;
+            this.participants = participants;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Money getAmount() {
+            return amount;
+        }
+
+        public List<String> getParticipants() {
+            return participants;
+        }
+    }
+
+    private final List<Item> items;
+    private Money tax;
+    private Money tip;
+
+    public Receipt() {
+        this.items = new ArrayList<>();
+        this.tax = Money.ZERO;
+        this.tip = Money.ZERO;
+    }
+
+    public Receipt addItem(String description, double amount, List<String> participants) {
+        return addItem(description, Money.of(amount), participants);
+    }
+
+    public Receipt addItem(String description, Money amount, List<String> participants) {
+        if (amount.isNegative()) {
+            throw new IllegalArgumentException("Item amounts must not be negative");
+        }
+        if (participants == null || participants.isEmpty()) {
+            throw new IllegalArgumentException("Every item needs at least one participant");
+        }
+        this.items.add(new Item(description, amount, participants));
+        return this;
+    }
+
+    public Receipt setTax(double tax) {
+        this.tax = Money.of(tax);
+        return this;
+    }
+
+    public Receipt setTip(double tip) {
+        this.tip = Money.of(tip);
+        return this;
+    }
+
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public Money getTax() {
+        return tax;
+    }
+
+    public Money getTip() {
+        return tip;
+    }
+
+    public Money getSubtotal() {
+        Money subtotal = Money.ZERO;
+        for (Item item : items) {
+            subtotal = subtotal.plus(item.getAmount());
+        }
+        return subtotal;
+    }
+
+    public Money getTotal() {
+        return getSubtotal().plus(tax).plus(tip);
+    }
+}
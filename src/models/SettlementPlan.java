@@ -0,0 +1,43 @@
+package models;
+
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of planning settlements across groups and P2P balances together.
+public class SettlementPlan {
+    private final List<PlannedTransfer> transfers;
+    private final int debtsBefore;
+    private final int componentCount;
+    private final long elapsedNanos;
+
+    public SettlementPlan(List<PlannedTransfer> transfers, int debtsBefore, int componentCount, long elapsedNanos) {
+        this.transfers = Collections.unmodifiableList(transfers);
+        this.debtsBefore = debtsBefore;
+        this.componentCount = componentCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<PlannedTransfer> getTransfers() {
+        return transfers;
+    }
+
+    // Pairwise debts across all sources that the plan replaces
+    public int getDebtsBefore() {
+        return debtsBefore;
+    }
+
+    // Groups of people connected by debts; each was planned independently
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Planned %d transfers in place of %d debts across %d components in %.1f ms",
+                transfers.size(), debtsBefore, componentCount, getElapsedMillis());
+    }
+}
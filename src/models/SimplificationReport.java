@@ -0,0 +1,43 @@
+package models;
+
+import enums.SimplificationMode;
+
+// Outcome of simplifying one group: how many pairwise debts existed before and after.
+public class SimplificationReport {
+    private final String groupId;
+    private final SimplificationMode mode;
+    private final int edgesBefore;
+    private final int edgesAfter;
+
+    public SimplificationReport(String groupId, SimplificationMode mode, int edgesBefore, int edgesAfter) {
+        this.groupId = groupId;
+        this.mode = mode;
+        this.edgesBefore = edgesBefore;
+        this.edgesAfter = edgesAfter;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public SimplificationMode getMode() {
+        return mode;
+    }
+
+    public int getEdgesBefore() {
+        return edgesBefore;
+    }
+
+    public int getEdgesAfter() {
+        return edgesAfter;
+    }
+
+    public int getTransfersSaved() {
+        return edgesBefore - edgesAfter;
+    }
+
+    @Override
+    public String toString() {
+        return "Simplified " + groupId + " (" + mode + "): " + edgesBefore + " -> " + edgesAfter + " transfers";
+    }
+}
@@ -2,9 +2,9 @@ package models;
 
 public class Split {
     private String userId;
-    private double amount;
+    private Money amount;
 
-    public Split(String userId, double amount) {
+    public Split(String userId, Money amount) {
         this.userId = userId;
         this.amount = amount;
     }
@@ -17,11 +17,11 @@ public class Split {
         this.userId = userId;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 }
@@ -1,9 +1,15 @@
 package models;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import events.LedgerEvents;
 import observer.Observer;
 
 public class User implements Observer {
@@ -12,50 +18,113 @@ public class User implements Observer {
     private String id;
     private String name;
     private String email;
-    Map<String, Double> balance; // if positive then user owes money to other user if negative then other user
-                                 // owes money to user
+    // One shared PairBalance per counterparty; the same cell sits in the other user's map
+    Map<String, PairBalance> balance;
+    private final Set<String> groupIds; // groups this user is a member of, kept by Group
+
+    // Running totals in minor units, adjusted on every change so queries never scan.
+    // P2P totals cover changes made through updateBalance; group totals cover every group.
+    private final AtomicLong peerOwed;
+    private final AtomicLong peerOwing;
+    private final AtomicLong groupOwed;
+    private final AtomicLong groupOwing;
 
     public User(String name, String email) {
         this.id = UUID.randomUUID().toString();
         this.name = name;
         this.email = email;
-        this.balance = new HashMap<>();
+        this.balance = new ConcurrentHashMap<>();
+        this.groupIds = ConcurrentHashMap.newKeySet();
+        this.peerOwed = new AtomicLong();
+        this.peerOwing = new AtomicLong();
+        this.groupOwed = new AtomicLong();
+        this.groupOwing = new AtomicLong();
     }
 
     public void update(String message) {
-        System.out.println("User: " + this.name + " received message: " + message);
+        LedgerEvents.get().onNotification(this, message);
     }
 
-    public void updateBalance(String otherUserId, double balance) {
-        if (this.balance.containsKey(otherUserId)) {
-            this.balance.put(otherUserId, this.balance.get(otherUserId) + balance);
-        } else {
-            this.balance.put(otherUserId, balance);
+    public PairBalance pairWith(User other) {
+        // Only the lower id creates the cell, so both users always end up sharing one instance
+        if (this.id.compareTo(other.id) > 0) {
+            return other.pairWith(this);
         }
 
-        if (Math.abs(this.balance.get(otherUserId)) < 0.001) {
-            this.balance.remove(otherUserId);
-        }
+        PairBalance pair = this.balance.computeIfAbsent(other.id, k -> new PairBalance(this.id, other.id));
+        other.balance.putIfAbsent(this.id, pair);
+        return pair;
     }
 
-    public double getOwedAmount() {
-        double totalAmount = 0;
-        for (double balance : this.balance.values()) {
-            if (balance < 0) {
-                totalAmount += Math.abs(balance);
-            }
-        }
-        return totalAmount;
+    // Positive amount means this user now owes otherUser more; both sides see it atomically.
+    public void updateBalance(User otherUser, Money balance) {
+        long amount = balance.toMinorUnits(Money.DEFAULT_SCALE);
+        long after = pairWith(otherUser).add(this.id, amount);
+        // before/after are consecutive values of the shared cell, so concurrent deltas add up exactly
+        long before = after - amount;
+        adjust(this.peerOwed, this.peerOwing, before, after);
+        adjust(otherUser.peerOwed, otherUser.peerOwing, -before, -after);
     }
 
-    public double getOwingAmount() {
-        double totalAmount = 0;
-        for (double balance : this.balance.values()) {
-            if (balance > 0) {
-                totalAmount += balance;
-            }
+    // A group edge to another member moved from before to after (positive = this user owes)
+    void adjustGroupTotals(long before, long after) {
+        adjust(this.groupOwed, this.groupOwing, before, after);
+    }
+
+    private static void adjust(AtomicLong owed, AtomicLong owing, long before, long after) {
+        long owingDelta = Math.max(after, 0) - Math.max(before, 0);
+        long owedDelta = Math.max(-after, 0) - Math.max(-before, 0);
+        if (owingDelta != 0) {
+            owing.addAndGet(owingDelta);
+        }
+        if (owedDelta != 0) {
+            owed.addAndGet(owedDelta);
         }
-        return totalAmount;
+    }
+
+    // What other users owe this user directly (P2P)
+    public Money getOwedAmount() {
+        return Money.ofMinor(this.peerOwed.get());
+    }
+
+    // What this user owes other users directly (P2P)
+    public Money getOwingAmount() {
+        return Money.ofMinor(this.peerOwing.get());
+    }
+
+    public Money getGroupOwedAmount() {
+        return Money.ofMinor(this.groupOwed.get());
+    }
+
+    public Money getGroupOwingAmount() {
+        return Money.ofMinor(this.groupOwing.get());
+    }
+
+    // Across every group and P2P balance
+    public Money getTotalOwedAmount() {
+        return Money.ofMinor(this.peerOwed.get() + this.groupOwed.get());
+    }
+
+    public Money getTotalOwingAmount() {
+        return Money.ofMinor(this.peerOwing.get() + this.groupOwing.get());
+    }
+
+    // Positive when others owe this user more than the user owes them, across everything
+    public Money getNetAmount() {
+        return Money.ofMinor(this.peerOwed.get() + this.groupOwed.get() - this.peerOwing.get()
+                - this.groupOwing.get());
+    }
+
+    public Set<String> getGroupIds() {
+        return Collections.unmodifiableSet(this.groupIds);
+    }
+
+    void joinedGroup(String groupId) {
+        this.groupIds.add(groupId);
+    }
+
+    void leftGroup(String groupId) {
+        this.groupIds.remove(groupId);
     }
 
     public String getNextUserId() {
@@ -90,12 +159,21 @@ public class User implements Observer {
         this.email = email;
     }
 
-    public Map<String, Double> getBalance() {
-        return balance;
+    // The shared cells themselves; each pair also appears in the other user's collection
+    public Collection<PairBalance> getPairBalances() {
+        return Collections.unmodifiableCollection(this.balance.values());
     }
 
-    public void setBalance(Map<String, Double> balance) {
-        this.balance = balance;
+    // Snapshot of non-zero balances: positive if this user owes the other user, negative if owed
+    public Map<String, Money> getBalance() {
+        Map<String, Money> snapshot = new HashMap<>();
+        for (Map.Entry<String, PairBalance> entry : this.balance.entrySet()) {
+            long balance = entry.getValue().balanceFor(this.id);
+            if (balance != 0) {
+                snapshot.put(entry.getKey(), Money.ofMinor(balance));
+            }
+        }
+        return snapshot;
     }
 
 }
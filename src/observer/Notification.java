@@ -0,0 +1,105 @@
+package observer;
+
+import models.Expense;
+import models.Group;
+import models.Money;
+import models.User;
+
+// A group event waiting to be delivered. The text is only built at delivery time, off the
+// thread that posted the expense.
+public class Notification {
+    public enum Type {
+        EXPENSE_ADDED,
+        EXPENSES_ADDED,
+        EXPENSE_UPDATED,
+        EXPENSE_DELETED,
+        SETTLEMENT,
+        MESSAGE
+    }
+
+    private final Group group;
+    private final Type type;
+    private final Expense expense;
+    private final User fromUser;
+    private final User toUser;
+    private final Money amount;
+    private final String message;
+    private final int count;
+    private final long createdNanos;
+
+    private Notification(Group group, Type type, Expense expense, User fromUser, User toUser, Money amount,
+            String message, int count) {
+        this.group = group;
+        this.type = type;
+        this.expense = expense;
+        this.fromUser = fromUser;
+        this.toUser = toUser;
+        this.amount = amount;
+        this.message = message;
+        this.count = count;
+        this.createdNanos = System.nanoTime();
+    }
+
+    public static Notification expenseAdded(Group group, Expense expense) {
+        return new Notification(group, Type.EXPENSE_ADDED, expense, null, null, expense.getTotalAmount(), null, 1);
+    }
+
+    // A batch posted with Group.addExpenses, delivered as one notification
+    public static Notification expensesAdded(Group group, int count, Money total) {
+        return new Notification(group, Type.EXPENSES_ADDED, null, null, null, total, null, count);
+    }
+
+    public static Notification expenseUpdated(Group group, Expense expense) {
+        return new Notification(group, Type.EXPENSE_UPDATED, expense, null, null, expense.getTotalAmount(), null,
+                1);
+    }
+
+    public static Notification expenseDeleted(Group group, Expense expense) {
+        return new Notification(group, Type.EXPENSE_DELETED, expense, null, null, expense.getTotalAmount(), null,
+                1);
+    }
+
+    public static Notification settlement(Group group, User fromUser, User toUser, Money amount) {
+        return new Notification(group, Type.SETTLEMENT, null, fromUser, toUser, amount, null, 1);
+    }
+
+    public static Notification message(Group group, String message) {
+        return new Notification(group, Type.MESSAGE, null, null, null, null, message, 1);
+    }
+
+    public String getMessage() {
+        switch (type) {
+            case EXPENSE_ADDED -> {
+                return "New expense added: " + expense.getDescription() + " (Rs " + amount + ")";
+            }
+            case EXPENSES_ADDED -> {
+                return count + " new expenses added (Rs " + amount + ")";
+            }
+            case EXPENSE_UPDATED -> {
+                return "Expense updated: " + expense.getDescription() + " (Rs " + amount + ")";
+            }
+            case EXPENSE_DELETED -> {
+                return "Expense deleted: " + expense.getDescription() + " (Rs " + amount + ")";
+            }
+            case SETTLEMENT -> {
+                return "Settled expense from " + fromUser.getName() + " to " + toUser.getName() + " (Rs " + amount
+                        + ")";
+            }
+            default -> {
+                return message;
+            }
+        }
+    }
+
+    public Group getGroup() {
+        return group;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+}
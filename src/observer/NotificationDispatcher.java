@@ -0,0 +1,334 @@
+package observer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.LatencyHistogram;
+import models.Group;
+
+// Delivers group notifications to observers on its own executor. Posting only enqueues one
+// Notification per event (not one per member). Groups dispatch while holding their monitor,
+// so dispatch never blocks: when the queue is full the notification is folded into a
+// per-group overflow tally instead, delivered as one summary after the current batch. The
+// worker drains whatever has queued up as one batch. A recipient with several pending
+// notifications for the same group gets a single summary such as "12 new expenses in Goa Trip".
+//
+// Coalescing is keyed by group rather than by recipient: a group's recipients are exactly its
+// observers and all of them get the same text, so one summary per group serves every member.
+// A member of several busy groups still gets one summary per group, not a single one across them.
+// Once closed, dispatch delivers inline on the caller's thread.
+public class NotificationDispatcher implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int DEFAULT_MAX_BATCH = 1_000;
+
+    private final BlockingQueue<Notification> queue; // null when delivering inline
+    private final Map<Group, Overflow> overflow; // notifications that found the queue full
+    private final ExecutorService executor;
+    private final int maxBatch;
+    private final Object idleLock;
+    private long pending; // guarded by idleLock
+    private volatile boolean running;
+
+    private final LongAdder enqueued;
+    private final LongAdder delivered;
+    private final LongAdder coalesced;
+    private final LongAdder overflowed;
+    private final LongAdder latencySamples;
+    private final LongAdder totalLatencyNanos;
+    private final AtomicLong maxLatencyNanos;
+    private volatile LatencyHistogram latencyHistogram; // null unless someone wants the spread
+
+    public NotificationDispatcher() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    public NotificationDispatcher(int capacity, int maxBatch) {
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+        this.overflow = new ConcurrentHashMap<>();
+        this.maxBatch = Math.max(1, maxBatch);
+        this.idleLock = new Object();
+        this.enqueued = new LongAdder();
+        this.delivered = new LongAdder();
+        this.coalesced = new LongAdder();
+        this.overflowed = new LongAdder();
+        this.latencySamples = new LongAdder();
+        this.totalLatencyNanos = new LongAdder();
+        this.maxLatencyNanos = new AtomicLong();
+        this.running = true;
+
+        if (queue != null) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "notification-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.execute(this::deliverLoop);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    // Delivers every notification on the caller's thread, one by one, with no batching.
+    public static NotificationDispatcher inline() {
+        return new NotificationDispatcher(0, 1);
+    }
+
+    public void dispatch(Notification notification) {
+        enqueued.increment();
+
+        if (queue == null) {
+            deliver(List.of(notification));
+            return;
+        }
+
+        boolean queued;
+        synchronized (idleLock) {
+            queued = running;
+            if (queued) {
+                pending++;
+            }
+        }
+        if (!queued) {
+            deliver(List.of(notification));
+            return;
+        }
+        if (!queue.offer(notification)) {
+            overflowed.increment();
+            // compute runs atomically per group, so it cannot interleave with deliverOverflow
+            overflow.compute(notification.getGroup(), (group, tally) -> {
+                Overflow updated = tally == null ? new Overflow() : tally;
+                updated.add(notification);
+                return updated;
+            });
+        }
+    }
+
+    // Notifications for one group that did not fit in the queue, kept as counts rather than
+    // objects so a backlog costs constant memory per group. The first is kept while it is the
+    // only one, so it can still be delivered as itself.
+    private static class Overflow {
+        private int count;
+        private Notification.Type type; // null once the types are mixed
+        private long oldestNanos;
+        private Notification only; // null once there are several
+
+        void add(Notification notification) {
+            if (count == 0) {
+                type = notification.getType();
+                oldestNanos = notification.getCreatedNanos();
+                only = notification;
+            } else {
+                if (type != notification.getType()) {
+                    type = null;
+                }
+                only = null;
+            }
+            count++;
+        }
+    }
+
+    private void deliverLoop() {
+        List<Notification> batch = new ArrayList<>();
+        // pending covers both the queue and the overflow tallies, and dispatch only adds to it
+        // while running, so nothing is left undelivered once this loop exits
+        while (running || hasPending()) {
+            try {
+                Notification first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatch - 1);
+                    deliver(batch);
+                }
+                deliverOverflow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                finished(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<Notification> batch) {
+        Map<Group, List<Notification>> byGroup = new LinkedHashMap<>();
+        for (Notification notification : batch) {
+            byGroup.computeIfAbsent(notification.getGroup(), k -> new ArrayList<>()).add(notification);
+        }
+
+        for (Map.Entry<Group, List<Notification>> entry : byGroup.entrySet()) {
+            List<Notification> pendingForGroup = entry.getValue();
+            String message = pendingForGroup.size() == 1 ? pendingForGroup.get(0).getMessage()
+                    : summarize(entry.getKey(), pendingForGroup);
+
+            for (Observer observer : entry.getKey().getObservers()) {
+                try {
+                    observer.update(message);
+                } catch (RuntimeException e) {
+                    // one failing observer must not block delivery to the rest
+                }
+                delivered.increment();
+            }
+
+            coalesced.add(pendingForGroup.size() - 1);
+            long now = System.nanoTime();
+            LatencyHistogram histogram = this.latencyHistogram;
+            for (Notification notification : pendingForGroup) {
+                long latency = now - notification.getCreatedNanos();
+                latencySamples.increment();
+                totalLatencyNanos.add(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                if (histogram != null) {
+                    histogram.record(latency);
+                }
+            }
+        }
+    }
+
+    private void deliverOverflow() {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        for (Group group : overflow.keySet()) {
+            Overflow tally = overflow.remove(group);
+            if (tally == null) {
+                continue;
+            }
+            try {
+                String message = tally.only != null ? tally.only.getMessage()
+                        : summarize(group, tally.type, tally.count);
+                for (Observer observer : group.getObservers()) {
+                    try {
+                        observer.update(message);
+                    } catch (RuntimeException e) {
+                        // one failing observer must not block delivery to the rest
+                    }
+                    delivered.increment();
+                }
+
+                coalesced.add(tally.count - 1);
+                // only the oldest creation time is kept, so every folded notification is
+                // charged the oldest one's latency; an upper bound, never an understatement
+                long latency = System.nanoTime() - tally.oldestNanos;
+                latencySamples.add(tally.count);
+                totalLatencyNanos.add(latency * tally.count);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                LatencyHistogram histogram = this.latencyHistogram;
+                if (histogram != null) {
+                    for (int i = 0; i < tally.count; i++) {
+                        histogram.record(latency);
+                    }
+                }
+            } finally {
+                finished(tally.count);
+            }
+        }
+    }
+
+    private static String summarize(Group group, List<Notification> notifications) {
+        Notification.Type type = notifications.get(0).getType();
+        for (Notification notification : notifications) {
+            if (notification.getType() != type) {
+                type = null;
+                break;
+            }
+        }
+        return summarize(group, type, notifications.size());
+    }
+
+    // type is null when the notifications are of different kinds; count is at least 2
+    private static String summarize(Group group, Notification.Type type, int count) {
+        if (type == Notification.Type.EXPENSE_ADDED) {
+            return count + " new expenses in " + group.getName();
+        }
+        if (type == Notification.Type.SETTLEMENT) {
+            return count + " new settlements in " + group.getName();
+        }
+        return count + " new updates in " + group.getName();
+    }
+
+    private void finished(int count) {
+        if (queue == null || count == 0) {
+            return;
+        }
+        synchronized (idleLock) {
+            pending -= count;
+            if (pending == 0) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        synchronized (idleLock) {
+            return pending > 0;
+        }
+    }
+
+    // Blocks until every notification dispatched so far has been delivered.
+    public void flush() throws InterruptedException {
+        synchronized (idleLock) {
+            while (pending > 0) {
+                idleLock.wait();
+            }
+        }
+    }
+
+    // Records the time from dispatch to delivery of every notification
+    public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    // Observer callbacks made, counting each summary once.
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    // Notifications folded into a summary instead of being delivered on their own.
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    // Notifications that found the queue full and were folded into a per-group summary.
+    public long getOverflowedCount() {
+        return overflowed.sum();
+    }
+
+    // Averaged over notifications delivered so far; ones still queued are not counted.
+    public double getAverageLatencyMillis() {
+        long count = latencySamples.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public void close() {
+        synchronized (idleLock) {
+            running = false;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package persistence;
+
+import java.util.Map;
+
+import models.Expense;
+import models.Money;
+
+// Receives journal records in the order they were appended.
+public interface JournalVisitor {
+    void onUserCreated(String userId, String name, String email);
+
+    void onGroupCreated(String groupId, String name);
+
+    void onMemberAdded(String groupId, String userId);
+
+    void onMemberRemoved(String groupId, String userId);
+
+    // The expense carries its group id and the splits exactly as they were computed.
+    // A batch record calls this once per expense, in order.
+    void onGroupExpense(Expense expense);
+
+    // The expense replaces the one with the same id, reversing its splits
+    void onGroupExpenseUpdated(Expense expense);
+
+    // The expense's splits are reversed as it is removed
+    void onExpenseRemoved(String groupId, String expenseId);
+
+    void onGroupSettlement(String groupId, String fromUserId, String toUserId, Money amount);
+
+    // The group's complete balance sheet after a simplification or a whole-sheet replacement
+    void onGroupBalancesReplaced(String groupId, Map<String, Map<String, Money>> balanceSheet);
+
+    // One edge edit: what debtorId owes creditorId changes by amount, which may be negative
+    void onGroupBalanceAdjusted(String groupId, String debtorId, String creditorId, Money amount);
+
+    void onIndividualExpense(Expense expense);
+
+    // expense is null for a plain payment
+    void onIndividualSettlement(String fromUserId, String toUserId, Money amount, Expense expense);
+}
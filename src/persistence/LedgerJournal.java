@@ -0,0 +1,764 @@
+package persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import models.Expense;
+import models.Money;
+import models.Split;
+import models.User;
+
+// Append-only write-ahead log of ledger operations on local disk.
+//
+// Appends encode the record into an in-memory batch and return its sequence number
+// (LSN). They never touch the disk. A single flusher thread swaps the batch out, writes it
+// through the FileChannel and forces it. So however many writers are waiting, they
+// share one fsync per batch (group commit). Callers that need durability wait on
+// awaitDurable/sync after releasing their own locks.
+//
+// Each record is framed as [int length][byte type][payload][int crc32]. On open the file
+// is scanned and cut back to the last intact record, which drops a torn write left by
+// a crash.
+//
+// The header carries a generation number. At a checkpoint, rollOver renames the file to
+// <path>.<generation> and starts the next generation in a fresh file, so the snapshot can be
+// written afterwards while appends carry on. Once the snapshot is down, discardArchived
+// deletes the files it covers. On open, archived generations the snapshot does not cover are
+// replayed first, and anything the snapshot already covers is skipped.
+public class LedgerJournal implements AutoCloseable {
+    private static final int MAGIC = 0x53574A31; // "SWJ1"
+    private static final int VERSION = 7;
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+    private static final int MAX_PENDING_BYTES = 8 << 20;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private static final byte USER_CREATED = 1;
+    private static final byte GROUP_CREATED = 2;
+    private static final byte MEMBER_ADDED = 3;
+    private static final byte MEMBER_REMOVED = 4;
+    private static final byte GROUP_EXPENSE = 5;
+    private static final byte EXPENSE_REMOVED = 6;
+    private static final byte GROUP_SETTLEMENT = 7;
+    private static final byte GROUP_BALANCES = 8;
+    private static final byte INDIVIDUAL_EXPENSE = 9;
+    private static final byte INDIVIDUAL_SETTLEMENT = 10;
+    private static final byte GROUP_EXPENSES = 11;
+    private static final byte GROUP_EXPENSE_UPDATED = 12;
+    private static final byte GROUP_BALANCE_DELTAS = 13;
+
+    private final Path path;
+    private final long recordsReplayed;
+    private final Object lock;
+    private final CRC32 crc;
+    private final Thread flusher;
+
+    // guarded by lock
+    private FileChannel channel;
+    private RecordEncoder pending;
+    private RecordEncoder flushing;
+    private long appendedLsn;
+    private long durableLsn;
+    private long fsyncCount;
+    private long bytesWritten;
+    private long generation;
+    private IOException failure;
+    private boolean closed;
+
+    private LedgerJournal(Path path, FileChannel channel, long generation, long recordsReplayed) {
+        this.path = path;
+        this.channel = channel;
+        this.generation = generation;
+        this.recordsReplayed = recordsReplayed;
+        this.lock = new Object();
+        this.crc = new CRC32();
+        this.pending = new RecordEncoder(64 << 10);
+        this.flushing = new RecordEncoder(64 << 10);
+        this.flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static LedgerJournal open(Path path) throws IOException {
+        return open(path, null);
+    }
+
+    // Replays every intact record into visitor (if given), then opens the journal for
+    // appending after the last one.
+    public static LedgerJournal open(Path path, JournalVisitor visitor) throws IOException {
+        return open(path, visitor, -1);
+    }
+
+    // Like open(path, visitor), but skips records a snapshot of coveredGeneration already
+    // holds. Archived generations after it, left by a checkpoint that did not finish its
+    // snapshot, are replayed in order before the live file.
+    public static LedgerJournal open(Path path, JournalVisitor visitor, long coveredGeneration)
+            throws IOException {
+        long[] replayed = new long[1];
+        long replayedGeneration = coveredGeneration;
+        for (long archived : archivedGenerations(path)) {
+            if (archived <= coveredGeneration) {
+                Files.deleteIfExists(archivePath(path, archived));
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(archivePath(path, archived), StandardOpenOption.READ)) {
+                readHeader(channel, path);
+                scan(channel, visitor, replayed);
+            }
+            replayedGeneration = archived;
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long generation = channel.size() < HEADER_BYTES ? -1 : readHeader(channel, path);
+            long end;
+            if (generation <= replayedGeneration) {
+                generation = replayedGeneration + 1;
+                end = writeHeader(channel, generation);
+            } else {
+                end = scan(channel, visitor, replayed);
+            }
+            channel.truncate(end);
+            channel.position(end);
+            return new LedgerJournal(path, channel, generation, replayed[0]);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Path archivePath(Path path, long generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    // Generations archived next to path by rollOver, oldest first
+    private static List<Long> archivedGenerations(Path path) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    generations.add(Long.parseLong(suffix));
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    // Deletes archived generations up to and including generation, once a snapshot holds them
+    public static void discardArchived(Path path, long generation) throws IOException {
+        for (long archived : archivedGenerations(path)) {
+            if (archived <= generation) {
+                Files.deleteIfExists(archivePath(path, archived));
+            }
+        }
+    }
+
+    // Reads the journal without opening it for writing. Returns the number of records visited.
+    public static long replay(Path path, JournalVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] replayed = new long[1];
+            if (channel.size() >= HEADER_BYTES) {
+                readHeader(channel, path);
+                scan(channel, visitor, replayed);
+            }
+            return replayed[0];
+        }
+    }
+
+    // Empties the file down to a fresh header
+    private static long writeHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(generation)
+                .flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(true);
+        return HEADER_BYTES;
+    }
+
+    private static long readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a ledger journal: " + path);
+        }
+        return header.getLong();
+    }
+
+    // Returns the offset just past the last intact record.
+    private static long scan(FileChannel channel, JournalVisitor visitor, long[] replayed) throws IOException {
+        channel.position(HEADER_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES).flip();
+        CRC32 checksum = new CRC32();
+        long position = HEADER_BYTES;
+
+        while (fill(channel, buffer, 4)) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                break;
+            }
+            if (buffer.capacity() < length + 8) {
+                buffer = ByteBuffer.allocate(length + 8).put(buffer).flip();
+            }
+            if (!fill(channel, buffer, length + 8)) {
+                break;
+            }
+
+            int bodyStart = buffer.position() + 4;
+            ByteBuffer body = buffer.slice(bodyStart, length);
+            checksum.reset();
+            checksum.update(body.duplicate());
+            if ((int) checksum.getValue() != buffer.getInt(bodyStart + length)) {
+                break;
+            }
+
+            if (visitor != null) {
+                dispatch(new RecordDecoder(body), visitor);
+            }
+            buffer.position(bodyStart + length + 4);
+            position += length + 8;
+            replayed[0]++;
+        }
+        return position;
+    }
+
+    // Makes at least `needed` bytes readable; false at end of file.
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        while (buffer.remaining() < needed) {
+            buffer.compact();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void dispatch(RecordDecoder in, JournalVisitor visitor) {
+        int type = in.getByte();
+        switch (type) {
+            case USER_CREATED -> visitor.onUserCreated(in.getId(), in.getOptionalString(), in.getOptionalString());
+            case GROUP_CREATED -> visitor.onGroupCreated(in.getId(), in.getOptionalString());
+            case MEMBER_ADDED -> visitor.onMemberAdded(in.getId(), in.getId());
+            case MEMBER_REMOVED -> visitor.onMemberRemoved(in.getId(), in.getId());
+            case GROUP_EXPENSE -> {
+                String groupId = in.getId();
+                visitor.onGroupExpense(readExpense(in, groupId));
+            }
+            case GROUP_EXPENSES -> {
+                String groupId = in.getId();
+                int count = in.getVarInt();
+                for (int i = 0; i < count; i++) {
+                    visitor.onGroupExpense(readExpense(in, groupId));
+                }
+            }
+            case GROUP_EXPENSE_UPDATED -> {
+                String groupId = in.getId();
+                visitor.onGroupExpenseUpdated(readExpense(in, groupId));
+            }
+            case EXPENSE_REMOVED -> visitor.onExpenseRemoved(in.getId(), in.getId());
+            case GROUP_SETTLEMENT -> visitor.onGroupSettlement(in.getId(), in.getId(), in.getId(), in.getMoney());
+            case GROUP_BALANCES -> visitor.onGroupBalancesReplaced(in.getId(), readBalanceSheet(in));
+            case GROUP_BALANCE_DELTAS -> {
+                String groupId = in.getId();
+                String debtorId = in.getId();
+                int count = in.getVarInt();
+                for (int i = 0; i < count; i++) {
+                    visitor.onGroupBalanceAdjusted(groupId, debtorId, in.getId(), in.getMoney());
+                }
+            }
+            case INDIVIDUAL_EXPENSE -> visitor.onIndividualExpense(readExpense(in, null));
+            case INDIVIDUAL_SETTLEMENT -> {
+                String fromUserId = in.getId();
+                String toUserId = in.getId();
+                Money amount = in.getMoney();
+                Expense expense = in.getByte() == 1 ? readExpense(in, null) : null;
+                visitor.onIndividualSettlement(fromUserId, toUserId, amount, expense);
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    public static void writeExpense(RecordEncoder out, Expense expense) {
+        out.putId(expense.getId());
+        out.putString(expense.getDescription());
+        out.putMoney(expense.getTotalAmount());
+        out.putId(expense.getPaidBy());
+        out.putVarLong(expense.getCreatedAt());
+        out.putVarInt(expense.getSplits().size());
+        for (Split split : expense.getSplits()) {
+            out.putId(split.getUserId());
+            out.putMoney(split.getAmount());
+        }
+    }
+
+    public static Expense readExpense(RecordDecoder in, String groupId) {
+        String id = in.getId();
+        String description = in.getString();
+        Money totalAmount = in.getMoney();
+        String paidBy = in.getId();
+        long createdAt = in.getVarLong();
+        int count = in.getVarInt();
+        List<Split> splits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            splits.add(new Split(in.getId(), in.getMoney()));
+        }
+        return new Expense(id, description, totalAmount, paidBy, splits, groupId, createdAt);
+    }
+
+    // Only debtors with at least one debt are written
+    public static void writeBalanceSheet(RecordEncoder out, Map<String, Map<String, Money>> balanceSheet) {
+        int debtors = 0;
+        for (Map<String, Money> owes : balanceSheet.values()) {
+            if (!owes.isEmpty()) {
+                debtors++;
+            }
+        }
+
+        out.putVarInt(debtors);
+        for (Map.Entry<String, Map<String, Money>> entry : balanceSheet.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            out.putId(entry.getKey());
+            out.putVarInt(entry.getValue().size());
+            for (Map.Entry<String, Money> owed : entry.getValue().entrySet()) {
+                out.putId(owed.getKey());
+                out.putMoney(owed.getValue());
+            }
+        }
+    }
+
+    public static Map<String, Map<String, Money>> readBalanceSheet(RecordDecoder in) {
+        int debtors = in.getVarInt();
+        Map<String, Map<String, Money>> balanceSheet = new HashMap<>();
+        for (int i = 0; i < debtors; i++) {
+            String debtorId = in.getId();
+            int count = in.getVarInt();
+            Map<String, Money> owes = new HashMap<>();
+            for (int j = 0; j < count; j++) {
+                owes.put(in.getId(), in.getMoney());
+            }
+            balanceSheet.put(debtorId, owes);
+        }
+        return balanceSheet;
+    }
+
+    public long appendUserCreated(User user) {
+        synchronized (lock) {
+            int start = begin(USER_CREATED);
+            try {
+                pending.putId(user.getId());
+                pending.putOptionalString(user.getName());
+                pending.putOptionalString(user.getEmail());
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendGroupCreated(String groupId, String name) {
+        synchronized (lock) {
+            int start = begin(GROUP_CREATED);
+            try {
+                pending.putId(groupId);
+                pending.putOptionalString(name);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendMemberAdded(String groupId, String userId) {
+        return appendPair(MEMBER_ADDED, groupId, userId);
+    }
+
+    public long appendMemberRemoved(String groupId, String userId) {
+        return appendPair(MEMBER_REMOVED, groupId, userId);
+    }
+
+    private long appendPair(byte type, String groupId, String id) {
+        synchronized (lock) {
+            int start = begin(type);
+            try {
+                pending.putId(groupId);
+                pending.putId(id);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendGroupExpense(Expense expense) {
+        synchronized (lock) {
+            int start = begin(GROUP_EXPENSE);
+            try {
+                pending.putId(expense.getGroupId());
+                writeExpense(pending, expense);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    // One record for the whole batch, so replay sees either all of it or none
+    public long appendGroupExpenses(String groupId, List<Expense> expenses) {
+        synchronized (lock) {
+            int start = begin(GROUP_EXPENSES);
+            try {
+                pending.putId(groupId);
+                pending.putVarInt(expenses.size());
+                for (Expense expense : expenses) {
+                    writeExpense(pending, expense);
+                }
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    // The new version of an expense, replacing the one with the same id
+    public long appendGroupExpenseUpdated(Expense expense) {
+        synchronized (lock) {
+            int start = begin(GROUP_EXPENSE_UPDATED);
+            try {
+                pending.putId(expense.getGroupId());
+                writeExpense(pending, expense);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendExpenseRemoved(String groupId, String expenseId) {
+        return appendPair(EXPENSE_REMOVED, groupId, expenseId);
+    }
+
+    public long appendGroupSettlement(String groupId, String fromUserId, String toUserId, Money amount) {
+        synchronized (lock) {
+            int start = begin(GROUP_SETTLEMENT);
+            try {
+                pending.putId(groupId);
+                pending.putId(fromUserId);
+                pending.putId(toUserId);
+                pending.putMoney(amount);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendGroupBalances(String groupId, Map<String, Map<String, Money>> balanceSheet) {
+        synchronized (lock) {
+            int start = begin(GROUP_BALANCES);
+            try {
+                pending.putId(groupId);
+                writeBalanceSheet(pending, balanceSheet);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    // What debtorId owes each creditor changes by the given amount (negative to reduce it), so
+    // the record is as large as the change rather than the group's whole sheet
+    public long appendGroupBalanceDeltas(String groupId, String debtorId, Map<String, Money> deltas) {
+        synchronized (lock) {
+            int start = begin(GROUP_BALANCE_DELTAS);
+            try {
+                pending.putId(groupId);
+                pending.putId(debtorId);
+                pending.putVarInt(deltas.size());
+                for (Map.Entry<String, Money> delta : deltas.entrySet()) {
+                    pending.putId(delta.getKey());
+                    pending.putMoney(delta.getValue());
+                }
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendIndividualExpense(Expense expense) {
+        synchronized (lock) {
+            int start = begin(INDIVIDUAL_EXPENSE);
+            try {
+                writeExpense(pending, expense);
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    public long appendIndividualSettlement(String fromUserId, String toUserId, Money amount, Expense expense) {
+        synchronized (lock) {
+            int start = begin(INDIVIDUAL_SETTLEMENT);
+            try {
+                pending.putId(fromUserId);
+                pending.putId(toUserId);
+                pending.putMoney(amount);
+                pending.putByte(expense == null ? 0 : 1);
+                if (expense != null) {
+                    writeExpense(pending, expense);
+                }
+                return end(start);
+            } catch (RuntimeException e) {
+                abort(start);
+                throw e;
+            }
+        }
+    }
+
+    // Caller holds lock. Waits while the flusher is too far behind, then opens a frame.
+    private int begin(byte type) {
+        while (pending.size() > MAX_PENDING_BYTES && failure == null && !closed) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for journal space", e);
+            }
+        }
+        checkWritable();
+
+        int start = pending.size();
+        pending.putInt(0);
+        pending.putByte(type);
+        return start;
+    }
+
+    private long end(int start) {
+        int bodyStart = start + 4;
+        int length = pending.size() - bodyStart;
+        pending.patchInt(start, length);
+        crc.reset();
+        crc.update(pending.array(), bodyStart, length);
+        pending.putInt((int) crc.getValue());
+        lock.notifyAll();
+        return ++appendedLsn;
+    }
+
+    // Drops a frame whose payload failed to encode, so the records after it still parse
+    private void abort(int start) {
+        pending.truncate(start);
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed: " + path, failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed: " + path);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            RecordEncoder batch;
+            long batchLsn;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchLsn = appendedLsn;
+                target = channel;
+                lock.notifyAll();
+            }
+
+            try {
+                ByteBuffer bytes = batch.asByteBuffer();
+                while (bytes.hasRemaining()) {
+                    target.write(bytes);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableLsn = batchLsn;
+                fsyncCount++;
+                bytesWritten += batch.size();
+                lock.notifyAll();
+            }
+            batch.reset();
+        }
+    }
+
+    // Blocks until the record with this LSN, and everything before it, is on disk.
+    public void awaitDurable(long lsn) {
+        synchronized (lock) {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Journal write failed: " + path, failure);
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the journal", e);
+                }
+            }
+        }
+    }
+
+    // Blocks until everything appended so far is on disk.
+    public void sync() {
+        long lsn;
+        synchronized (lock) {
+            lsn = appendedLsn;
+        }
+        awaitDurable(lsn);
+    }
+
+    // Archives the current generation as <path>.<generation> and starts the next one in a
+    // fresh file. Returns the archived generation. The caller must keep writers out until
+    // this returns, and call discardArchived once a snapshot holds the archived records.
+    public long rollOver() throws IOException {
+        sync();
+        synchronized (lock) {
+            checkWritable();
+            if (pending.size() != 0 || durableLsn != appendedLsn) {
+                throw new IllegalStateException("Journal was written to during a checkpoint: " + path);
+            }
+            try {
+                channel.close();
+                Files.move(path, archivePath(path, generation), StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                writeHeader(channel, generation + 1);
+                channel.position(HEADER_BYTES);
+            } catch (IOException e) {
+                // nothing can be appended safely any more; what was written is in the archive
+                failure = e;
+                lock.notifyAll();
+                throw e;
+            }
+            return generation++;
+        }
+    }
+
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    public long size() throws IOException {
+        synchronized (lock) {
+            return channel.size();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    public long getAppendedLsn() {
+        synchronized (lock) {
+            return appendedLsn;
+        }
+    }
+
+    public long getDurableLsn() {
+        synchronized (lock) {
+            return durableLsn;
+        }
+    }
+
+    public long getFsyncCount() {
+        synchronized (lock) {
+            return fsyncCount;
+        }
+    }
+
+    public long getBytesWritten() {
+        synchronized (lock) {
+            return bytesWritten;
+        }
+    }
+
+    // Flushes whatever is still pending, then closes the file.
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            channel.close();
+        }
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import enums.SimplificationMode;
+import models.Expense;
+import models.ExpenseMap;
+import models.Group;
+import models.Money;
+import models.PairBalance;
+import models.User;
+
+// Point-in-time image of the ledger: users, groups with their members, balance sheets and
+// expenses, individual expenses, and non-zero P2P balances.
+//
+// Layout is [int magic][int version][long journal generation][chunks][int crc32 of chunk
+// bodies], using the same encoding as the journal. The body is cut into chunks framed as
+// [int length][bytes], each ending on a record boundary, so loading can map the file a window
+// of whole chunks at a time and a snapshot may grow past what one mapping can hold. Writes go
+// to a temp file that is forced and then renamed over the old snapshot, so a crash always
+// leaves one complete snapshot behind.
+//
+// capture() is the only part that needs the ledger still, and copies no expense history:
+// write() reads the expenses through frozen views while changes carry on.
+public class LedgerSnapshot {
+    private static final int MAGIC = 0x53575331; // "SWS1"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 16;
+    private static final int FLUSH_BYTES = 1 << 20;
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final List<UserImage> users;
+    private final List<GroupImage> groups;
+    private final ExpenseMap.Frozen individualExpenses;
+    private final List<PairImage> pairs;
+
+    private LedgerSnapshot(List<UserImage> users, List<GroupImage> groups, ExpenseMap.Frozen individualExpenses,
+            List<PairImage> pairs) {
+        this.users = users;
+        this.groups = groups;
+        this.individualExpenses = individualExpenses;
+        this.pairs = pairs;
+    }
+
+    private static class UserImage {
+        final String id;
+        final String name;
+        final String email;
+
+        UserImage(String id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+    }
+
+    private static class GroupImage {
+        final String id;
+        final String name;
+        final SimplificationMode mode;
+        final List<String> memberIds;
+        final Map<String, Map<String, Money>> balanceSheet;
+        final ExpenseMap.Frozen expenses;
+
+        GroupImage(String id, String name, SimplificationMode mode, List<String> memberIds,
+                Map<String, Map<String, Money>> balanceSheet, ExpenseMap.Frozen expenses) {
+            this.id = id;
+            this.name = name;
+            this.mode = mode;
+            this.memberIds = memberIds;
+            this.balanceSheet = balanceSheet;
+            this.expenses = expenses;
+        }
+    }
+
+    private static class PairImage {
+        final String lowUserId;
+        final String highUserId;
+        final long lowOwesHigh;
+
+        PairImage(String lowUserId, String highUserId, long lowOwesHigh) {
+            this.lowUserId = lowUserId;
+            this.highUserId = highUserId;
+            this.lowOwesHigh = lowOwesHigh;
+        }
+    }
+
+    // Takes what write() needs. The caller keeps the ledger still while this runs; it costs
+    // a few objects per user, group and P2P pair, whatever the size of the history.
+    public static LedgerSnapshot capture(Collection<User> users, Collection<Group> groups,
+            ExpenseMap individualExpenses) {
+        List<UserImage> userImages = new ArrayList<>(users.size());
+        List<PairImage> pairImages = new ArrayList<>();
+        for (User user : users) {
+            userImages.add(new UserImage(user.getId(), user.getName(), user.getEmail()));
+            // Each pair is shared by both users, so only the lower id keeps it
+            for (PairBalance pair : user.getPairBalances()) {
+                long balance = pair.balanceFor(pair.getLowUserId());
+                if (pair.getLowUserId().equals(user.getId()) && balance != 0) {
+                    pairImages.add(new PairImage(pair.getLowUserId(), pair.getHighUserId(), balance));
+                }
+            }
+        }
+
+        List<GroupImage> groupImages = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            List<String> memberIds = new ArrayList<>();
+            for (User member : group.getUsers()) {
+                memberIds.add(member.getId());
+            }
+            groupImages.add(new GroupImage(group.getId(), group.getName(), group.getSimplificationMode(), memberIds,
+                    group.getBalanceSheet(), group.freezeExpenses()));
+        }
+        return new LedgerSnapshot(userImages, groupImages, individualExpenses.freeze(), pairImages);
+    }
+
+    // Writes the captured ledger as covering the journal up to and including generation.
+    // Returns the size of the snapshot in bytes.
+    public long write(Path path, long generation) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(generation)
+                    .flip();
+            channel.write(header);
+
+            BodyWriter out = new BodyWriter(channel);
+            out.encoder.putVarInt(this.users.size());
+            for (UserImage user : this.users) {
+                out.encoder.putId(user.id);
+                out.encoder.putOptionalString(user.name);
+                out.encoder.putOptionalString(user.email);
+                out.maybeFlush();
+            }
+
+            out.encoder.putVarInt(this.groups.size());
+            for (GroupImage group : this.groups) {
+                writeGroup(out, group);
+            }
+
+            writeExpenses(out, this.individualExpenses);
+
+            out.encoder.putVarInt(this.pairs.size());
+            for (PairImage pair : this.pairs) {
+                out.encoder.putId(pair.lowUserId);
+                out.encoder.putId(pair.highUserId);
+                out.encoder.putMoney(Money.ofMinor(pair.lowOwesHigh));
+                out.maybeFlush();
+            }
+
+            out.flush();
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) out.crc.getValue()).flip();
+            channel.write(trailer);
+            channel.force(true);
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(path);
+    }
+
+    // The balance sheet comes first, so loading can restore each expense as it is read
+    private static void writeGroup(BodyWriter out, GroupImage group) throws IOException {
+        out.encoder.putId(group.id);
+        out.encoder.putOptionalString(group.name);
+        out.encoder.putByte(group.mode.ordinal());
+        out.encoder.putVarInt(group.memberIds.size());
+        for (String memberId : group.memberIds) {
+            out.encoder.putId(memberId);
+        }
+        LedgerJournal.writeBalanceSheet(out.encoder, group.balanceSheet);
+        out.maybeFlush();
+
+        writeExpenses(out, group.expenses);
+    }
+
+    private static void writeExpenses(BodyWriter out, ExpenseMap.Frozen expenses) throws IOException {
+        out.encoder.putVarInt(expenses.size());
+        for (Expense expense : expenses) {
+            LedgerJournal.writeExpense(out.encoder, expense);
+            out.maybeFlush();
+        }
+    }
+
+    // Streams the body to the channel one chunk at a time, keeping a running checksum
+    private static class BodyWriter {
+        private final FileChannel channel;
+        private final RecordEncoder encoder;
+        private final CRC32 crc;
+        private final ByteBuffer frame;
+
+        BodyWriter(FileChannel channel) {
+            this.channel = channel;
+            this.encoder = new RecordEncoder(FLUSH_BYTES + (64 << 10));
+            this.crc = new CRC32();
+            this.frame = ByteBuffer.allocate(4);
+        }
+
+        void maybeFlush() throws IOException {
+            if (encoder.size() >= FLUSH_BYTES) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (encoder.size() == 0) {
+                return;
+            }
+            crc.update(encoder.array(), 0, encoder.size());
+            frame.clear().putInt(encoder.size()).flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            ByteBuffer bytes = encoder.asByteBuffer();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            encoder.reset();
+        }
+    }
+
+    // Maps the snapshot a window at a time and hands its contents to visitor. Returns the
+    // journal generation it covers.
+    public static long load(Path path, SnapshotVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 4) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            channel.read(trailer, size - 4);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a ledger snapshot: " + path);
+            }
+            long generation = header.getLong(8);
+
+            // check the whole body before applying any of it
+            CRC32 crc = new CRC32();
+            Chunks chunks = new Chunks(channel, path, size - 4);
+            for (ByteBuffer chunk = chunks.next(); chunk != null; chunk = chunks.next()) {
+                crc.update(chunk);
+            }
+            if ((int) crc.getValue() != trailer.getInt(0)) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+
+            Body in = new Body(new Chunks(channel, path, size - 4));
+            int userCount = in.next().getVarInt();
+            for (int i = 0; i < userCount; i++) {
+                RecordDecoder user = in.next();
+                visitor.onUser(user.getId(), user.getOptionalString(), user.getOptionalString());
+            }
+
+            int groupCount = in.next().getVarInt();
+            for (int i = 0; i < groupCount; i++) {
+                readGroup(in, visitor);
+            }
+
+            int expenseCount = in.next().getVarInt();
+            for (int i = 0; i < expenseCount; i++) {
+                visitor.onIndividualExpense(LedgerJournal.readExpense(in.next(), null));
+            }
+
+            int pairCount = in.next().getVarInt();
+            for (int i = 0; i < pairCount; i++) {
+                RecordDecoder pair = in.next();
+                visitor.onPairBalance(pair.getId(), pair.getId(), pair.getMoney());
+            }
+            return generation;
+        }
+    }
+
+    private static void readGroup(Body in, SnapshotVisitor visitor) throws IOException {
+        RecordDecoder group = in.next();
+        String groupId = group.getId();
+        String name = group.getOptionalString();
+        SimplificationMode mode = SimplificationMode.values()[group.getByte()];
+
+        int memberCount = group.getVarInt();
+        List<String> memberIds = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            memberIds.add(group.getId());
+        }
+        Map<String, Map<String, Money>> balanceSheet = LedgerJournal.readBalanceSheet(group);
+        visitor.onGroup(groupId, name, mode, memberIds, balanceSheet);
+
+        int expenseCount = in.next().getVarInt();
+        for (int i = 0; i < expenseCount; i++) {
+            visitor.onGroupExpense(groupId, LedgerJournal.readExpense(in.next(), groupId));
+        }
+    }
+
+    // Decodes across chunks. A record never spans two, so the next record starts in the next
+    // chunk once the current one is used up.
+    private static class Body {
+        private final Chunks chunks;
+        private RecordDecoder current;
+
+        Body(Chunks chunks) {
+            this.chunks = chunks;
+        }
+
+        RecordDecoder next() throws IOException {
+            while (this.current == null || !this.current.hasRemaining()) {
+                ByteBuffer chunk = this.chunks.next();
+                if (chunk == null) {
+                    throw new IOException("Snapshot ends early");
+                }
+                this.current = new RecordDecoder(chunk);
+            }
+            return this.current;
+        }
+    }
+
+    // Walks the chunk frames, mapping up to WINDOW_BYTES of whole chunks at a time
+    private static class Chunks {
+        private final FileChannel channel;
+        private final Path path;
+        private final long end;
+        private long position;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Chunks(FileChannel channel, Path path, long end) {
+            this.channel = channel;
+            this.path = path;
+            this.end = end;
+            this.position = HEADER_BYTES;
+        }
+
+        // Null after the last chunk
+        ByteBuffer next() throws IOException {
+            if (this.position == this.end) {
+                return null;
+            }
+            if (this.end - this.position < 4) {
+                throw new IOException("Snapshot is truncated: " + this.path);
+            }
+            if (this.window == null || this.position + 4 > this.windowStart + this.window.capacity()) {
+                map();
+            }
+            int length = this.window.getInt((int) (this.position - this.windowStart));
+            if (length <= 0 || length > this.end - this.position - 4 || length > WINDOW_BYTES - 4) {
+                throw new IOException("Snapshot is corrupt: " + this.path);
+            }
+            if (this.position + 4 + length > this.windowStart + this.window.capacity()) {
+                map();
+            }
+            int offset = (int) (this.position - this.windowStart) + 4;
+            this.position += 4 + length;
+            return this.window.slice(offset, length);
+        }
+
+        private void map() throws IOException {
+            this.windowStart = this.position;
+            this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position,
+                    Math.min(WINDOW_BYTES, this.end - this.position));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import models.Money;
+
+// Reads what RecordEncoder wrote. Works over heap or memory-mapped buffers alike.
+public class RecordDecoder {
+    private final ByteBuffer buffer;
+
+    public RecordDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public int getByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public int getInt() {
+        return buffer.getInt();
+    }
+
+    public long getLong() {
+        return buffer.getLong();
+    }
+
+    public int getVarInt() {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public long getVarLong() {
+        long zigzag = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+    }
+
+    public String getString() {
+        int length = getVarInt();
+        byte[] utf8 = new byte[length];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public String getOptionalString() {
+        return getByte() == 0 ? null : getString();
+    }
+
+    public String getId() {
+        if (getByte() == 0) {
+            return getString();
+        }
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    public Money getMoney() {
+        int scale = getByte();
+        return Money.ofMinor(getVarLong(), scale);
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+}
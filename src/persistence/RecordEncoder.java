@@ -0,0 +1,148 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import models.Money;
+
+// Growable byte buffer for the on-disk formats. Counts and amounts are varints, and
+// canonical UUID ids are packed into 16 bytes instead of 36 characters.
+public class RecordEncoder {
+    private byte[] bytes;
+    private int size;
+
+    public RecordEncoder(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    private void reserve(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    public void putByte(int value) {
+        reserve(1);
+        bytes[size++] = (byte) value;
+    }
+
+    public void putInt(int value) {
+        reserve(4);
+        patchInt(size, value);
+        size += 4;
+    }
+
+    public void patchInt(int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+    }
+
+    public void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    public void putVarInt(int value) {
+        reserve(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    // Zig-zag so small negative amounts stay short
+    public void putVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        reserve(10);
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[size++] = (byte) zigzag;
+    }
+
+    public void putString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(utf8.length);
+        reserve(utf8.length);
+        System.arraycopy(utf8, 0, bytes, size, utf8.length);
+        size += utf8.length;
+    }
+
+    // A presence byte, then the string; for fields the model allows to be null
+    public void putOptionalString(String value) {
+        if (value == null) {
+            putByte(0);
+            return;
+        }
+        putByte(1);
+        putString(value);
+    }
+
+    public void putId(String id) {
+        if (!isCanonicalUuid(id)) {
+            putByte(0);
+            putString(id);
+            return;
+        }
+        putByte(1);
+        putLong(parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18));
+        putLong(parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36));
+    }
+
+    public void putMoney(Money amount) {
+        putByte(amount.getScale());
+        putVarLong(amount.getMinorUnits());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    // Drops everything written after size
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Cannot truncate " + this.size + " bytes to " + size);
+        }
+        this.size = size;
+    }
+
+    // Only lower-case 8-4-4-4-12 ids round-trip exactly through UUID.toString
+    private static boolean isCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String id, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | Character.digit(id.charAt(i), 16);
+        }
+        return value;
+    }
+}
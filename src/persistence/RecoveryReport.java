@@ -0,0 +1,32 @@
+package persistence;
+
+// What a restart had to read: the snapshot size and the journal records replayed after it.
+public class RecoveryReport {
+    private final long snapshotBytes;
+    private final long journalRecordsReplayed;
+    private final long startupNanos;
+
+    public RecoveryReport(long snapshotBytes, long journalRecordsReplayed, long startupNanos) {
+        this.snapshotBytes = snapshotBytes;
+        this.journalRecordsReplayed = journalRecordsReplayed;
+        this.startupNanos = startupNanos;
+    }
+
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    public long getJournalRecordsReplayed() {
+        return journalRecordsReplayed;
+    }
+
+    public double getStartupMillis() {
+        return startupNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Recovered from a %d byte snapshot and %d journal records in %.1f ms", snapshotBytes,
+                journalRecordsReplayed, getStartupMillis());
+    }
+}
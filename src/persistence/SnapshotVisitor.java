@@ -0,0 +1,25 @@
+package persistence;
+
+import java.util.List;
+import java.util.Map;
+
+import enums.SimplificationMode;
+import models.Expense;
+import models.Money;
+
+// Receives the contents of a snapshot: users first, then groups, each followed by its
+// expenses, then individual expenses and P2P balances.
+public interface SnapshotVisitor {
+    void onUser(String userId, String name, String email);
+
+    // The group's expenses follow, one onGroupExpense each
+    void onGroup(String groupId, String name, SimplificationMode mode, List<String> memberIds,
+            Map<String, Map<String, Money>> balanceSheet);
+
+    // History only; the group's balance sheet already includes its effect
+    void onGroupExpense(String groupId, Expense expense);
+
+    void onIndividualExpense(Expense expense);
+
+    void onPairBalance(String lowUserId, String highUserId, Money lowOwesHigh);
+}
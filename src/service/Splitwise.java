@@ -0,0 +1,1018 @@
+package service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import enums.FileFormat;
+import enums.SimplificationMode;
+import enums.SplitType;
+import events.LedgerEvents;
+import exporter.LedgerExporter;
+import factory.SplitFactory;
+import importer.ExpenseImporter;
+import importer.ImportReport;
+import importer.ImportTarget;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import models.*;
+import observer.NotificationDispatcher;
+import persistence.JournalVisitor;
+import persistence.LedgerJournal;
+import persistence.LedgerSnapshot;
+import persistence.RecoveryReport;
+import persistence.SnapshotVisitor;
+import strategy.SplitStrategy;
+import utils.SettlementPlanner;
+
+public class Splitwise implements AutoCloseable {
+    Map<String, Group> groups;
+    Map<String, User> users;
+    private final Map<String, User> usersByEmail; // lower-cased email, for imports
+    private final Map<String, Group> groupsByName; // first group created under each name
+    Map<String, Expense> expenses; // individual expenses, stored as rows in a store of their own
+    private final ExpenseStore expenseStore; // holds nothing itself; each owner gets a store from it
+    private NotificationDispatcher notificationDispatcher;
+    private volatile LedgerJournal journal; // null keeps everything in memory only
+    private volatile Path snapshotPath;
+    private RecoveryReport recoveryReport;
+    private ScheduledExecutorService checkpointScheduler;
+    // Changes share the read side; a checkpoint takes the write side to see a still ledger
+    private final ReadWriteLock checkpointLock;
+    private final Object checkpointWriter; // one snapshot write at a time
+    private final MetricsRegistry metrics;
+    // resolved once so the write path skips the registry lookup
+    private final LatencyHistogram addExpenseNanos;
+    private final LatencyHistogram addExpensesNanos;
+    private final LatencyHistogram updateExpenseNanos;
+    private final LatencyHistogram deleteExpenseNanos;
+    private final LatencyHistogram settleNanos;
+    private final LatencyHistogram individualPaymentNanos;
+    private final LatencyHistogram simplifyNanos;
+    private final LatencyHistogram simplifyEdgesKept;
+
+    private static Splitwise instance;
+
+    public Splitwise() {
+        this(ExpenseStore.inMemory());
+    }
+
+    // Use ExpenseStore.mapped(directory) to keep expense history in memory-mapped files
+    public Splitwise(ExpenseStore expenseStore) {
+        // Concurrent maps so lookups never block; per-group work is serialized by the Group itself
+        this.groups = new ConcurrentHashMap<>();
+        this.users = new ConcurrentHashMap<>();
+        this.usersByEmail = new ConcurrentHashMap<>();
+        this.groupsByName = new ConcurrentHashMap<>();
+        this.expenseStore = expenseStore;
+        this.expenses = new ExpenseMap(expenseStore.forOwner(), null);
+        this.checkpointLock = new ReentrantReadWriteLock();
+        this.checkpointWriter = new Object();
+        this.metrics = new MetricsRegistry();
+        this.addExpenseNanos = metrics.histogram("ledger_add_expense_nanos");
+        this.addExpensesNanos = metrics.histogram("ledger_add_expense_batch_nanos");
+        this.updateExpenseNanos = metrics.histogram("ledger_update_expense_nanos");
+        this.deleteExpenseNanos = metrics.histogram("ledger_delete_expense_nanos");
+        this.settleNanos = metrics.histogram("ledger_settle_nanos");
+        this.individualPaymentNanos = metrics.histogram("ledger_individual_payment_nanos");
+        this.simplifyNanos = metrics.histogram("ledger_simplify_nanos");
+        this.simplifyEdgesKept = metrics.histogram("ledger_simplify_edges_kept_permille");
+        registerMetrics();
+        this.notificationDispatcher = new NotificationDispatcher();
+        this.notificationDispatcher.setLatencyHistogram(metrics.histogram("ledger_notification_latency_nanos"));
+    }
+
+    // Sizes are read when a snapshot is taken, so they cost nothing on the write path
+    private void registerMetrics() {
+        metrics.gauge("ledger_users", () -> this.users.size());
+        metrics.gauge("ledger_groups", () -> this.groups.size());
+        metrics.gauge("ledger_individual_expenses", () -> this.expenses.size());
+        metrics.gauge("ledger_notification_queue_depth", () -> this.notificationDispatcher.getQueueDepth());
+        metrics.gauge("ledger_notifications_enqueued", () -> this.notificationDispatcher.getEnqueuedCount());
+        metrics.gauge("ledger_notifications_delivered", () -> this.notificationDispatcher.getDeliveredCount());
+        metrics.gauge("ledger_notifications_coalesced", () -> this.notificationDispatcher.getCoalescedCount());
+        metrics.distribution("ledger_group_members", sink -> {
+            for (Group group : this.groups.values()) {
+                sink.accept(group.getMemberCount());
+            }
+        });
+        metrics.distribution("ledger_group_edges", sink -> {
+            for (Group group : this.groups.values()) {
+                sink.accept(group.getEdgeCount());
+            }
+        });
+        metrics.distribution("ledger_group_expenses", sink -> {
+            for (Group group : this.groups.values()) {
+                sink.accept(group.getExpenseCount());
+            }
+        });
+    }
+
+    // Counters, latency histograms and sizes for this ledger. Call snapshot() to read them,
+    // or startPeriodicDump to have them written to a file for scraping.
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    private <T> T timed(LatencyHistogram histogram, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            histogram.recordSince(start);
+        }
+    }
+
+    private void timed(LatencyHistogram histogram, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            histogram.recordSince(start);
+        }
+    }
+
+    private void recordSimplification(SimplificationReport report) {
+        metrics.counter("ledger_simplifications_total").increment();
+        metrics.counter("ledger_simplify_edges_before_total").add(report.getEdgesBefore());
+        metrics.counter("ledger_simplify_edges_after_total").add(report.getEdgesAfter());
+        if (report.getEdgesBefore() > 0) {
+            simplifyEdgesKept.record(report.getEdgesAfter() * 1000L / report.getEdgesBefore());
+        }
+    }
+
+    public synchronized static Splitwise getInstance() {
+        if (instance == null) {
+            instance = new Splitwise();
+        }
+
+        return instance;
+    }
+
+    public synchronized static void resetInstance() {
+        if (instance != null) {
+            instance.notificationDispatcher.close();
+        }
+        instance = null;
+    }
+
+    // Rebuilds the ledger from a journal file, then keeps appending to it. Every change made
+    // through this instance is durable on disk before the call returns.
+    public static Splitwise open(Path journalPath) throws IOException {
+        return open(journalPath, null);
+    }
+
+    // Loads the snapshot, if there is one, through a memory mapping, then replays only the
+    // journal written after it. checkpoint() writes new snapshots to snapshotPath.
+    public static Splitwise open(Path journalPath, Path snapshotPath) throws IOException {
+        return open(journalPath, snapshotPath, ExpenseStore.inMemory());
+    }
+
+    public static Splitwise open(Path journalPath, Path snapshotPath, ExpenseStore expenseStore)
+            throws IOException {
+        long start = System.nanoTime();
+        Splitwise splitwise = new Splitwise(expenseStore);
+
+        long coveredGeneration = -1;
+        long snapshotBytes = 0;
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            coveredGeneration = LedgerSnapshot.load(snapshotPath, splitwise.new SnapshotRecovery());
+            snapshotBytes = Files.size(snapshotPath);
+        }
+
+        LedgerJournal journal = LedgerJournal.open(journalPath, splitwise.new JournalRecovery(), coveredGeneration);
+        splitwise.snapshotPath = snapshotPath;
+        splitwise.attachJournal(journal);
+        splitwise.recoveryReport = new RecoveryReport(snapshotBytes, journal.getRecordsReplayed(),
+                System.nanoTime() - start);
+        return splitwise;
+    }
+
+    // Null unless this instance was opened from disk
+    public RecoveryReport getRecoveryReport() {
+        return recoveryReport;
+    }
+
+    // Snapshots the whole ledger and drops the journal behind it. Returns the snapshot size
+    // in bytes. Changes wait only while the state is captured and the journal rolled over;
+    // the snapshot is written while they carry on. Reads never wait.
+    public long checkpoint() throws IOException {
+        LedgerJournal journal = this.journal;
+        Path snapshotPath = this.snapshotPath;
+        if (journal == null || snapshotPath == null) {
+            throw new IllegalStateException("Checkpoints need a journal and a snapshot path");
+        }
+
+        synchronized (this.checkpointWriter) {
+            LedgerSnapshot snapshot;
+            long generation;
+            checkpointLock.writeLock().lock();
+            try {
+                journal.sync();
+                snapshot = LedgerSnapshot.capture(this.users.values(), this.groups.values(),
+                        (ExpenseMap) this.expenses);
+                generation = journal.rollOver();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+
+            // a crash from here on leaves the archived journal to replay over the old snapshot
+            long bytes = snapshot.write(snapshotPath, generation);
+            LedgerJournal.discardArchived(journal.getPath(), generation);
+            return bytes;
+        }
+    }
+
+    public synchronized void startPeriodicCheckpoints(long interval, TimeUnit unit) {
+        if (this.checkpointScheduler != null) {
+            return;
+        }
+        this.checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                // the journal still holds everything, so the next round simply tries again
+                LedgerEvents.get().onRequestRejected("Checkpoint failed: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+    }
+
+    public void attachJournal(LedgerJournal journal) {
+        this.journal = journal;
+        for (Group group : this.groups.values()) {
+            group.setJournal(journal);
+        }
+    }
+
+    public LedgerJournal getJournal() {
+        return journal;
+    }
+
+    // Runs a change so that a checkpoint sees either all of it (state and journal record) or none,
+    // then waits for the group commit that makes it durable. Callers share fsyncs.
+    private <T> T mutateAndReturn(Supplier<T> change) {
+        LedgerJournal journal = this.journal;
+        if (journal == null) {
+            return change.get();
+        }
+
+        T result = underCheckpointLock(change);
+        journal.sync();
+        return result;
+    }
+
+    // The atomic half of mutateAndReturn, without waiting for the disk. Batch operations run
+    // each change through here and sync the journal once at the end.
+    private <T> T underCheckpointLock(Supplier<T> change) {
+        if (this.journal == null) {
+            return change.get();
+        }
+        checkpointLock.readLock().lock();
+        try {
+            return change.get();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private void mutate(Runnable change) {
+        mutateAndReturn(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.checkpointScheduler != null) {
+                this.checkpointScheduler.shutdown();
+                try {
+                    this.checkpointScheduler.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        this.notificationDispatcher.close();
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.close();
+        }
+        this.expenseStore.close();
+    }
+
+    public User createUser(String name, String email) {
+        return mutateAndReturn(() -> {
+            User user = new User(name, email);
+            // Journaled before it becomes visible, so no later record can reference an unknown user
+            LedgerJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendUserCreated(user);
+            }
+            this.users.put(user.getId(), user);
+            indexUser(user);
+            LedgerEvents.get().onUserCreated(user);
+            return user;
+        });
+    }
+
+    public Group createGroup(String name) {
+        return mutateAndReturn(() -> {
+            Group group = new Group(name);
+            group.setNotificationDispatcher(this.notificationDispatcher);
+            group.setExpenseStore(this.expenseStore.forOwner());
+            LedgerJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendGroupCreated(group.getId(), name);
+                group.setJournal(journal);
+            }
+            this.groups.put(group.getId(), group);
+            this.groupsByName.putIfAbsent(name, group);
+            LedgerEvents.get().onGroupCreated(group);
+            return group;
+        });
+    }
+
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
+    // Existing groups switch over too; the old dispatcher is left to drain what it already holds
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        notificationDispatcher.setLatencyHistogram(metrics.histogram("ledger_notification_latency_nanos"));
+        this.notificationDispatcher = notificationDispatcher;
+        for (Group group : this.groups.values()) {
+            group.setNotificationDispatcher(notificationDispatcher);
+        }
+    }
+
+    // The store holding individual expenses; each group has its own (Group.getExpenseStore)
+    public ExpenseStore getExpenseStore() {
+        return ((ExpenseMap) expenses).getStore();
+    }
+
+    public Group getGroupById(String id) {
+        return this.groups.get(id);
+    }
+
+    public void addGroupUser(String groupId, String userId) {
+        mutate(() -> {
+
+            User user = users.get(userId);
+            Group group = groups.get(groupId);
+
+            if (user == null || group == null) {
+                LedgerEvents.get().onRequestRejected("User or Group not found");
+                return;
+            }
+
+            group.addUser(user);
+        });
+    }
+
+    public boolean removeGroupUser(String groupId, String userId) {
+        return mutateAndReturn(() -> {
+            User user = users.get(userId);
+
+            if (user == null) {
+                LedgerEvents.get().onRequestRejected("User not found");
+                return false;
+            }
+            Group group = groups.get(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return false;
+            }
+
+            boolean removedUser = group.removeUser(userId);
+
+            if (!removedUser) {
+                LedgerEvents.get().onRequestRejected("User not removed");
+                return false;
+            }
+
+            LedgerEvents.get().onGroupMemberRemoved(group, user);
+
+            return true;
+        });
+    }
+
+    // Rounds like Money.of(double) without going through BigDecimal
+    private static Money toMoney(double amount) {
+        return Money.ofMinor(Money.minorUnitsOf(amount, Money.DEFAULT_SCALE));
+    }
+
+    public void addExpenseToGroup(String groupId, String description, double totalAmount, String paidBy,
+            List<String> users, SplitType splitType, List<Double> splits) {
+        timed(addExpenseNanos, () -> mutate(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return;
+            }
+
+            long total = Money.minorUnitsOf(totalAmount, Money.DEFAULT_SCALE);
+            if (group.addExpense(description, total, Money.DEFAULT_SCALE, paidBy, splits, users, splitType)) {
+                metrics.counter("ledger_expenses_added_total").increment();
+            }
+        }));
+    }
+
+    public void addExpenseToGroup(String groupId, String description, double amount,
+            String paidByUserId, List<String> involvedUsers,
+            SplitType splitType) {
+        addExpenseToGroup(groupId, description, amount, paidByUserId, involvedUsers, splitType, new ArrayList<>());
+    }
+
+    // Posts the whole receipt as one expense; returns it, or null when the group is not found
+    public Expense addItemizedExpenseToGroup(String groupId, String description, String paidBy, Receipt receipt) {
+        return timed(addExpenseNanos, () -> mutateAndReturn(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return null;
+            }
+
+            Expense expense = group.addItemizedExpense(description, paidBy, receipt);
+            metrics.counter("ledger_expenses_added_total").increment();
+            return expense;
+        }));
+    }
+
+    // All-or-nothing: throws IllegalArgumentException naming the first bad request
+    public List<Expense> addExpensesToGroup(String groupId, List<ExpenseRequest> requests) {
+        return timed(addExpensesNanos, () -> mutateAndReturn(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return new ArrayList<>();
+            }
+
+            List<Expense> added = group.addExpenses(requests);
+            metrics.counter("ledger_expenses_added_total").add(added.size());
+            return added;
+        }));
+    }
+
+    // Returns the updated expense, or null when the group or expense is not found
+    public Expense updateExpense(String groupId, String expenseId, String description, double totalAmount,
+            String paidBy, List<String> users, SplitType splitType, List<Double> splits) {
+        return timed(updateExpenseNanos, () -> mutateAndReturn(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return null;
+            }
+
+            Expense updated = group.updateExpense(expenseId, description, toMoney(totalAmount), paidBy, splits,
+                    users, splitType);
+            if (updated == null) {
+                LedgerEvents.get().onRequestRejected("Expense not found");
+            }
+            return updated;
+        }));
+    }
+
+    public boolean deleteExpense(String groupId, String expenseId) {
+        return timed(deleteExpenseNanos, () -> mutateAndReturn(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return false;
+            }
+
+            if (!group.deleteExpense(expenseId)) {
+                LedgerEvents.get().onRequestRejected("Expense not found");
+                return false;
+            }
+            return true;
+        }));
+    }
+
+    public void settlePaymentInGroup(String groupId, String fromUserId, String toUserId, double amount) {
+        timed(settleNanos, () -> mutate(() -> {
+            Group group = getGroupById(groupId);
+
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return;
+            }
+
+            if (group.settleExpense(fromUserId, toUserId, toMoney(amount))) {
+                metrics.counter("ledger_settlements_total").increment();
+            }
+        }));
+    }
+
+    public User getUserById(String id) {
+        return this.users.get(id);
+    }
+
+    // Groups the user is currently a member of, from the index each group keeps on its members
+    public List<Group> getGroupsOfUser(String userId) {
+        User user = getUserById(userId);
+        List<Group> memberOf = new ArrayList<>();
+        if (user == null) {
+            return memberOf;
+        }
+        for (String groupId : user.getGroupIds()) {
+            Group group = this.groups.get(groupId);
+            if (group != null) {
+                memberOf.add(group);
+            }
+        }
+        return memberOf;
+    }
+
+    public User getUserByEmail(String email) {
+        return email == null ? null : this.usersByEmail.get(email.trim().toLowerCase());
+    }
+
+    // With duplicate names this is the group created first
+    public Group getGroupByName(String name) {
+        return name == null ? null : this.groupsByName.get(name);
+    }
+
+    private void indexUser(User user) {
+        if (user.getEmail() != null) {
+            this.usersByEmail.putIfAbsent(user.getEmail().trim().toLowerCase(), user);
+        }
+    }
+
+    // Streams a CSV or JSON-lines export (chosen by extension) into the ledger. Rows name
+    // groups by name and people by email; see CsvRowParser and JsonLineRowParser.
+    public ImportReport importExpenses(Path path) throws IOException {
+        return importExpenses(path, formatOf(path));
+    }
+
+    public ImportReport importExpenses(Path path, FileFormat format) throws IOException {
+        ImportTarget target = new ImportTarget() {
+            @Override
+            public Group findGroup(String name) {
+                return getGroupByName(name);
+            }
+
+            @Override
+            public User findUser(String email) {
+                return getUserByEmail(email);
+            }
+
+            @Override
+            public void post(Group group, List<ExpenseRequest> batch) {
+                addExpensesToGroup(group.getId(), batch);
+            }
+        };
+        return new ExpenseImporter(target).importFile(path, format);
+    }
+
+    public void settleIndividualPayment(String fromUserId, String toUserId, double amount) {
+        mutate(() -> {
+            User fromUser = getUserById(fromUserId);
+            User toUser = getUserById(toUserId);
+
+            if (fromUser == null || toUser == null) {
+                LedgerEvents.get().onRequestRejected("User not found");
+                return;
+            }
+
+            Money payment = toMoney(amount);
+            // Paying reduces what fromUser owes toUser; one atomic update covers both sides
+            fromUser.updateBalance(toUser, payment.negate());
+            // Pair balances only ever add, so the journal order of concurrent payments does not matter
+            LedgerJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendIndividualSettlement(fromUserId, toUserId, payment, null);
+            }
+
+            LedgerEvents.get().onIndividualSettlement(fromUser, toUser, payment);
+        });
+    }
+
+    public Expense getExpenseById(String id) {
+        return this.expenses.get(id);
+    }
+
+    public void settleIndividualPayment(String description, double amount, String fromUserId, String toUserId,
+            SplitType splitType, List<Double> splits) {
+        mutate(() -> {
+
+            SplitStrategy splitStrategy = SplitFactory.getInstance(splitType);
+            Money payment = toMoney(amount);
+            List<Split> newSplits = splitStrategy.calculateSplit(payment, Arrays.asList(fromUserId, toUserId), splits);
+
+            Expense expense = new Expense(description, payment, fromUserId, newSplits);
+            this.expenses.put(expense.getId(), expense);
+
+            User fromUser = getUserById(fromUserId);
+            User toUser = getUserById(toUserId);
+
+            fromUser.updateBalance(toUser, payment.negate());
+            LedgerJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendIndividualSettlement(fromUserId, toUserId, payment, expense);
+            }
+
+            LedgerEvents.get().onIndividualSettlement(fromUser, toUser, payment);
+        });
+    }
+
+    public void addIndividualPayment(String description, double amount,
+            String paidByUserId, String otherUserId, SplitType splitType) {
+        timed(individualPaymentNanos, () -> mutate(() -> {
+
+            User paidByUser = getUserById(paidByUserId);
+            User otherUser = getUserById(otherUserId);
+
+            if (paidByUser == null || otherUser == null) {
+                LedgerEvents.get().onRequestRejected("User not found");
+                return;
+            }
+
+            List<String> involvedUsers = Arrays.asList(paidByUserId, otherUserId);
+
+            Money total = toMoney(amount);
+            List<Split> newSplits = SplitFactory.getInstance(splitType).calculateSplit(total, involvedUsers,
+                    new ArrayList<>());
+
+            Expense expense = new Expense(description, total, paidByUserId, newSplits);
+            this.expenses.put(expense.getId(), expense);
+
+            for (Split split : newSplits) {
+                if (!split.getUserId().equals(paidByUserId)) {
+                    User user = getUserById(split.getUserId());
+
+                    // user owes paidByUser
+                    user.updateBalance(paidByUser, split.getAmount());
+                }
+            }
+            LedgerJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendIndividualExpense(expense);
+            }
+
+            LedgerEvents.get().onIndividualExpense(expense, paidByUser, otherUser);
+        }));
+    }
+
+    public void showUserBalance(String userId) {
+        User user = getUserById(userId);
+        if (user == null) {
+            System.out.println("User not found");
+            return;
+        }
+        System.out.println("User balance for " + user.getName() + " is " + user.getBalance());
+
+        for (Map.Entry<String, Money> otherUser : user.getBalance().entrySet()) {
+            System.out.println("User balance for " + otherUser.getKey() + " is " + otherUser.getValue());
+            User othUser = getUserById(otherUser.getKey());
+
+            if (othUser == null) {
+                System.out.println("User not found");
+                return;
+            } else {
+                if (otherUser.getValue().isNegative()) {
+                    System.out.println(othUser.getName() + " owes money to " + user.getName() + ": Rs "
+                            + otherUser.getValue().abs());
+                } else if (otherUser.getValue().isPositive()) {
+                    System.out.println(
+                            user.getName() + " owes money to " + othUser.getName() + ": Rs " + otherUser.getValue());
+                }
+            }
+        }
+    }
+
+    public void showGroupBalances(String groupId) {
+        Group group = getGroupById(groupId);
+        if (group == null) {
+            System.out.println("Group not found");
+            return;
+        }
+        group.showGroupBalance();
+    }
+
+    public void simplifyGroupDept(String groupId) {
+        simplifyGroupDept(groupId, null);
+    }
+
+    // A null mode uses the group's own
+    public void simplifyGroupDept(String groupId, SimplificationMode mode) {
+        timed(simplifyNanos, () -> mutate(() -> {
+            Group group = getGroupById(groupId);
+            if (group == null) {
+                LedgerEvents.get().onRequestRejected("Group not found");
+                return;
+            }
+            recordSimplification(mode == null ? group.simplifyBalanceSheet() : group.simplifyBalanceSheet(mode));
+        }));
+    }
+
+    public Map<String, SimplificationReport> simplifyAll() {
+        return simplifyGroups(this.groups.keySet());
+    }
+
+    public Map<String, SimplificationReport> simplifyGroups(Collection<String> groupIds) {
+        return simplifyGroups(groupIds, ForkJoinPool.commonPool());
+    }
+
+    // Fans groups out across the pool. Each group is simplified under its own lock and its own
+    // hold of the checkpoint read lock, like simplifyGroupDept, so expense traffic keeps flowing
+    // and a checkpoint can slot in between groups instead of waiting for the whole job. Pool
+    // workers only append to the journal; the caller waits for one group commit at the end, so
+    // no worker sits blocked on an fsync.
+    public Map<String, SimplificationReport> simplifyGroups(Collection<String> groupIds, ForkJoinPool pool) {
+        List<String> ids = new ArrayList<>(groupIds);
+        Map<String, SimplificationReport> reports = pool.submit(() -> ids.parallelStream()
+                .map(this.groups::get)
+                .filter(Objects::nonNull)
+                .map(group -> timed(simplifyNanos, () -> underCheckpointLock(() -> {
+                    SimplificationReport report = group.simplifyBalanceSheet();
+                    recordSimplification(report);
+                    return report;
+                })))
+                .collect(Collectors.toConcurrentMap(SimplificationReport::getGroupId, report -> report)))
+                .join();
+        LedgerJournal journal = this.journal;
+        if (journal != null) {
+            journal.sync();
+        }
+        return reports;
+    }
+
+    // Opt-in global settlement: one plan over every group's balance sheet and every P2P balance,
+    // simplified per connected component in parallel. Nothing is applied to the ledger.
+    public SettlementPlan planGlobalSettlement() {
+        return planGlobalSettlement(SimplificationMode.AUTO, true, ForkJoinPool.commonPool());
+    }
+
+    public SettlementPlan planGlobalSettlement(SimplificationMode mode, boolean attribute, ForkJoinPool pool) {
+        return planSettlement(this.groups.values(), this.users.values(), mode, attribute, pool);
+    }
+
+    // The same plan limited to the user's network: everyone reachable through shared groups
+    // and non-zero P2P balances
+    public SettlementPlan planSettlementFor(String userId) {
+        User start = getUserById(userId);
+        if (start == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+
+        Set<String> seenUsers = new HashSet<>();
+        Map<String, Group> network = new LinkedHashMap<>();
+        List<User> people = new ArrayList<>();
+        ArrayDeque<User> queue = new ArrayDeque<>();
+        seenUsers.add(userId);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            User user = queue.poll();
+            people.add(user);
+            for (Group group : getGroupsOfUser(user.getId())) {
+                if (network.putIfAbsent(group.getId(), group) == null) {
+                    for (User member : group.getUsers()) {
+                        if (seenUsers.add(member.getId())) {
+                            queue.add(member);
+                        }
+                    }
+                }
+            }
+            for (PairBalance pair : user.getPairBalances()) {
+                User other = getUserById(pair.getOtherUserId(user.getId()));
+                if (pair.balanceFor(user.getId()) != 0 && other != null && seenUsers.add(other.getId())) {
+                    queue.add(other);
+                }
+            }
+        }
+        return planSettlement(network.values(), people, SimplificationMode.AUTO, true, ForkJoinPool.commonPool());
+    }
+
+    private static SettlementPlan planSettlement(Collection<Group> groups, Collection<User> people,
+            SimplificationMode mode, boolean attribute, ForkJoinPool pool) {
+        SettlementPlanner planner = new SettlementPlanner();
+        for (Group group : groups) {
+            planner.addBalanceSheet(group.getId(), group.getBalanceSheet());
+        }
+        for (User user : people) {
+            for (PairBalance pair : user.getPairBalances()) {
+                // each pair is shared by both users, so only the lower id adds it
+                if (pair.getLowUserId().equals(user.getId())) {
+                    planner.addDebt(pair.getLowUserId(), pair.getHighUserId(), pair.balanceFor(user.getId()),
+                            SettlementPlanner.PEER_SOURCE);
+                }
+            }
+        }
+        return planner.plan(mode, attribute, pool);
+    }
+
+    // Exports read the live ledger without stopping writers; see LedgerExporter for the
+    // layouts. The format follows the file extension, as for imports.
+    public long exportExpenses(Path path) throws IOException {
+        return new LedgerExporter(this::getUserById).writeExpenses(path, formatOf(path), this.groups.values());
+    }
+
+    public long exportBalances(Path path) throws IOException {
+        return new LedgerExporter(this::getUserById).writeBalances(path, formatOf(path), this.groups.values());
+    }
+
+    public long exportStatement(String userId, Path path) throws IOException {
+        User user = getUserById(userId);
+        if (user == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+        return new LedgerExporter(this::getUserById).writeStatement(path, formatOf(path), user,
+                getGroupsOfUser(userId), this.expenses.values());
+    }
+
+    public Map<String, Long> exportGroups(Path directory, FileFormat format) throws IOException {
+        return exportGroups(directory, format, ForkJoinPool.commonPool());
+    }
+
+    // Writes each group's expenses and balances to their own files, groups in parallel on pool.
+    // Returns the number of expenses written per group id.
+    public Map<String, Long> exportGroups(Path directory, FileFormat format, ForkJoinPool pool)
+            throws IOException {
+        LedgerExporter exporter = new LedgerExporter(this::getUserById);
+        List<Group> snapshot = new ArrayList<>(this.groups.values());
+        try {
+            return pool.submit(() -> snapshot.parallelStream()
+                    .collect(Collectors.toConcurrentMap(Group::getId, group -> {
+                        try {
+                            return exporter.writeGroup(directory, format, group);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })))
+                    .join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FileFormat formatOf(Path path) {
+        return FileFormat.forFileName(path.getFileName().toString());
+    }
+
+    private User recoveredUser(String userId) {
+        User user = this.users.get(userId);
+        if (user == null) {
+            throw new IllegalStateException("Recovery references unknown user " + userId);
+        }
+        return user;
+    }
+
+    private Group recoveredGroup(String groupId) {
+        Group group = this.groups.get(groupId);
+        if (group == null) {
+            throw new IllegalStateException("Recovery references unknown group " + groupId);
+        }
+        return group;
+    }
+
+    private void restoreUser(String userId, String name, String email) {
+        User user = new User(name, email);
+        user.setId(userId);
+        this.users.put(userId, user);
+        indexUser(user);
+    }
+
+    private Group restoreGroup(String groupId, String name) {
+        Group group = new Group(name);
+        group.setId(groupId);
+        group.setExpenseStore(this.expenseStore.forOwner());
+        group.setNotificationDispatcher(this.notificationDispatcher);
+        this.groups.put(groupId, group);
+        this.groupsByName.putIfAbsent(name, group);
+        return group;
+    }
+
+    // Rebuilds state from a snapshot without touching any balance twice: balance sheets and
+    // pair cells are restored as they were, and expenses are kept only as history.
+    private class SnapshotRecovery implements SnapshotVisitor {
+        @Override
+        public void onUser(String userId, String name, String email) {
+            restoreUser(userId, name, email);
+        }
+
+        @Override
+        public void onGroup(String groupId, String name, SimplificationMode mode, List<String> memberIds,
+                Map<String, Map<String, Money>> balanceSheet) {
+            Group group = restoreGroup(groupId, name);
+            group.setSimplificationMode(mode);
+            for (String memberId : memberIds) {
+                group.addUser(recoveredUser(memberId));
+            }
+            group.setBalanceSheet(balanceSheet);
+        }
+
+        // straight into the store, one at a time, without posting to any balance
+        @Override
+        public void onGroupExpense(String groupId, Expense expense) {
+            recoveredGroup(groupId).getExpenses().put(expense.getId(), expense);
+        }
+
+        @Override
+        public void onIndividualExpense(Expense expense) {
+            expenses.put(expense.getId(), expense);
+        }
+
+        @Override
+        public void onPairBalance(String lowUserId, String highUserId, Money lowOwesHigh) {
+            recoveredUser(lowUserId).updateBalance(recoveredUser(highUserId), lowOwesHigh);
+        }
+    }
+
+    // Applies journal records straight to the maps and groups. Notifications and events stay quiet,
+    // and no journal is attached yet, so nothing is written back.
+    private class JournalRecovery implements JournalVisitor {
+        @Override
+        public void onUserCreated(String userId, String name, String email) {
+            restoreUser(userId, name, email);
+        }
+
+        @Override
+        public void onGroupCreated(String groupId, String name) {
+            restoreGroup(groupId, name);
+        }
+
+        @Override
+        public void onMemberAdded(String groupId, String userId) {
+            recoveredGroup(groupId).addUser(recoveredUser(userId));
+        }
+
+        @Override
+        public void onMemberRemoved(String groupId, String userId) {
+            recoveredGroup(groupId).removeUser(userId);
+        }
+
+        @Override
+        public void onGroupExpense(Expense expense) {
+            recoveredGroup(expense.getGroupId()).applyExpense(expense);
+        }
+
+        @Override
+        public void onGroupExpenseUpdated(Expense expense) {
+            recoveredGroup(expense.getGroupId()).replaceExpense(expense);
+        }
+
+        @Override
+        public void onExpenseRemoved(String groupId, String expenseId) {
+            recoveredGroup(groupId).removeExpense(expenseId);
+        }
+
+        @Override
+        public void onGroupSettlement(String groupId, String fromUserId, String toUserId, Money amount) {
+            recoveredGroup(groupId).applySettlement(fromUserId, toUserId, amount);
+        }
+
+        @Override
+        public void onGroupBalancesReplaced(String groupId, Map<String, Map<String, Money>> balanceSheet) {
+            recoveredGroup(groupId).setBalanceSheet(balanceSheet);
+        }
+
+        @Override
+        public void onGroupBalanceAdjusted(String groupId, String debtorId, String creditorId, Money amount) {
+            recoveredGroup(groupId).updateGroupBalance(debtorId, creditorId, amount);
+        }
+
+        @Override
+        public void onIndividualExpense(Expense expense) {
+            expenses.put(expense.getId(), expense);
+            User paidByUser = recoveredUser(expense.getPaidBy());
+            for (Split split : expense.getSplits()) {
+                if (!split.getUserId().equals(expense.getPaidBy())) {
+                    recoveredUser(split.getUserId()).updateBalance(paidByUser, split.getAmount());
+                }
+            }
+        }
+
+        @Override
+        public void onIndividualSettlement(String fromUserId, String toUserId, Money amount, Expense expense) {
+            if (expense != null) {
+                expenses.put(expense.getId(), expense);
+            }
+            recoveredUser(fromUserId).updateBalance(recoveredUser(toUserId), amount.negate());
+        }
+    }
+
+}
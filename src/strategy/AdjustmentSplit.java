@@ -0,0 +1,32 @@
+package strategy;
+
+import models.Money;
+
+// Equal split after per-person adjustments: each user's value is added to (or, if negative,
+// taken off) their share, and whatever remains of the total is split equally.
+public class AdjustmentSplit implements SplitStrategy {
+    @Override
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
+        long adjusted = 0;
+        for (int i = 0; i < count; i++) {
+            adjusted += Money.minorUnitsOf(values[i], scale);
+        }
+
+        // Leftover paise go one each to the first users in list order, as in an equal split
+        long rest = total - adjusted;
+        long each = rest / count;
+        long remainder = rest % count;
+        for (int i = 0; i < count; i++) {
+            long extra = i < Math.abs(remainder) ? Long.signum(remainder) : 0;
+            shares[i] = each + extra + Money.minorUnitsOf(values[i], scale);
+        }
+
+        // validation
+        for (int i = 0; i < count; i++) {
+            if (Long.signum(shares[i]) * Long.signum(total) < 0) {
+                throw new IllegalArgumentException("Adjustments leave a share of " + Money.ofMinor(shares[i], scale)
+                        + " on a total of " + Money.ofMinor(total, scale));
+            }
+        }
+    }
+}
@@ -1,22 +1,25 @@
 package strategy;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import models.Split;
-
 public class EqualSplit implements SplitStrategy {
     @Override
-    public List<Split> calculateSplit(double totalAmount, List<String> userIds, List<Double> amounts) {
-        List<Split> splits = new ArrayList<>();
-        double amountPerUser = totalAmount / userIds.size();
-
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
         // validation
+        if (count == 0) {
+            throw new IllegalArgumentException("At least one user is required");
+        }
 
-        for (String userId : userIds) {
-            splits.add(new Split(userId, amountPerUser));
+        long amountPerUser = total / count;
+        // Leftover paise go one each to the first users in list order, so the split always adds up
+        long remainder = total % count;
+
+        for (int i = 0; i < count; i++) {
+            long extra = i < Math.abs(remainder) ? Long.signum(remainder) : 0;
+            shares[i] = amountPerUser + extra;
         }
+    }
 
-        return splits;
+    @Override
+    public boolean needsValues() {
+        return false;
     }
 }
@@ -1,24 +1,20 @@
 package strategy;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import models.Split;
+import models.Money;
 
 public class ExactSplit implements SplitStrategy {
     @Override
-    public List<Split> calculateSplit(double totalAmount, List<String> userIds, List<Double> amounts) {
-        List<Split> splits = new ArrayList<>();
-
-        // validation
-        if(userIds.size() != amounts.size()){
-            throw new IllegalArgumentException("UserIds and amounts must have same size");
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            shares[i] = Money.minorUnitsOf(values[i], scale);
+            sum += shares[i];
         }
 
-        for(int i = 0; i < userIds.size(); i++){
-            splits.add(new Split(userIds.get(i), amounts.get(i)));
+        // validation
+        if (sum != total) {
+            throw new IllegalArgumentException("Exact amounts add up to " + Money.ofMinor(sum, scale)
+                    + " instead of the total " + Money.ofMinor(total, scale));
         }
-
-        return splits;
-    }    
+    }
 }
@@ -0,0 +1,43 @@
+package strategy;
+
+import models.Money;
+
+// Receipt split: each user's value is the sum of the line items they had, before tax and tip.
+// Whatever the total adds on top of the items (tax, tip, service charge, or a negative
+// discount) is prorated by those subtotals. Group.addItemizedExpense builds the subtotals
+// from a Receipt's lines.
+public class ItemizedSplit implements SplitStrategy {
+    @Override
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
+        for (int i = 0; i < count; i++) {
+            shares[i] = Money.minorUnitsOf(values[i], scale);
+        }
+        prorate(total, values, count, shares);
+    }
+
+    // shares holds each user's subtotal in minor units and weights the same subtotals in any
+    // unit; adds each user's part of the extras onto their subtotal
+    public static void prorate(long total, double[] weights, int count, long[] shares) {
+        // validation
+        long subtotal = 0;
+        double weightSum = 0;
+        for (int i = 0; i < count; i++) {
+            if (shares[i] < 0) {
+                throw new IllegalArgumentException("Item subtotals must not be negative");
+            }
+            subtotal += shares[i];
+            weightSum += weights[i];
+        }
+        if (subtotal <= 0) {
+            throw new IllegalArgumentException("Itemized expenses need at least one priced item");
+        }
+        if (total < 0) {
+            throw new IllegalArgumentException("Itemized total must not be negative");
+        }
+
+        long extras = total - subtotal;
+        if (extras != 0) {
+            Proration.allocate(extras, weights, count, weightSum, shares);
+        }
+    }
+}
@@ -1,25 +1,79 @@
 package strategy;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import models.Split;
+import java.util.Arrays;
 
 public class PercentageSplit implements SplitStrategy {
+    // Percentages like 33.33 + 33.33 + 33.34 are not exact in binary, so allow a little drift
+    private static final double TOLERANCE = 1e-6;
+    private static final long SELECTION_LIMIT = 1 << 16;
+
     @Override
-    public List<Split> calculateSplit(double totalAmount, List<String> userIds, List<Double> amounts) {
-        List<Split> splits = new ArrayList<>();
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
+        // validation
+        double percentTotal = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] < 0) {
+                throw new IllegalArgumentException("Percentages must not be negative");
+            }
+            percentTotal += values[i];
+        }
+        if (Math.abs(percentTotal - 100.0) > TOLERANCE) {
+            throw new IllegalArgumentException("Percentages add up to " + percentTotal + " instead of 100");
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < count; i++) {
+            shares[i] = (long) Math.floor(total * values[i] / 100.0);
+            allocated += shares[i];
+        }
 
-        // validation 
-        if(userIds.size() != amounts.size()){
-            throw new IllegalArgumentException("UserIds and amounts must have same size");
+        // Drift in the inputs can leave a paisa or more per user; spread whole rounds evenly first
+        long leftover = total - allocated;
+        long rounds = Math.floorDiv(leftover, count);
+        if (rounds != 0) {
+            for (int i = 0; i < count; i++) {
+                shares[i] += rounds;
+            }
+            leftover -= rounds * count;
         }
 
-        for(int i = 0 ; i < userIds.size(); i++){
-            double amount = (totalAmount * amounts.get(i)) / 100.0;
-            splits.add(new Split(userIds.get(i), amount));
+        // Hand out the paise lost to rounding down, largest fractional part first (ties in list order)
+        if (leftover * count > SELECTION_LIMIT) {
+            handOutSorted(total, values, count, shares, (int) leftover);
+            return;
+        }
+        // Fractions are recomputed rather than stored so this allocates nothing; a user already
+        // handed a paisa sits above their floor
+        for (long k = 0; k < leftover; k++) {
+            int best = -1;
+            double bestFraction = -1;
+            for (int i = 0; i < count; i++) {
+                double exact = total * values[i] / 100.0;
+                long floor = (long) Math.floor(exact);
+                if (shares[i] != floor + rounds) {
+                    continue;
+                }
+                if (exact - floor > bestFraction) {
+                    best = i;
+                    bestFraction = exact - floor;
+                }
+            }
+            shares[best]++;
         }
+    }
 
-        return splits;
+    // For large groups, where repeated selection would be quadratic
+    private static void handOutSorted(long total, double[] values, int count, long[] shares, int leftover) {
+        Integer[] order = new Integer[count];
+        double[] fractions = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            double exact = total * values[i] / 100.0;
+            fractions[i] = exact - Math.floor(exact);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fractions[b], fractions[a]));
+        for (int k = 0; k < leftover; k++) {
+            shares[order[k]]++;
+        }
     }
 }
@@ -0,0 +1,77 @@
+package strategy;
+
+import java.util.Arrays;
+
+// Largest-remainder apportionment shared by the weighted split types
+class Proration {
+    private static final long SELECTION_LIMIT = 1 << 16;
+
+    // Adds amount, divided in proportion to weights[0..count), onto shares. Every share gets
+    // the floor of its exact portion; the units lost to flooring go one each to the largest
+    // fractional parts, ties in list order, so the portions always add up to amount.
+    static void allocate(long amount, double[] weights, int count, double weightSum, long[] shares) {
+        long allocated = 0;
+        for (int i = 0; i < count; i++) {
+            long portion = (long) Math.floor(amount * (weights[i] / weightSum));
+            shares[i] += portion;
+            allocated += portion;
+        }
+
+        // Float error can leave more than a unit per share; spread whole rounds evenly first
+        long leftover = amount - allocated;
+        long rounds = Math.floorDiv(leftover, count);
+        if (rounds != 0) {
+            for (int i = 0; i < count; i++) {
+                shares[i] += rounds;
+            }
+            leftover -= rounds * count;
+        }
+        if (leftover == 0) {
+            return;
+        }
+        if (leftover * count > SELECTION_LIMIT) {
+            handOutSorted(amount, weights, count, weightSum, shares, (int) leftover);
+            return;
+        }
+
+        // Each pass picks the next share in (fraction descending, index ascending) order after
+        // the last one picked, so nothing needs to be stored
+        double lastFraction = Double.POSITIVE_INFINITY;
+        int lastIndex = -1;
+        for (long k = 0; k < leftover; k++) {
+            int best = -1;
+            double bestFraction = -1;
+            for (int i = 0; i < count; i++) {
+                double fraction = fractionOf(amount, weights[i], weightSum);
+                boolean after = fraction < lastFraction || (fraction == lastFraction && i > lastIndex);
+                if (after && fraction > bestFraction) {
+                    best = i;
+                    bestFraction = fraction;
+                }
+            }
+            shares[best]++;
+            lastFraction = bestFraction;
+            lastIndex = best;
+        }
+    }
+
+    private static double fractionOf(long amount, double weight, double weightSum) {
+        double exact = amount * (weight / weightSum);
+        return exact - Math.floor(exact);
+    }
+
+    // For large groups, where repeated selection would be quadratic
+    private static void handOutSorted(long amount, double[] weights, int count, double weightSum, long[] shares,
+            int leftover) {
+        Integer[] order = new Integer[count];
+        double[] fractions = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            fractions[i] = fractionOf(amount, weights[i], weightSum);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fractions[b], fractions[a]));
+        for (int k = 0; k < leftover; k++) {
+            shares[order[k]]++;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package strategy;
+
+import java.util.Arrays;
+
+// Splits in proportion to weights such as 2:1:1
+public class SharesSplit implements SplitStrategy {
+    @Override
+    public void split(long total, int scale, double[] values, int count, long[] shares) {
+        // validation
+        double weightSum = 0;
+        for (int i = 0; i < count; i++) {
+            if (!(values[i] >= 0) || Double.isInfinite(values[i])) {
+                throw new IllegalArgumentException("Shares must be non-negative numbers");
+            }
+            weightSum += values[i];
+        }
+        if (weightSum <= 0) {
+            throw new IllegalArgumentException("At least one share must be positive");
+        }
+
+        Arrays.fill(shares, 0, count, 0L);
+        Proration.allocate(total, values, count, weightSum, shares);
+    }
+}
@@ -1,9 +1,49 @@
 package strategy;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import models.Money;
 import models.Split;
 
+// Strategies are stateless, so SplitFactory hands out one shared instance per split type.
+//
+// split is the primitive form: it writes each user's share of total (minor units at scale)
+// into shares[0..count), reading per-user inputs such as exact amounts or percentages from
+// values. It allocates nothing, so a caller with reusable arrays can post an expense without
+// building Split objects. It throws IllegalArgumentException when the inputs do not add up to
+// the total; on success the shares always sum to total exactly.
 public interface SplitStrategy {
-    List<Split> calculateSplit(double totalAmount, List<String> userIds, List<Double> amounts);
+    void split(long total, int scale, double[] values, int count, long[] shares);
+
+    // Whether split reads values; EQUAL ignores them
+    default boolean needsValues() {
+        return true;
+    }
+
+    default void checkCounts(int users, int values) {
+        if (users == 0) {
+            throw new IllegalArgumentException("At least one user is required");
+        }
+        if (needsValues() && users != values) {
+            throw new IllegalArgumentException("UserIds and amounts must have same size");
+        }
+    }
+
+    default List<Split> calculateSplit(Money totalAmount, List<String> userIds, List<Double> amounts) {
+        int count = userIds.size();
+        checkCounts(count, amounts == null ? 0 : amounts.size());
+        double[] values = new double[needsValues() ? count : 0];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = amounts.get(i);
+        }
+        long[] shares = new long[count];
+        split(totalAmount.getMinorUnits(), totalAmount.getScale(), values, count, shares);
+
+        List<Split> splits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            splits.add(new Split(userIds.get(i), Money.ofMinor(shares[i], totalAmount.getScale())));
+        }
+        return splits;
+    }
 }
@@ -5,38 +5,75 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import enums.SimplificationMode;
+import models.Money;
+
 public class DebtSimplifier {
 
-    public static Map<String, Map<String, Double>> simplifyDebt(Map<String, Map<String, Double>> deptMap) {
-        Map<String, Map<String, Double>> simplifiedDebtMap = new HashMap<>();
-        Map<String, Double> netBalanceMap = new HashMap<>();
+    // The exact solver is exponential in the number of non-zero nets, so it only runs for small
+    // sets and within a time budget; anything larger or slower falls back to heap matching.
+    // AUTO is the default and runs under the group lock, so it stops at a size whose tables
+    // (about 36 KB) and search (well under a millisecond) are cheap on every simplify.
+    public static final int OPTIMAL_MAX_MEMBERS = 20;
+    public static final int AUTO_OPTIMAL_MAX_MEMBERS = 12;
+    public static final long DEFAULT_OPTIMAL_BUDGET_NANOS = 50_000_000L;
+    // Rough cost of one inner DP step, used to give up before allocating when the budget is
+    // clearly too small
+    private static final long NANOS_PER_STEP = 1;
+
+    public static Map<String, Map<String, Money>> simplifyDebt(Map<String, Map<String, Money>> deptMap) {
+        Map<String, Map<String, Money>> simplifiedDebtMap = new HashMap<>();
+        Map<String, Integer> indexByUser = new HashMap<>();
+        List<String> users = new ArrayList<>();
+        List<Long> netBalances = new ArrayList<>();
 
         // 1. Calculate net balance for every involved user
         // netBalance = (Amount others owe me) - (Amount I owe others)
         // If netBalance > 0, they are a Creditor.
         // If netBalance < 0, they are a Debtor.
-        for (Map.Entry<String, Map<String, Double>> entry : deptMap.entrySet()) {
-            String debtor = entry.getKey();
-            for (Map.Entry<String, Double> innerEntry : entry.getValue().entrySet()) {
-                String creditor = innerEntry.getKey();
-                double amount = innerEntry.getValue();
+        for (Map.Entry<String, Map<String, Money>> entry : deptMap.entrySet()) {
+            int debtor = indexOf(entry.getKey(), indexByUser, users, netBalances);
+            for (Map.Entry<String, Money> innerEntry : entry.getValue().entrySet()) {
+                int creditor = indexOf(innerEntry.getKey(), indexByUser, users, netBalances);
+                long amount = innerEntry.getValue().toMinorUnits(Money.DEFAULT_SCALE);
 
-                netBalanceMap.put(debtor, netBalanceMap.getOrDefault(debtor, 0.0) - amount);
-                netBalanceMap.put(creditor, netBalanceMap.getOrDefault(creditor, 0.0) + amount);
+                netBalances.set(debtor, netBalances.get(debtor) - amount);
+                netBalances.set(creditor, netBalances.get(creditor) + amount);
             }
         }
 
+        int[] slots = new int[users.size()];
+        long[] nets = new long[users.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = i;
+            nets[i] = netBalances.get(i);
+        }
+
+        for (Transfer transfer : simplifyNets(slots, nets)) {
+            simplifiedDebtMap.computeIfAbsent(users.get(transfer.getDebtor()), k -> new HashMap<>())
+                    .put(users.get(transfer.getCreditor()), Money.ofMinor(transfer.getAmount()));
+        }
+
+        return simplifiedDebtMap;
+    }
+
+    // Settles precomputed net balances (positive = creditor, negative = debtor) for the given
+    // slots, so callers that track nets incrementally skip rescanning the pairwise sheet.
+    // Runs in time proportional to the number of entries passed in.
+    public static List<Transfer> simplifyNets(int[] slots, long[] nets) {
+        List<Transfer> transfers = new ArrayList<>();
+
         // 2. Separate into Creditors (positive balance) and Debtors (negative balance)
         // We use absolute values in lists to make math easier
         List<BalanceNode> creditors = new ArrayList<>();
         List<BalanceNode> debtors = new ArrayList<>();
 
-        for (String user : netBalanceMap.keySet()) {
-            double bal = netBalanceMap.get(user);
-            if (bal > 0.001) {
-                creditors.add(new BalanceNode(user, bal));
-            } else if (bal < -0.001) {
-                debtors.add(new BalanceNode(user, Math.abs(bal)));
+        for (int k = 0; k < slots.length; k++) {
+            long bal = nets[k];
+            if (bal > 0) {
+                creditors.add(new BalanceNode(slots[k], bal));
+            } else if (bal < 0) {
+                debtors.add(new BalanceNode(slots[k], -bal));
             }
         }
 
@@ -46,29 +83,247 @@ public class DebtSimplifier {
             BalanceNode creditorNode = creditors.get(i);
             BalanceNode debtorNode = debtors.get(j);
 
-            double settleAmount = Math.min(creditorNode.amount, debtorNode.amount);
+            long settleAmount = Math.min(creditorNode.amount, debtorNode.amount);
 
-            simplifiedDebtMap.computeIfAbsent(debtorNode.userId, k -> new HashMap<>()).put(creditorNode.userId,
-                    settleAmount);
+            transfers.add(new Transfer(debtorNode.slot, creditorNode.slot, settleAmount));
 
             creditorNode.amount -= settleAmount;
             debtorNode.amount -= settleAmount;
 
-            if (creditorNode.amount < 0.001)
+            if (creditorNode.amount == 0)
                 i++;
-            if (debtorNode.amount < 0.001)
+            if (debtorNode.amount == 0)
                 j++;
         }
 
-        return simplifiedDebtMap;
+        return transfers;
+    }
+
+    public static List<Transfer> simplifyNets(int[] slots, long[] nets, SimplificationMode mode) {
+        return simplifyNets(slots, nets, mode, DEFAULT_OPTIMAL_BUDGET_NANOS);
+    }
+
+    public static List<Transfer> simplifyNets(int[] slots, long[] nets, SimplificationMode mode, long budgetNanos) {
+        switch (mode) {
+            case GREEDY -> {
+                return simplifyNets(slots, nets);
+            }
+            case MAX_HEAP -> {
+                return simplifyWithHeaps(slots, nets);
+            }
+            case OPTIMAL, AUTO -> {
+                int maxMembers = mode == SimplificationMode.AUTO ? AUTO_OPTIMAL_MAX_MEMBERS : OPTIMAL_MAX_MEMBERS;
+                List<Transfer> transfers = simplifyOptimal(slots, nets, budgetNanos, maxMembers);
+                return transfers != null ? transfers : simplifyWithHeaps(slots, nets);
+            }
+            default -> throw new IllegalArgumentException("Invalid simplification mode");
+        }
+    }
+
+    // Exact minimum number of transfers. Settling a zero-sum subset of k people takes k - 1
+    // transfers, so the minimum is n minus the largest number of disjoint zero-sum subsets.
+    // That count is found with a DP over bitmasks of the non-zero nets (O(2^n * n)). Returns
+    // null when there are more than OPTIMAL_MAX_MEMBERS non-zero nets or the budget runs out.
+    public static List<Transfer> simplifyOptimal(int[] slots, long[] nets, long budgetNanos) {
+        return simplifyOptimal(slots, nets, budgetNanos, OPTIMAL_MAX_MEMBERS);
+    }
+
+    private static List<Transfer> simplifyOptimal(int[] slots, long[] nets, long budgetNanos, int maxMembers) {
+        long deadline = System.nanoTime() + budgetNanos;
+
+        int n = 0;
+        for (long net : nets) {
+            if (net != 0) {
+                n++;
+            }
+        }
+        // the tables are 9 bytes per subset; skip them when the search could not finish in time
+        if (n > Math.min(maxMembers, OPTIMAL_MAX_MEMBERS) || ((long) n << n) * NANOS_PER_STEP > budgetNanos) {
+            return null;
+        }
+
+        int[] members = new int[n];
+        long[] values = new long[n];
+        for (int k = 0, i = 0; k < nets.length; k++) {
+            if (nets[k] != 0) {
+                members[i] = slots[k];
+                values[i++] = nets[k];
+            }
+        }
+
+        int full = (1 << n) - 1;
+        long[] sums = new long[full + 1];
+        byte[] groups = new byte[full + 1]; // most zero-sum subsets a mask can be split into
+
+        for (int mask = 1; mask <= full; mask++) {
+            if ((mask & 0xFFF) == 0 && System.nanoTime() > deadline) {
+                return null;
+            }
+            sums[mask] = sums[mask & (mask - 1)] + values[Integer.numberOfTrailingZeros(mask)];
+
+            int best = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                best = Math.max(best, groups[mask ^ Integer.lowestOneBit(rest)]);
+            }
+            groups[mask] = (byte) (best + (sums[mask] == 0 ? 1 : 0));
+        }
+
+        // Walk back from the full set to recover an order whose zero-sum prefixes mark the subsets
+        int[] order = new int[n];
+        int position = n;
+        for (int mask = full; mask != 0;) {
+            int target = groups[mask] - (sums[mask] == 0 ? 1 : 0);
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int bit = Integer.lowestOneBit(rest);
+                if (groups[mask ^ bit] == target) {
+                    order[--position] = Integer.numberOfTrailingZeros(bit);
+                    mask ^= bit;
+                    break;
+                }
+            }
+        }
+
+        List<Transfer> transfers = new ArrayList<>();
+        long prefix = 0;
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            prefix += values[order[i]];
+            if (prefix == 0) {
+                int size = i - start + 1;
+                int[] subsetSlots = new int[size];
+                long[] subsetNets = new long[size];
+                for (int j = 0; j < size; j++) {
+                    subsetSlots[j] = members[order[start + j]];
+                    subsetNets[j] = values[order[start + j]];
+                }
+                transfers.addAll(simplifyWithHeaps(subsetSlots, subsetNets));
+                start = i + 1;
+            }
+        }
+
+        return transfers;
+    }
+
+    // Minimum-cash-flow matching: always settles the largest creditor against the largest
+    // debtor using two binary max-heaps over primitive arrays. Every round zeroes at least
+    // one side, so there are at most n - 1 transfers and O(n log n) total work. Ties are
+    // broken by slot, which makes the output deterministic for a given set of nets.
+    public static List<Transfer> simplifyWithHeaps(int[] slots, long[] nets) {
+        MaxHeap creditors = new MaxHeap(slots.length);
+        MaxHeap debtors = new MaxHeap(slots.length);
+
+        for (int k = 0; k < slots.length; k++) {
+            if (nets[k] > 0) {
+                creditors.push(slots[k], nets[k]);
+            } else if (nets[k] < 0) {
+                debtors.push(slots[k], -nets[k]);
+            }
+        }
+
+        List<Transfer> transfers = new ArrayList<>();
+        while (creditors.size > 0 && debtors.size > 0) {
+            int creditor = creditors.topSlot();
+            long credit = creditors.topAmount();
+            int debtor = debtors.topSlot();
+            long debt = debtors.topAmount();
+            creditors.pop();
+            debtors.pop();
+
+            long settleAmount = Math.min(credit, debt);
+            transfers.add(new Transfer(debtor, creditor, settleAmount));
+
+            if (credit > settleAmount) {
+                creditors.push(creditor, credit - settleAmount);
+            }
+            if (debt > settleAmount) {
+                debtors.push(debtor, debt - settleAmount);
+            }
+        }
+
+        return transfers;
+    }
+
+    private static int indexOf(String userId, Map<String, Integer> indexByUser, List<String> users,
+            List<Long> netBalances) {
+        return indexByUser.computeIfAbsent(userId, k -> {
+            users.add(k);
+            netBalances.add(0L);
+            return users.size() - 1;
+        });
+    }
+
+    // Binary max-heap keyed by amount (then lowest slot) stored in parallel primitive arrays.
+    private static class MaxHeap {
+        int[] slots;
+        long[] amounts;
+        int size;
+
+        MaxHeap(int capacity) {
+            slots = new int[Math.max(1, capacity)];
+            amounts = new long[Math.max(1, capacity)];
+        }
+
+        int topSlot() {
+            return slots[0];
+        }
+
+        long topAmount() {
+            return amounts[0];
+        }
+
+        void push(int slot, long amount) {
+            int i = size++;
+            slots[i] = slot;
+            amounts[i] = amount;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        void pop() {
+            size--;
+            slots[0] = slots[size];
+            amounts[0] = amounts[size];
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int child = left + 1 < size && above(left + 1, left) ? left + 1 : left;
+                if (!above(child, i)) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private boolean above(int a, int b) {
+            return amounts[a] > amounts[b] || (amounts[a] == amounts[b] && slots[a] < slots[b]);
+        }
+
+        private void swap(int a, int b) {
+            int slot = slots[a];
+            slots[a] = slots[b];
+            slots[b] = slot;
+            long amount = amounts[a];
+            amounts[a] = amounts[b];
+            amounts[b] = amount;
+        }
     }
 
     private static class BalanceNode {
-        String userId;
-        double amount;
+        int slot;
+        long amount;
 
-        BalanceNode(String u, double a) {
-            userId = u;
+        BalanceNode(int s, long a) {
+            slot = s;
             amount = a;
         }
     }
@@ -0,0 +1,248 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import enums.SimplificationMode;
+import models.Money;
+import models.PlannedTransfer;
+import models.SettlementPlan;
+
+// Plans one set of settlements over debts from many sources (groups and P2P balances) at
+// once, so someone owed in one group and owing in another settles their overall net only.
+//
+// Debts are collected into primitive arrays with users interned to ints. Union-find splits
+// the people into connected components. Debts never cross components, so each is
+// simplified on its own, in parallel, with the usual DebtSimplifier modes.
+//
+// With attribution, each planned transfer is split across the payer's sources: first
+// sources where the payee is owed too, then any other source where the payer owes.
+// Because a payer's debts across sources add up to at least their net, the split always
+// covers the transfer. A plan is advice; nothing is applied to the groups.
+public class SettlementPlanner {
+    public static final String PEER_SOURCE = "p2p";
+
+    private final Map<String, Integer> userIndex = new HashMap<>();
+    private final List<String> userIds = new ArrayList<>();
+    private final Map<String, Integer> sourceIndex = new HashMap<>();
+    private final List<String> sourceIds = new ArrayList<>();
+
+    private int[] debtors = new int[64];
+    private int[] creditors = new int[64];
+    private int[] sources = new int[64];
+    private long[] amounts = new long[64];
+    private int debtCount;
+
+    // debtorId owes creditorId `amount` minor units through sourceId
+    public void addDebt(String debtorId, String creditorId, long amount, String sourceId) {
+        if (amount == 0 || debtorId.equals(creditorId)) {
+            return;
+        }
+        if (amount < 0) {
+            addDebt(creditorId, debtorId, -amount, sourceId);
+            return;
+        }
+
+        if (debtCount == debtors.length) {
+            int grown = debtCount * 2;
+            debtors = Arrays.copyOf(debtors, grown);
+            creditors = Arrays.copyOf(creditors, grown);
+            sources = Arrays.copyOf(sources, grown);
+            amounts = Arrays.copyOf(amounts, grown);
+        }
+        debtors[debtCount] = intern(debtorId, userIndex, userIds);
+        creditors[debtCount] = intern(creditorId, userIndex, userIds);
+        sources[debtCount] = intern(sourceId, sourceIndex, sourceIds);
+        amounts[debtCount] = amount;
+        debtCount++;
+    }
+
+    // Every debt in a group's balance sheet, attributed to the group
+    public void addBalanceSheet(String groupId, Map<String, Map<String, Money>> balanceSheet) {
+        for (Map.Entry<String, Map<String, Money>> debtor : balanceSheet.entrySet()) {
+            for (Map.Entry<String, Money> creditor : debtor.getValue().entrySet()) {
+                addDebt(debtor.getKey(), creditor.getKey(),
+                        creditor.getValue().toMinorUnits(Money.DEFAULT_SCALE), groupId);
+            }
+        }
+    }
+
+    private static int intern(String id, Map<String, Integer> index, List<String> ids) {
+        Integer existing = index.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        index.put(id, ids.size());
+        ids.add(id);
+        return ids.size() - 1;
+    }
+
+    public int getDebtCount() {
+        return debtCount;
+    }
+
+    public SettlementPlan plan(SimplificationMode mode, boolean attribute, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        int userCount = userIds.size();
+
+        long[] nets = new long[userCount];
+        int[] parent = new int[userCount];
+        for (int user = 0; user < userCount; user++) {
+            parent[user] = user;
+        }
+        for (int debt = 0; debt < debtCount; debt++) {
+            nets[debtors[debt]] -= amounts[debt];
+            nets[creditors[debt]] += amounts[debt];
+            union(parent, debtors[debt], creditors[debt]);
+        }
+
+        // Number the components, then bucket users and debts by component (counting sort)
+        int[] componentOf = new int[userCount];
+        int[] componentOfRoot = new int[userCount];
+        Arrays.fill(componentOfRoot, -1);
+        int componentCount = 0;
+        for (int user = 0; user < userCount; user++) {
+            int root = find(parent, user);
+            if (componentOfRoot[root] < 0) {
+                componentOfRoot[root] = componentCount++;
+            }
+            componentOf[user] = componentOfRoot[root];
+        }
+
+        int[] userStart = new int[componentCount + 1];
+        int[] userOrder = bucket(componentOf, userCount, componentCount, userStart, i -> i);
+        int[] debtStart = new int[componentCount + 1];
+        int[] debtOrder = bucket(componentOf, debtCount, componentCount, debtStart, debt -> debtors[debt]);
+
+        int components = componentCount;
+        List<List<PlannedTransfer>> planned = pool.submit(() -> IntStream.range(0, components).parallel()
+                .mapToObj(component -> planComponent(mode, attribute, nets,
+                        Arrays.copyOfRange(userOrder, userStart[component], userStart[component + 1]),
+                        Arrays.copyOfRange(debtOrder, debtStart[component], debtStart[component + 1])))
+                .collect(Collectors.toList()))
+                .join();
+
+        List<PlannedTransfer> transfers = new ArrayList<>();
+        for (List<PlannedTransfer> componentTransfers : planned) {
+            transfers.addAll(componentTransfers);
+        }
+        return new SettlementPlan(transfers, debtCount, componentCount, System.nanoTime() - start);
+    }
+
+    private interface ComponentKey {
+        int userOf(int item);
+    }
+
+    // Orders items 0..count-1 by the component of userOf(item); start[c] is where component c begins
+    private static int[] bucket(int[] componentOf, int count, int componentCount, int[] start, ComponentKey key) {
+        for (int item = 0; item < count; item++) {
+            start[componentOf[key.userOf(item)] + 1]++;
+        }
+        for (int component = 0; component < componentCount; component++) {
+            start[component + 1] += start[component];
+        }
+        int[] next = Arrays.copyOf(start, componentCount);
+        int[] order = new int[count];
+        for (int item = 0; item < count; item++) {
+            order[next[componentOf[key.userOf(item)]]++] = item;
+        }
+        return order;
+    }
+
+    private static int find(int[] parent, int user) {
+        while (parent[user] != user) {
+            parent[user] = parent[parent[user]];
+            user = parent[user];
+        }
+        return user;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private List<PlannedTransfer> planComponent(SimplificationMode mode, boolean attribute, long[] nets,
+            int[] members, int[] debts) {
+        long[] memberNets = new long[members.length];
+        for (int i = 0; i < members.length; i++) {
+            memberNets[i] = nets[members[i]];
+        }
+        List<Transfer> transfers = DebtSimplifier.simplifyNets(members, memberNets, mode);
+
+        // Each user's running position per source (positive = owed), in the order first seen
+        Map<Integer, Map<Integer, long[]>> positions = new HashMap<>();
+        if (attribute) {
+            for (int debt : debts) {
+                positions.computeIfAbsent(debtors[debt], k -> new LinkedHashMap<>())
+                        .computeIfAbsent(sources[debt], k -> new long[1])[0] -= amounts[debt];
+                positions.computeIfAbsent(creditors[debt], k -> new LinkedHashMap<>())
+                        .computeIfAbsent(sources[debt], k -> new long[1])[0] += amounts[debt];
+            }
+        }
+
+        List<PlannedTransfer> planned = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            Map<String, Money> bySource = new LinkedHashMap<>();
+            if (attribute) {
+                attribute(transfer, positions.get(transfer.getDebtor()), positions.get(transfer.getCreditor()),
+                        bySource);
+            }
+            planned.add(new PlannedTransfer(userIds.get(transfer.getDebtor()), userIds.get(transfer.getCreditor()),
+                    Money.ofMinor(transfer.getAmount()), bySource));
+        }
+        return planned;
+    }
+
+    private void attribute(Transfer transfer, Map<Integer, long[]> payer, Map<Integer, long[]> payee,
+            Map<String, Money> bySource) {
+        long remaining = transfer.getAmount();
+        Map<Integer, Long> allocated = new LinkedHashMap<>();
+
+        // sources where the payer owes and the payee is owed
+        for (Map.Entry<Integer, long[]> entry : payer.entrySet()) {
+            long[] payeePosition = payee.get(entry.getKey());
+            long[] payerPosition = entry.getValue();
+            if (remaining == 0) {
+                break;
+            }
+            if (payerPosition[0] >= 0 || payeePosition == null || payeePosition[0] <= 0) {
+                continue;
+            }
+            long share = Math.min(remaining, Math.min(-payerPosition[0], payeePosition[0]));
+            payerPosition[0] += share;
+            payeePosition[0] -= share;
+            remaining -= share;
+            allocated.merge(entry.getKey(), share, Long::sum);
+        }
+
+        // then any source where the payer still owes
+        for (Map.Entry<Integer, long[]> entry : payer.entrySet()) {
+            long[] payerPosition = entry.getValue();
+            if (remaining == 0) {
+                break;
+            }
+            if (payerPosition[0] >= 0) {
+                continue;
+            }
+            long share = Math.min(remaining, -payerPosition[0]);
+            payerPosition[0] += share;
+            remaining -= share;
+            allocated.merge(entry.getKey(), share, Long::sum);
+        }
+
+        for (Map.Entry<Integer, Long> entry : allocated.entrySet()) {
+            bySource.put(sourceIds.get(entry.getKey()), Money.ofMinor(entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package utils;
+
+// A single settlement produced by simplification: debtor pays creditor `amount` minor units.
+public class Transfer {
+    private final int debtor;
+    private final int creditor;
+    private final long amount;
+
+    public Transfer(int debtor, int creditor, long amount) {
+        this.debtor = debtor;
+        this.creditor = creditor;
+        this.amount = amount;
+    }
+
+    public int getDebtor() {
+        return debtor;
+    }
+
+    public int getCreditor() {
+        return creditor;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+}